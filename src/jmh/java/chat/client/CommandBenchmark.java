@@ -0,0 +1,90 @@
+package chat.client;
+
+import chat.server.BenchmarkConnection;
+import chat.server.Server;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing and dispatch of the lines a client sends once it is in the lobby: chat messages, commands and whispers.
+ * The clients only have in-memory connections, the answers are encoded but not sent anywhere.
+ * The lines are given as bytes, the way NioConnection hands them over from its read buffer.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CommandBenchmark {
+    private ClientHandler anna;
+    private ClientHandler ben;
+    private final byte[] chat = bytes("Hello Ben, how are you?");
+    private final byte[] whisper = bytes("/Ben psst, let's play");
+    private final byte[] help = bytes("/help");
+    private final byte[] guard = bytes("/Guard");
+    private final byte[] dance = bytes("/dance");
+
+    private static byte[] bytes(String line) {
+        return line.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Setup(Level.Trial)
+    public void connectClients() {
+        anna = connect("Anna");
+        ben = connect("Ben");
+    }
+
+    private static ClientHandler connect(String name) {
+        ClientHandler client = new ClientHandler(new BenchmarkConnection());
+        Server.players.connect(client);
+        client.onConnect();
+        client.onLine(name);
+        client.onLine("2020-02-02");
+        return client;
+    }
+
+    @TearDown(Level.Trial)
+    public void disconnectClients() {
+        anna.onDisconnect();
+        ben.onDisconnect();
+    }
+
+    @Benchmark
+    public void chatMessage() {
+        anna.onLine(chat, chat.length);
+    }
+
+    @Benchmark
+    public void whisper() {
+        anna.onLine(whisper, whisper.length);
+    }
+
+    @Benchmark
+    public void helpCommand() {
+        anna.onLine(help, help.length);
+    }
+
+    @Benchmark
+    public void cardCommandOutsideGame() {
+        anna.onLine(guard, guard.length);
+    }
+
+    @Benchmark
+    public void unknownCommand() {
+        anna.onLine(dance, dance.length);
+    }
+}
@@ -0,0 +1,93 @@
+package chat.run;
+
+import com.squareup.moshi.JsonAdapter;
+import com.squareup.moshi.Moshi;
+import com.squareup.moshi.Types;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compares two JMH result files (written with -rf json) benchmark by benchmark, e.g. the baseline of the last release
+ * with a new run. Prints the change of every score and of the bytes allocated per operation (if -prof gc was used)
+ * and exits with 1 if a benchmark got slower than the allowed percentage.
+ * java -cp vp-damboeck-1.0-SNAPSHOT-benchmarks.jar chat.run.BenchmarkComparison benchmarks/baseline.json new.json 10
+ */
+public class BenchmarkComparison {
+    private static final String allocation = "gc.alloc.rate.norm";
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.out.println("Usage: java -cp vp-damboeck-1.0-SNAPSHOT-benchmarks.jar chat.run.BenchmarkComparison <baseline.json> <current.json> [allowed regression in %]");
+            return;
+        }
+        double allowedRegression = args.length > 2 ? Double.parseDouble(args[2]) : 10;
+        Map<String, Map<String, Object>> baseline = read(args[0]);
+        Map<String, Map<String, Object>> current = read(args[1]);
+
+        int regressions = 0;
+        for (Map.Entry<String, Map<String, Object>> entry : current.entrySet()) {
+            Map<String, Object> old = baseline.get(entry.getKey());
+            if (old == null) {
+                System.out.println(entry.getKey() + ": new");
+                continue;
+            }
+            double oldScore = score(old.get("primaryMetric"));
+            double newScore = score(entry.getValue().get("primaryMetric"));
+            // throughput gets better when it rises, all other modes measure time
+            double change = 100 * (newScore - oldScore) / oldScore;
+            boolean higherIsBetter = "thrpt".equals(entry.getValue().get("mode"));
+            double regression = higherIsBetter ? -change : change;
+            String line = String.format("%s: %.3f -> %.3f %s (%+.1f%%)", entry.getKey(), oldScore, newScore,
+                    unit(entry.getValue().get("primaryMetric")), change);
+            Object oldAllocation = secondary(old, allocation);
+            Object newAllocation = secondary(entry.getValue(), allocation);
+            if (oldAllocation != null && newAllocation != null) {
+                line += String.format(", allocated %.1f -> %.1f B/op", score(oldAllocation), score(newAllocation));
+            }
+            if (regression > allowedRegression) {
+                line += "  REGRESSION";
+                regressions++;
+            }
+            System.out.println(line);
+        }
+        System.out.println(regressions + " regression(s) over " + allowedRegression + "%");
+        if (regressions > 0) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * @return the results of the file by benchmark name and parameters
+     */
+    private static Map<String, Map<String, Object>> read(String file) throws IOException {
+        JsonAdapter<List<Map<String, Object>>> adapter = new Moshi.Builder().build()
+                .adapter(Types.newParameterizedType(List.class, Types.newParameterizedType(Map.class, String.class, Object.class)));
+        List<Map<String, Object>> results = adapter.fromJson(new String(Files.readAllBytes(Paths.get(file)), StandardCharsets.UTF_8));
+        Map<String, Map<String, Object>> byName = new LinkedHashMap<>();
+        for (Map<String, Object> result : results) {
+            String name = (String) result.get("benchmark");
+            Object params = result.get("params");
+            byName.put(params == null ? name : name + " " + params, result);
+        }
+        return byName;
+    }
+
+    private static Object secondary(Map<String, Object> result, String metric) {
+        Object metrics = result.get("secondaryMetrics");
+        return metrics instanceof Map ? ((Map<?, ?>) metrics).get(metric) : null;
+    }
+
+    private static double score(Object metric) {
+        return ((Number) ((Map<?, ?>) metric).get("score")).doubleValue();
+    }
+
+    private static String unit(Object metric) {
+        return (String) ((Map<?, ?>) metric).get("scoreUnit");
+    }
+}
@@ -0,0 +1,28 @@
+package chat.server;
+
+/**
+ * A connection that only counts what would be sent. Messages are encoded into frames like on the real transports,
+ * so a benchmark measures the work per recipient without any sockets.
+ */
+public class BenchmarkConnection implements Connection {
+    private long messages;
+    private long bytes;
+
+    @Override
+    public void send(Frame frame, boolean chat) {
+        messages++;
+        bytes += frame.length();
+    }
+
+    @Override
+    public void close() {
+    }
+
+    public long getMessages() {
+        return this.messages;
+    }
+
+    public long getBytes() {
+        return this.bytes;
+    }
+}
@@ -0,0 +1,67 @@
+package chat.server;
+
+import chat.client.ClientHandler;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Fan-out of one chat message to all clients of the server and to the four seats of a room.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BroadcastBenchmark {
+    @Param({"4", "100", "1000"})
+    public int clients;
+
+    private final GameRoom room = new GameRoom("benchmark");
+    private final List<ClientHandler> handlers = new ArrayList<>();
+
+    @Setup(Level.Trial)
+    public void connectClients() {
+        for (int i = 0; i < clients; i++) {
+            ClientHandler client = new ClientHandler(new BenchmarkConnection());
+            Server.players.connect(client);
+            handlers.add(client);
+            if (i < GameRoom.maxClients) {
+                room.join(client);
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void disconnectClients() {
+        for (ClientHandler client : handlers) {
+            Server.players.disconnect(client);
+        }
+        handlers.clear();
+    }
+
+    @Benchmark
+    public void sendToAllClients() {
+        Server.sendToAllClients("Anna: Who wants to play a round of Love Letter?");
+    }
+
+    @Benchmark
+    public void sendToRoom() {
+        room.sendToAllClients("Round 3, turn 7: Anna");
+    }
+}
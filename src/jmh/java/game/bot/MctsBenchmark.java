@@ -0,0 +1,58 @@
+package game.bot;
+
+import game.engine.Engine;
+import game.engine.GameState;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Playouts per second of the MCTS bot on the first move of a round, one thread and no time limit.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MctsBenchmark {
+    private static final int playouts = 10000;
+
+    @Param({"2", "4"})
+    public int players;
+
+    private final GameState state = new GameState();
+    private final int[] moves = new int[64];
+    private final Random random = new Random(42);
+    private MctsBot bot;
+    private int count;
+
+    @Setup
+    public void setUp() {
+        bot = new MctsBot(1, TimeUnit.HOURS.toMillis(1), playouts);
+        // a round in which there is something to choose
+        do {
+            Engine.newGame(state, players, 0, random.nextLong());
+            Engine.startRound(state);
+            count = Engine.legalMoves(state, moves);
+        } while (count == 1);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(playouts)
+    public int playouts() {
+        return bot.chooseMove(state, moves, count, random);
+    }
+}
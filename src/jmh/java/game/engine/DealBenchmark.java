@@ -0,0 +1,37 @@
+package game.engine;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Building, shuffling and dealing the deck of a new round (what Deck.buildDeck and shuffleDeck used to do).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DealBenchmark {
+    @Param({"2", "4"})
+    public int players;
+
+    private final GameState state = new GameState();
+
+    @Benchmark
+    public int dealRound() {
+        Engine.newGame(state, players, 0, ThreadLocalRandom.current().nextLong());
+        return Engine.startRound(state);
+    }
+}
@@ -0,0 +1,58 @@
+package game.sim;
+
+import game.bot.Bot;
+import game.bot.Bots;
+import game.engine.Engine;
+import game.engine.GameState;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Complete games between greedy bots on the engine, from the first deal to the winner.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GameBenchmark {
+    @Param({"2", "4"})
+    public int players;
+
+    private final GameState state = new GameState();
+    private final int[] moves = new int[64];
+    private Bot bot;
+
+    @Setup
+    public void createBot() {
+        bot = Bots.create("greedy");
+    }
+
+    @Benchmark
+    public int fullGame() {
+        Random random = ThreadLocalRandom.current();
+        Engine.newGame(state, players, 0, random.nextLong());
+        while (state.getPhase() != GameState.GAME_OVER) {
+            Engine.startRound(state);
+            while (state.getPhase() == GameState.TURN) {
+                int count = Engine.legalMoves(state, moves);
+                Engine.apply(state, bot.chooseMove(state, moves, count, random));
+            }
+        }
+        return state.getActiveSeat();
+    }
+}
@@ -1,22 +1,43 @@
 package chat.client;
 
+import chat.protocol.Message;
+import chat.protocol.MessageCodec;
+import chat.protocol.Protocol;
+import chat.protocol.Text;
 import chat.server.Server;
 
+import java.io.BufferedInputStream;
 import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.PrintWriter;
 import java.net.Socket;
+import java.nio.charset.StandardCharsets;
 
 /**
  * Client class for creating new clients for the associated server.
  * Create client object and start a new client with the .startClient method.
+ * With a structured protocol (json or binary) the client decodes the frames of the server and prints
+ * the typed messages as JSON, which shows what a bot would get.
  */
 public class Client {
     public Socket socket;
     private static BufferedReader input;
     private PrintWriter output;
     private boolean done;
+    private final Protocol protocol;
+
+    // constructor
+    public Client() {
+        this(Protocol.LINE);
+    }
+
+    public Client(Protocol protocol) {
+        this.protocol = protocol;
+    }
 
     /**
      * Method for starting a new client from a Client object.
@@ -30,8 +51,16 @@ public class Client {
             //run a new thread with an inputHandler
             InputHandler inputHandler = new InputHandler();
             Thread t = new Thread(inputHandler);
+            // the console is read until the server closes the connection, so this thread must not keep the client alive
+            t.setDaemon(true);
             t.start();
 
+            if (protocol != Protocol.LINE) {
+                output.println("/protocol " + protocol.name().toLowerCase());
+                printFrames();
+                return;
+            }
+
             String inMessage;
             while ((inMessage = input.readLine()) != null) {
                 System.out.println(inMessage);
@@ -52,6 +81,35 @@ public class Client {
         }
     }
 
+    /**
+     * Reads the server in the structured protocol: the greeting is still a line, everything after it is a frame.
+     * The socket is read directly, the BufferedReader for the lines must not read ahead into the frames.
+     */
+    private void printFrames() throws IOException {
+        DataInputStream frames = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        System.out.println(readLine(frames));
+        while (true) {
+            Message message = MessageCodec.read(frames, protocol);
+            if (message instanceof Text) {
+                System.out.println(((Text) message).getText());
+            } else {
+                System.out.println(MessageCodec.toJson(message));
+            }
+        }
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int b;
+        while ((b = in.read()) != '\n') {
+            if (b < 0) {
+                throw new IOException("Server is closed!");
+            }
+            line.write(b);
+        }
+        return new String(line.toByteArray(), StandardCharsets.UTF_8);
+    }
+
     class InputHandler implements Runnable {
         @Override
         public void run() {
@@ -59,24 +117,9 @@ public class Client {
                 BufferedReader inReader = new BufferedReader(new InputStreamReader(System.in));
                 while (!done) {
                     String message = inReader.readLine();
-                    if (message.equals("bye")) {
-                        if (!Server.gameRunning) {
-                            output.println(message);
-                            inReader.close();
-                            done = true;
-                            try {
-                                input.close();
-                                output.close();
-                                if (!socket.isClosed()) {
-                                    socket.close();
-                                }
-                            } catch (IOException e) {
-                                e.printStackTrace();
-                            }
-                        }
-                    } else {
-                        output.println(message);
-                    }
+                    // "bye" is sent like any other message: only the server knows if the game of the room is running,
+                    // so the server decides whether the player may leave and closes the connection
+                    output.println(message);
                 }
             } catch (IOException e) {
                 done = true;
@@ -1,34 +1,75 @@
 package chat.client;
 
+import chat.metrics.Metrics;
+import chat.protocol.ChatMessage;
+import chat.protocol.Message;
+import chat.protocol.MessageCodec;
+import chat.protocol.Protocol;
+import chat.protocol.Text;
+import chat.server.Broadcast;
+import chat.server.Connection;
+import chat.server.Frame;
+import chat.server.GameRoom;
+import chat.server.Matchmaker;
+import chat.server.PlayerRegistry;
 import chat.server.Server;
-import game.Card;
+import chat.server.TimerWheel;
 import game.Player;
+import game.engine.Cards;
+import game.engine.Engine;
+import game.engine.Move;
 
-import java.io.BufferedReader;
-import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.PrintWriter;
-import java.net.Socket;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDate;
 import java.time.format.DateTimeParseException;
 import java.time.temporal.ChronoUnit;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * ClientHandler object is needed for every client connecting to the server (see Server class).
- * Constructor needs socket of the client.
+ * Constructor needs the connection of the client.
  * Contains the complete chat logic.
+ * The handler never reads from the network itself: the transport calls onLine() for every line the client sends,
+ * so the handler only has to remember what it asked the player last (see State).
  */
-public class ClientHandler implements Runnable {
-    private Socket socket;
+public class ClientHandler {
+    // how long the seat of a player who lost the connection during a game is kept for him/her (see resumeLogic()); 0 gives it up right away
+    private static final long resumeSeconds = Long.getLong("loveletter.resumeSeconds", 120);
+    private final Connection connection;
     private String name;
-    private String message;
-    private PrintWriter output;
-    private BufferedReader input;
     private Player player;
+    private volatile GameRoom room; // null while the player is in the lobby; set by the Matchmaker for a table
+    // the room the client watches as a spectator (see GameRoom.watch()), without a seat; null if none
+    private volatile GameRoom watching;
+    // the place in the queue of the Matchmaker, null while the player is not waiting for a table
+    private final AtomicReference<Matchmaker.Ticket> queueTicket = new AtomicReference<>();
+    // also set by the room when the time for a prompt is up (see promptExpired())
+    private volatile State state = State.NAME;
+    private boolean hasLeft = false; // the player left with "bye"
+    private volatile boolean disconnected = false;
+    // read by the threads of the broadcasts, chosen once before the name (see protocolLogic())
+    private volatile Protocol protocol = Protocol.LINE;
+    // given to the client after the handshake, so he/she can get the seat back on a new connection (see resumeLogic())
+    private String sessionToken;
+    // set once the connection was lost during a game and the seat is kept, until the session is resumed or expires
+    private volatile boolean parked = false;
+    private TimerWheel.Timeout resumeDeadline;
+
+    /**
+     * What the next line of the client is supposed to be.
+     */
+    private enum State {
+        NAME,   // the name of the player
+        DATE,   // the date of the last romantic meeting
+        CHAT,   // a chat message or a command
+        TARGET, // the target player of the card in pendingCard
+        GUESS   // the card guessed with the Guard
+    }
 
     // constructor
-    public ClientHandler(Socket socket) {
-        this.socket = socket;
+    public ClientHandler(Connection connection) {
+        this.connection = connection;
     }
 
     public Player getPlayer() {
@@ -39,98 +80,403 @@ public class ClientHandler implements Runnable {
         return this.name;
     }
 
-    @Override
-    public void run() {
+    public GameRoom getRoom() {
+        return this.room;
+    }
 
-        try {
-            // reads input from the client
-            input = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+    public AtomicReference<Matchmaker.Ticket> getQueueTicket() {
+        return this.queueTicket;
+    }
 
-            // sends output to the server
-            output = new PrintWriter(socket.getOutputStream(), true);
+    public Protocol getProtocol() {
+        return this.protocol;
+    }
 
-            // once the client is connected to the server ask the player for his/her name
-            sendMessage("Hello there! What's your name?");
-            name = input.readLine();
-            boolean isValid = isValidName(name);
+    /**
+     * @return true if the room of the player is playing a game right now
+     */
+    public boolean isGameRunning() {
+        return room != null && room.isGameRunning();
+    }
 
-            // is the first check was not passed, ask for a new name until a valid name is given
-            while (!isValid) {
-                name = input.readLine();
-                isValid = isValidName(name);
-            }
+    /**
+     * Called by the transport once the client is connected: ask the player for his/her name.
+     */
+    public void onConnect() {
+        sendMessage("Hello there! What's your name?");
+    }
 
-            // create a player with the name
-            player = new Player(this, name);
-            Server.playerNames.add(name);
-
-            // if the name passed all checks, the player is greeted and the rest of the chat is informed
-            sendMessage("Welcome " + name + "!");
-            getDate();
-            sendMessage("Thanks for this personal information and welcome to Love Letter. Type '/help' to show all possible commands.");
-            Server.sendToAllClientsExceptSender(name + " has joined.", this);
-
-            // this is the normal chat logic after the reception with alert checks for either empty strings or the client shutdown message "bye"
-            while ((message = input.readLine()) != null) {
-                if (message.equals("bye"))
-                    if (Server.gameRunning) {
-                        sendMessage("You can't leave while the game is running. Please finnish the game first.");
-                    } else {
-                        Server.sendToAllClientsExceptSender(name + " has left the chat!", this);
-                        System.out.println("Player disconnected: " + name);
-                        Server.clients.remove(this);
-                        Server.playerNames.remove(name);
-                        socket.close();
-                        input.close();
-                        output.close();
-                        break;
-                    }
-                else {
-                    chatLogic(message);
-                }
-            }
+    /**
+     * Called by the transport for every line the client sends, as text (see SocketConnection).
+     *
+     * @param line without the line break
+     */
+    public void onLine(String line) {
+        byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+        onLine(bytes, bytes.length);
+    }
+
+    /**
+     * Called by the transport for every line the client sends, right from its read buffer (see NioConnection).
+     * Depending on the state the line is the name, the date, the answer to a card prompt or a normal chat message.
+     * The bytes are only valid during the call: whatever is kept is copied into a String.
+     *
+     * @param line   the bytes of the line without the line break
+     * @param length number of bytes of the line
+     */
+    public void onLine(byte[] line, int length) {
+        Metrics.messagesIn.increment();
+        if (state == State.CHAT) {
+            chatLogic(line, length);
+            return;
+        }
+        String text = new String(line, 0, length, StandardCharsets.UTF_8);
+        if (state == State.NAME && text.startsWith("/protocol")) {
+            protocolLogic(text);
+            return;
+        }
+        if (state == State.NAME && text.startsWith("/resume")) {
+            resumeLogic(text.substring("/resume".length()).trim());
+            return;
+        }
+        switch (state) {
+            case NAME:
+                nameLogic(text);
+                break;
+            case DATE:
+                dateLogic(text);
+                break;
+            case TARGET:
+                targetLogic(text);
+                break;
+            case GUESS:
+                guessLogic(text);
+                break;
+        }
+    }
 
-        } catch (IOException e) {
+    /**
+     * Called by the transport exactly once when the connection is closed, no matter if the player said "bye" or not.
+     */
+    public void onDisconnect() {
+        if (!hasLeft) {
             // handle client termination without closing it properly (without writing "bye")
             System.err.println("Client disconnected abruptly: " + name);
-            Server.sendToAllClientsExceptSender(name + " has left the chat!", this);
-        } finally {
-            try {
-                Server.clients.remove(this);
-                Server.playerNames.remove(name);
-                socket.close();
-                input.close();
-                output.close();
-            } catch (IOException e) {
-                e.printStackTrace();
+            if (keepSeat()) {
+                return;
+            }
+            if (state != State.NAME) {
+                sendToChat(name + " has left the chat!");
+            }
+        }
+        disconnected = true;
+        Server.players.takeSession(sessionToken, this);
+        Server.matchmaker.disconnected(this);
+        stopWatching();
+        leaveRoom();
+        Server.players.disconnect(this);
+    }
+
+    /**
+     * Keeps the seat of a player who lost the connection in the middle of a game for resumeSeconds:
+     * the game goes on (the deadlines play for him/her) and the player can come back with "/resume" and the session token.
+     *
+     * @return false if the player has no seat in a running game, he/she leaves the room as usual then
+     */
+    private boolean keepSeat() {
+        GameRoom seat = room;
+        if (sessionToken == null || resumeSeconds <= 0 || seat == null) {
+            return false;
+        }
+        // before the seat is parked: a resumeLogic() that sees the seat parked has to see the connection closed, too
+        disconnected = true;
+        if (!seat.parkSeat(this)) {
+            return false;
+        }
+        Server.players.park(this);
+        resumeDeadline = Server.timers.schedule(this::sessionExpired, resumeSeconds, TimeUnit.SECONDS);
+        parked = true;
+        seat.sendToAllClientsExceptSender(name + " lost the connection. The seat is kept for " + resumeSeconds + " seconds.", this);
+        return true;
+    }
+
+    /**
+     * Called by the timer once the player did not resume the session in time: the seat is given up like after "bye".
+     */
+    private void sessionExpired() {
+        if (!Server.players.takeSession(sessionToken, this)) {
+            // resumed right now
+            return;
+        }
+        GameRoom seat = room;
+        room = null;
+        seat.sendToAllClientsExceptSender(name + " did not come back in time.", this);
+        seat.giveUpSeat();
+        Server.players.disconnect(this);
+    }
+
+    /**
+     * Gives a player who lost the connection during a game his/her seat back, e.g. "/resume mBq3k1Xo5c6uR0AkJ2cKzw".
+     * Sent instead of the name on the new connection: the player gets the name, the seat and the hand of the old one,
+     * and is told where the game is (see GameRoom.resumeSeat()).
+     *
+     * @param token the session token of the old connection
+     */
+    private void resumeLogic(String token) {
+        ClientHandler old = Server.players.getSession(token);
+        if (old == null) {
+            resumeRestoredSeat(token);
+            return;
+        }
+        if (!old.parked) {
+            // the server did not notice yet that the old connection is gone (or it is not gone at all)
+            if (!old.disconnected) {
+                old.connection.close();
+            }
+            sendMessage("Your old connection is being closed. Please send '/resume " + token + "' again in a moment.");
+            return;
+        }
+        if (!Server.players.takeSession(token, old)) {
+            sendMessage("This session can't be resumed any more. What's your name?");
+            return;
+        }
+        old.resumeDeadline.cancel();
+        GameRoom seat = old.room;
+        old.room = null;
+        name = old.name;
+        player = old.player;
+        Server.players.takeOver(name, this);
+        state = State.CHAT;
+        Metrics.handshakes.increment();
+        sendSessionToken();
+        if (seat.resumeSeat(this)) {
+            room = seat;
+            return;
+        }
+        Server.players.enterLobby(this);
+        sendMessage("Welcome back! Your game in the room " + seat.getName() + " is over. You are in the lobby.");
+        Server.sendToLobbyExceptSender(name + " has joined.", this);
+    }
+
+    /**
+     * Gives a player of a game that was restored after a restart of the server (see Snapshots) his/her seat back.
+     * The token is the one he/she had before the restart, it was saved with the game.
+     *
+     * @param token the session token of the seat
+     */
+    private void resumeRestoredSeat(String token) {
+        PlayerRegistry.ReservedSeat reserved = Server.players.claimSeat(token, this);
+        if (reserved == null) {
+            sendMessage("This session can't be resumed any more. What's your name?");
+            return;
+        }
+        name = reserved.getName();
+        Player seated = reserved.getRoom().getSeatedPlayer(name);
+        player = seated != null ? seated : new Player(this, name);
+        state = State.CHAT;
+        Metrics.handshakes.increment();
+        sendSessionToken();
+        if (reserved.getRoom().reclaimSeat(this)) {
+            room = reserved.getRoom();
+            return;
+        }
+        Server.players.enterLobby(this);
+        sendMessage("Welcome back! Your game in the room " + reserved.getRoom().getName() + " is over. You are in the lobby.");
+        Server.sendToLobbyExceptSender(name + " has joined.", this);
+    }
+
+    /**
+     * Gives the client a new session token and tells him/her how to use it.
+     */
+    private void sendSessionToken() {
+        sessionToken = Server.players.issueToken(this);
+        player.setSessionToken(sessionToken);
+        sendMessage("Your session token is " + sessionToken + ". If your connection is lost during a game, connect again and send '/resume "
+                + sessionToken + "' instead of your name to get your seat back.");
+    }
+
+    /**
+     * The first line of every client is the name. Ask for a new name until a valid name is given.
+     *
+     * @param line the name
+     */
+    private void nameLogic(String line) {
+        if (!isValidName(line)) {
+            return;
+        }
+        // two clients could ask for the same name at the same time, only one of them gets it
+        if (!Server.players.register(line, this)) {
+            if (Server.players.isReserved(line)) {
+                // kept for the player of a restored game, who proves with the session token that it is him/her
+                sendMessage("This name has a seat in a game that goes on after a restart. Send '/resume' and your session token to get it back, or choose another name!");
+            } else {
+                sendMessage("This name is already taken. Please choose another name!");
             }
+            return;
+        }
+        name = line;
+
+        // create a player with the name
+        player = new Player(this, name);
+
+        // if the name passed all checks, the player is greeted and asked for the date
+        sendMessage("Welcome " + name + "!");
+        getDate();
+    }
+
+    /**
+     * Lets the client choose the protocol the server writes in, e.g. "/protocol json".
+     * Only allowed before the name, so no broadcast can reach the client while it switches.
+     * The greeting is always a line, everything after the answer to this command is in the new protocol.
+     *
+     * @param line the command
+     */
+    private void protocolLogic(String line) {
+        Protocol chosen = Protocol.byName(line.substring("/protocol".length()).trim());
+        if (chosen == null) {
+            sendMessage("Please choose one of the protocols line, json or binary, e.g. /protocol json");
+            return;
         }
+        protocol = chosen;
+        sendMessage("Protocol: " + chosen.name().toLowerCase());
     }
 
     /**
-     * Sends message via PrintWriter.
-     * Used in the sendToAllClientsExceptSender() method.
+     * Sends message via the connection of the client.
+     * Clients of the structured protocols get it as a Text message.
      *
      * @param message
      */
     public void sendMessage(String message) {
-        output.println(message);
-        output.flush();
+        if (protocol == Protocol.LINE) {
+            connection.sendMessage(message);
+        } else {
+            sendStructured(new Text(message));
+        }
     }
 
-    Player seekPlayer;
+    /**
+     * Sends a typed message to a client of the structured protocols (see chat.protocol.Protocol).
+     * Clients of the line protocol get nothing: they are told the same in their text messages.
+     *
+     * @param message to be sent
+     */
+    public void sendStructured(Message message) {
+        if (protocol == Protocol.LINE) {
+            return;
+        }
+        Frame frame = MessageCodec.encode(message, protocol);
+        try {
+            connection.send(frame, false);
+        } finally {
+            frame.release();
+        }
+    }
+
+    /**
+     * Sends a message that is encoded once for all recipients, in the protocol of this client.
+     *
+     * @param broadcast to be sent
+     * @param chat      true for chat messages, which may be dropped if the client reads too slowly
+     */
+    public void send(Broadcast broadcast, boolean chat) {
+        Frame frame = broadcast.frame(protocol);
+        if (frame != null) {
+            connection.send(frame, chat);
+        }
+    }
+
+    /**
+     * Sends a frame that was encoded for the protocol of this client, e.g. a message of the spectator log.
+     *
+     * @param frame to be sent
+     * @param chat  true if it may be dropped when the client reads too slowly
+     */
+    public void send(Frame frame, boolean chat) {
+        connection.send(frame, chat);
+    }
+
+    /**
+     * Sends a chat message to everyone who can read it: the players of the room, or the lobby if the player has no room.
+     *
+     * @param message to be sent
+     */
+    private void sendToChat(String message) {
+        Broadcast broadcast = new Broadcast(message);
+        try {
+            sendToChat(broadcast);
+        } finally {
+            broadcast.release();
+        }
+    }
+
+    private void sendToChat(Broadcast broadcast) {
+        if (room != null) {
+            room.sendToAllClientsExceptSender(broadcast, this, true);
+        } else {
+            Server.sendToLobbyExceptSender(broadcast, this);
+        }
+    }
+
+    /**
+     * Takes the player out of the room (if there is one) and back into the lobby.
+     */
+    private void leaveRoom() {
+        if (room != null) {
+            room.leave(this);
+            room = null;
+            Server.players.enterLobby(this);
+        }
+    }
+
+    /**
+     * Stops watching a room (if the client watches one) and goes back into the lobby.
+     *
+     * @return false if the client was not watching
+     */
+    private boolean stopWatching() {
+        GameRoom watched = watching;
+        if (watched == null) {
+            return false;
+        }
+        watched.unwatch(this);
+        watching = null;
+        if (!disconnected) {
+            Server.players.enterLobby(this);
+        }
+        return true;
+    }
+
+    /**
+     * Called by the room the client watches once it is closed, because every player left.
+     *
+     * @param watched the closed room
+     */
+    public void watchingEnded(GameRoom watched) {
+        if (watching != watched) {
+            return;
+        }
+        watching = null;
+        sendMessage("The room " + watched.getName() + " was closed. You are back in the lobby.");
+        if (!disconnected) {
+            Server.players.enterLobby(this);
+        }
+    }
 
     /**
      * @param name of the sought-after player
-     * @return Player object with the given name
+     * @return Player object with the given name or null if there is no such player in the room
      */
     public Player getPlayerByName(String name) {
-        for (ClientHandler client : Server.clients) {
-            if (client.getName().equals(name)) {
-                seekPlayer = client.getPlayer();
-            }
+        if (room != null && room.isGameRunning()) {
+            // also the players that lost their connection keep their seat
+            return room.getSeatedPlayer(name);
         }
-        return seekPlayer;
+        ClientHandler client = Server.players.get(name);
+        if (client == null || client.getRoom() != room) {
+            return null;
+        }
+        return client.getPlayer();
     }
 
 
@@ -150,13 +496,13 @@ public class ClientHandler implements Runnable {
             return false;
         }
         // check if the name is already taken by another player
-        if (Server.playerNames.contains(name)) {
+        if (Server.players.isTaken(name)) {
             sendMessage("This name is already taken. Please choose another name!");
             return false;
         }
 
-        // check if the name contains any characters not from the English alphabet; spaces are allowed
-        if (!name.matches("[a-zA-Z ]+")) {
+        // check if the name contains any characters not from the English alphabet
+        if (!isLettersOrDigits(name, false)) {
             sendMessage("Only characters from the English alphabet are allowed!");
             return false;
         }
@@ -168,55 +514,45 @@ public class ClientHandler implements Runnable {
         return true;
     }
 
-
-    public boolean isGameCommand(String command) {
-        if (Server.gameCommands.contains(command)) {
-            return true;
-        } else {
-            return false;
-        }
-    }
-
-    public boolean isCardCommand(String command) {
-        if (Server.allCards.contains(command)) {
-            return true;
-        } else {
+    /**
+     * A loop instead of String.matches(), which compiles its regular expression on every call.
+     *
+     * @param digits true if digits are allowed as well
+     * @return true if the text is not empty and has only letters of the English alphabet (and digits)
+     */
+    private static boolean isLettersOrDigits(String text, boolean digits) {
+        if (text.isEmpty()) {
             return false;
         }
-    }
-
-    public boolean isWhisperCommand(String command) {
-        if (!command.startsWith(" ") && command.contains(" ")) {
-            return true;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (!(c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || digits && c >= '0' && c <= '9')) {
+                return false;
+            }
         }
-        return false;
+        return true;
     }
 
-    boolean allInvalid = false;
 
     /**
      * Some cards require the selection of a specific player as target.
-     * Make sure the targeted player 1. exists and 2. is not protected by the handmaid.
+     * Make sure the targeted player 1. exists, 2. is still in the round and 3. is not protected by the handmaid.
+     * The engine checks the move again when it is played, this check is only there to ask the player again right away.
      * @param target as String
      * @return
      */
     public boolean isValidTarget(String target) {
-        for (ClientHandler client : Server.clients) {
-            if ((client.getPlayer().getName().equals(target)) && client.getPlayer().isProtected()) {
-                sendMessage("The player is protected by the handmaid!");
-                return false;
-            }
-            if (client.getPlayer().getName().equals(target)) {
-                return true;
-            } else {
-                allInvalid = true;
-            }
-        }
-        if (allInvalid) {
+        Player targetPlayer = getPlayerByName(target);
+        if (targetPlayer == null) {
             sendMessage("Unknown player name.");
             return false;
         }
-        return false;
+        int result = Engine.checkTarget(room.getState(), player.getIndex(), targetPlayer.getIndex(), pendingCard);
+        if (result != 0) {
+            sendMessage(GameRoom.describeError(result));
+            return false;
+        }
+        return true;
     }
 
     /**
@@ -225,7 +561,7 @@ public class ClientHandler implements Runnable {
      * @return boolean
      */
     public boolean isValidCard(String targetCard) {
-        if (Server.allCards.contains(targetCard)) {
+        if (Cards.byName(targetCard) != Cards.NONE) {
             return true;
         } else {
             sendMessage("Please choose an existing card from the game!");
@@ -257,19 +593,24 @@ public class ClientHandler implements Runnable {
      * @return boolean
      */
     public boolean legalGameStart() {
-        if (Server.gameRunning) {
+        if (room == null) {
+            sendMessage("You have to be in a room to start a game. Use /create or /join first.");
+            return false;
+        }
+        if (room.isGameRunning()) {
             sendMessage("The game is already running.");
             return false;
         }
-        if ((Server.clients.size() < 2)) {
-            sendMessage("There are not enough player to start the game!");
+        if (room.getTableSize() > 0 && !room.isFull()) {
+            // the Matchmaker starts the game as soon as the table is complete; a complete table may play again
+            sendMessage("The game at this table starts as soon as all " + room.getTableSize() + " seats are taken.");
             return false;
         }
-        if (Server.clients.size() != Server.playerNames.size()) {
-            sendMessage("Please wait until everyone has picked a name!");
+        if ((room.getClients().size() < 2)) {
+            sendMessage("There are not enough player to start the game!");
             return false;
         }
-        for (ClientHandler client : Server.clients) {
+        for (ClientHandler client : room.getClients()) {
             if (client.getPlayer().getDaysFromLastDate() == null) {
                 sendMessage("Please wait until everyone is ready for the chat.");
                 return false;
@@ -278,52 +619,194 @@ public class ClientHandler implements Runnable {
         return true;
     }
 
-    String command;
-    String whisperName;
-
     /**
      * Common chat logic used for the client.
-     * Runs through all checks, then either sends message in the according mode, or executes command
+     * The line is classified in one pass over its bytes (see LineDecoder), then the message is sent in the according mode,
+     * or the command is executed. Only chat and whisper messages are turned into Strings.
      *
-     * @param message
+     * @param line   the bytes of the line
+     * @param length number of bytes of the line
      */
-    private void chatLogic(String message) {
-        if (message.isEmpty()) {
-            sendMessage("You can't send an empty message!");
+    private void chatLogic(byte[] line, int length) {
+        int decoded = LineDecoder.decode(line, length);
+        int end = LineDecoder.end(decoded);
+        switch (LineDecoder.kind(decoded)) {
+            case LineDecoder.EMPTY:
+                sendMessage("You can't send an empty message!");
+                break;
+            case LineDecoder.BYE:
+                // the client shutdown message
+                if (isGameRunning()) {
+                    sendMessage("You can't leave while the game is running. Please finnish the game first.");
+                } else {
+                    sendToChat(name + " has left the chat!");
+                    System.out.println("Player disconnected: " + name);
+                    hasLeft = true;
+                    connection.close();
+                }
+                break;
+            case LineDecoder.WHISPER:
+                // the name starts after the '/', the message after the space
+                whisperChat(new String(line, 1, end - 1, StandardCharsets.UTF_8),
+                        new String(line, end + 1, length - end - 1, StandardCharsets.UTF_8));
+                break;
+            case LineDecoder.COMMAND:
+                Command command = LineDecoder.command(decoded);
+                if (command.getGroup() == Command.Group.ROOM) {
+                    roomLogic(command, end < length ? new String(line, end + 1, length - end - 1, StandardCharsets.UTF_8).trim() : "");
+                } else {
+                    commandLogic(command);
+                }
+                break;
+            case LineDecoder.UNKNOWN:
+                sendMessage("NOT A LEGAL COMMAND!");
+                break;
+            default:
+                if (watching != null) {
+                    sendMessage("Spectators can't chat. Use /leave to stop watching.");
+                    break;
+                }
+                // if the message is neither empty nor a special command nor equals "bye", the message gets send to all players the usual way
+                String message = new String(line, 0, length, StandardCharsets.UTF_8);
+                Broadcast broadcast = new Broadcast(name + ": " + message, new ChatMessage(name, message, false));
+                try {
+                    sendToChat(broadcast);
+                } finally {
+                    broadcast.release();
+                }
         }
-        //check for commands
-        else if (message.startsWith("/")) {
-            command = message.replace("/", "");
+    }
 
-            if (isWhisperCommand(command)) {
-                whisperChat(message);
-            } else {
-                commandLogic(command);
-            }
+    /**
+     * Logic for the room commands: list, create, join and leave rooms, wait for a table.
+     *
+     * @param command  one of the room commands
+     * @param roomName the argument of the command, e.g. "myRoom" of "/join myRoom", or ""
+     */
+    public void roomLogic(Command command, String roomName) {
+        switch (command) {
+            case ROOMS:
+                if (Server.rooms.isEmpty()) {
+                    sendMessage("There are no rooms yet. Create one with /create and a name.");
+                }
+                for (GameRoom gameRoom : Server.rooms.values()) {
+                    int spectators = gameRoom.getSpectatorCount();
+                    sendMessage(gameRoom.getName() + " (" + gameRoom.getClients().size() + "/" + GameRoom.maxClients + " players"
+                            + (gameRoom.isGameRunning() ? ", playing" : "")
+                            + (spectators > 0 ? ", " + spectators + " watching" : "") + ")");
+                }
+                break;
+            case CREATE:
+            case JOIN:
+            case WATCH:
+                if (room != null) {
+                    sendMessage("You are already in the room " + room.getName() + ". Use /leave first.");
+                    break;
+                }
+                if (watching != null) {
+                    sendMessage("You are watching the room " + watching.getName() + ". Use /leave first.");
+                    break;
+                }
+                if (queueTicket.get() != null) {
+                    sendMessage("You are waiting for a table. Use /unqueue first.");
+                    break;
+                }
+                if (!isLettersOrDigits(roomName, true) || roomName.length() > 25) {
+                    sendMessage("Please give the room a name of up to 25 letters or digits, e.g. /" + command.getName() + " myRoom");
+                    break;
+                }
+                GameRoom gameRoom = command == Command.CREATE ? Server.createRoom(roomName) : Server.rooms.get(roomName);
+                if (gameRoom == null) {
+                    sendMessage(command == Command.CREATE ? "A room with that name already exists." : "There is no room with that name.");
+                } else if (command == Command.WATCH) {
+                    // the room may close before the spectator is added, then watchingEnded() resets it
+                    watching = gameRoom;
+                    Server.players.leaveLobby(this);
+                    if (!gameRoom.watch(this)) {
+                        watching = null;
+                        Server.players.enterLobby(this);
+                        sendMessage("There is no room with that name.");
+                    }
+                } else if (gameRoom.getTableSize() > 0) {
+                    sendMessage("The seats of this table are given by the matchmaking. Use /queue to get a table.");
+                } else if (!gameRoom.join(this)) {
+                    sendMessage("You can't join this room right now. It is either full or already playing.");
+                } else {
+                    room = gameRoom;
+                    Server.players.leaveLobby(this);
+                    sendMessage("You joined the room " + roomName + ". Type /start once everyone is here.");
+                    room.sendToAllClientsExceptSender(name + " joined the room.", this);
+                }
+                break;
+            case LEAVE:
+                if (stopWatching()) {
+                    sendMessage("You stopped watching.");
+                } else if (room == null) {
+                    sendMessage("You are not in a room.");
+                } else if (room.isGameRunning()) {
+                    sendMessage("You can't leave while the game is running. Please finnish the game first.");
+                } else {
+                    room.sendToAllClientsExceptSender(name + " left the room.", this);
+                    sendMessage("You left the room " + room.getName() + ".");
+                    leaveRoom();
+                }
+                break;
+            case QUEUE:
+                int size = roomName.isEmpty() ? GameRoom.maxClients : roomName.length() == 1 ? roomName.charAt(0) - '0' : -1;
+                if (size < Matchmaker.minTableSize || size > GameRoom.maxClients) {
+                    sendMessage("Please choose a table of 2 to 4 players, e.g. /queue 3");
+                } else if (room != null) {
+                    sendMessage("You are already in the room " + room.getName() + ". Use /leave first.");
+                } else if (watching != null) {
+                    sendMessage("You are watching the room " + watching.getName() + ". Use /leave first.");
+                } else if (queueTicket.get() != null) {
+                    sendMessage("You are already waiting for a table. Use /unqueue to stop waiting.");
+                } else {
+                    // told before the ticket is in the queue, the table could be found right away
+                    sendMessage("You are waiting for a table of " + size + " players. The game starts as soon as the table is complete.");
+                    Server.matchmaker.enqueue(this, size);
+                }
+                break;
+            case UNQUEUE:
+                if (Server.matchmaker.cancel(this)) {
+                    sendMessage("You stopped waiting for a table.");
+                } else if (queueTicket.get() == Matchmaker.SEATING) {
+                    sendMessage("You are just getting a seat at a table.");
+                } else {
+                    sendMessage("You are not waiting for a table.");
+                }
+                break;
         }
+    }
 
-        // if the message is neither empty nor a special command nor equals "bye", the message gets send to all players the usual way
-        else {
-            Server.sendToAllClientsExceptSender(name + ": " + message, this);
+    /**
+     * Called by the Matchmaker (on its own thread) once it found a table for the player.
+     *
+     * @param table the player was seated at
+     */
+    public void seatAtTable(GameRoom table) {
+        room = table;
+        if (disconnected) {
+            // the connection was closed while the Matchmaker took the player out of the queue
+            leaveRoom();
+            Server.players.leaveLobby(this);
+            return;
         }
+        Server.players.leaveLobby(this);
+        sendMessage("You got a seat at the table " + table.getName() + ".");
+        table.sendToAllClientsExceptSender(name + " joined the table.", this);
     }
 
     /**
      * Chat logic for using the whisper chat.
      * Has to check for the target player and make sure that player actually exists.
      *
-     * @param message
+     * @param whisperName name of the target player
+     * @param message     the message without the name
      */
-    public void whisperChat(String message) {
-        // substring to get the name of the target player: starts at 1 to exclude the '/' and stops at the first space
-        whisperName = message.substring(1, message.indexOf(" "));
-        // check if message was a whisper command for a specific player
-        if (Server.playerNames.contains(whisperName)) {
-            for (ClientHandler client : Server.clients) {
-                if (message.startsWith("/" + client.getPlayer().getName() + " ")) {
-                    Server.whisperToPlayer(this, message.replace("/" + client.getPlayer().getName() + " ", ""), client.getPlayer().getName());
-                }
-            }
+    public void whisperChat(String whisperName, String message) {
+        if (Server.players.isTaken(whisperName)) {
+            Server.whisperToPlayer(this, message, whisperName);
         } else {
             sendMessage("There is no player with that name.");
         }
@@ -331,25 +814,25 @@ public class ClientHandler implements Runnable {
 
     /**
      *  Checks for the kind of command in combination with different game states and displays messages accordingly.
-     * @param command: message without the '/'
+     * @param command any but the room commands
      */
-    public void commandLogic(String command) {
+    public void commandLogic(Command command) {
+        boolean isCardCommand = command.getGroup() == Command.Group.CARD;
         //try to play a card while it is not the players turn
-        if (Server.gameRunning) {
-            if (isCardCommand(command) &&
-                    !player.isActive()) {
+        if (isGameRunning()) {
+            if (isCardCommand &&
+                    !room.isActive(player)) {
                 sendMessage("It's not your turn!");
                 //try to play a card, that is not in the players hand
-            } else if (isCardCommand(command) &&
-                    !player.playerHandContains(command)) {
+            } else if (isCardCommand &&
+                    !room.getState().hasCard(player.getIndex(), command.getCard())) {
                 sendMessage("That card is not in your hand! Please choose another one. Your cards are:");
-                sendMessage(player.getPlayerHand().get(0).getName());
-                sendMessage(player.getPlayerHand().get(1).getName());
+                room.showHand(player);
             } else {
                 getCommandMethod(command);
             }
         } else {
-            if (isGameCommand(command) || isCardCommand(command)) {
+            if (command.getGroup() == Command.Group.GAME || isCardCommand) {
                 sendMessage("You can't use a game command right now because the game is not running at the moment!");
 
                 // if the command is neither game-command nor card-command, run it through the regular command logic
@@ -363,47 +846,59 @@ public class ClientHandler implements Runnable {
     private boolean isValidDate;
 
     /**
-     * Asks the player for his/her last date. Checks for the right input format,
-     * then calculates the difference to the current date and sets the daysFromLastDate variable in Player to the result.
-     * When the game starts this can be used to determine the starting player.
+     * Asks the player for his/her last date. The answer is checked in dateLogic().
      */
     public void getDate() {
-        LocalDate today = LocalDate.now();
         sendMessage("To determine the starting player for the game 'Love Letter' please tell us the date of your last romantic meeting. Please use the format YYYY-MM-DD!");
-        try {
-            dateString = input.readLine();
-            isValidDate = isValidDate(dateString);
-
-            while (!isValidDate) {
-                dateString = input.readLine();
-                isValidDate = isValidDate(dateString);
-            }
+        state = State.DATE;
+    }
 
-            date = LocalDate.parse(dateString);
-            differenceInDays = ChronoUnit.DAYS.between(date, today);
-            this.player.setDaysFromLastDate(differenceInDays);
-        } catch (IOException e) {
-            System.err.println("Client disconnected while choosing a date.");
+    /**
+     * Checks the answer for the right input format (ask again until it is valid),
+     * then calculates the difference to the current date and sets the daysFromLastDate variable in Player to the result.
+     * When the game starts this can be used to determine the starting player.
+     *
+     * @param line the date
+     */
+    private void dateLogic(String line) {
+        LocalDate today = LocalDate.now();
+        dateString = line;
+        isValidDate = isValidDate(dateString);
+        if (!isValidDate) {
+            return;
         }
+
+        date = LocalDate.parse(dateString);
+        differenceInDays = ChronoUnit.DAYS.between(date, today);
+        this.player.setDaysFromLastDate(differenceInDays);
+
+        state = State.CHAT;
+        Metrics.handshakes.increment();
+        Server.players.enterLobby(this);
+        sendMessage("Thanks for this personal information and welcome to Love Letter. Type '/help' to show all possible commands.");
+        sendSessionToken();
+        Server.sendToLobbyExceptSender(name + " has joined.", this);
     }
 
     /**
      * For console command: prints the name of the player whose turn it is.
      */
     public void getActivePlayer() {
-        for (ClientHandler client : Server.clients) {
-            if (client.getPlayer().isActive()) {
-                sendMessage("It's " + client.getPlayer().getName() + "'s turn.");
-            }
-        }
+        sendMessage("It's " + room.getActivePlayer().getName() + "'s turn.");
     }
 
     /**
-     * For console command: prints the names of all players (all clients in Server.clients) on the console.
+     * For console command: prints the names of all players in the room (or in the lobby, if the player has no room) on the console.
      */
     public void getPlayerNames() {
-        for (ClientHandler client : Server.clients) {
-            sendMessage(client.getPlayer().getName());
+        if (room != null) {
+            for (ClientHandler client : room.getClients()) {
+                sendMessage(client.getPlayer().getName());
+            }
+            return;
+        }
+        for (ClientHandler client : Server.players.getLobby()) {
+            sendMessage(client.getName());
         }
     }
 
@@ -415,13 +910,21 @@ public class ClientHandler implements Runnable {
         sendMessage("/help: show all commands including their description.");
         sendMessage("/cards: show all cards with their respective values and effects.");
         sendMessage("/players: show the name of all players in the chat/game.");
-        sendMessage("/start OR /play: start the game 'Love Letter'.");
+        sendMessage("/rooms: show all rooms with their number of players.");
+        sendMessage("/create <name>: create a new room and join it.");
+        sendMessage("/join <name>: join an existing room.");
+        sendMessage("/watch <name>: watch the game of a room without playing.");
+        sendMessage("/leave: leave your room (or stop watching) and go back to the lobby.");
+        sendMessage("/queue [2-4]: wait for a table of 2 to 4 players (4 if no number is given), the game starts once it is complete.");
+        sendMessage("/unqueue: stop waiting for a table.");
+        sendMessage("/start OR /play: start the game 'Love Letter' in your room.");
         sendMessage("The following commands can only be used while the game is running:");
         sendMessage("/endGame: stop the game 'Love Letter' while playing. But you eventually have to explain yourself to your friends :)");
         sendMessage("/points: show the number of your points.");
         sendMessage("/hand OR /showHand: show the card(s) in your hand.");
         sendMessage("/allCards: show all cards, that have been played util now. Use this information wisely ;)");
         sendMessage("/active: show the active player.");
+        sendMessage("/odds: show how likely every card is in the hands of the other players, counted from the cards you have seen.");
     }
 
     /**
@@ -441,295 +944,189 @@ public class ClientHandler implements Runnable {
     }
 
 
-    //here are all the card effects
+    //here are all the card effects, the engine resolves them and the room tells everyone what happened
     public void playPrincess() {
-        this.player.setInRound(false);
-        sendMessage("You're out of the round :(");
-        Server.sendToAllClientsExceptSender(this.player.getName() + " played the Princess. Oops!", this);
-        this.player.setInactive();
-        this.player.removeCardFromHand("Princess");
-        Server.allPlayedCards.add(new Card("Princess", 8, 1));
+        room.playCard(player, Move.of(Cards.PRINCESS));
     }
 
     public void playCountess() {
-        Server.sendToAllClientsExceptSender(this.player.getName() + " played the Countess. What could this mean?", this);
-        this.player.setInactive();
-        this.player.removeCardFromHand("Countess");
-        Server.allPlayedCards.add(new Card("Countess", 7, 1));
+        room.playCard(player, Move.of(Cards.COUNTESS));
+    }
+
+    public void playHandmaid() {
+        room.playCard(player, Move.of(Cards.HANDMAID));
     }
 
     String target;
     Player targetPlayer;
     boolean isValidTarget;
+    byte pendingCard; // the card that waits for a target or a guess
 
-    public void playKing() {
-        try {
-            sendMessage("Choose a player to trade your card with. If every other player is protected by the Handmaid, there is no effect.");
-            target = input.readLine();
-            isValidTarget = isValidTarget(target);
-
-            while (!isValidTarget) {
-                target = input.readLine();
-                isValidTarget = isValidTarget(target);
-            }
-            targetPlayer = getPlayerByName(target);
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-
-        //remove the King from the hand before the effect, otherwise the King could be traded before it gets discarded
-        this.player.removeCardFromHand("King");
-        // if the player has to choose him/her-self, the card effect gets skipped
-        if (targetPlayer != this.getPlayer()) {
-            Server.sendToAllClientsExceptSender(this.player.getName() + " played the King and trades cards with " + targetPlayer.getName() + ".", this);
-
-            Card[] cardBuffer = new Card[2];
-
-            cardBuffer[0] = this.player.getCard();
-            cardBuffer[1] = targetPlayer.getCard();
+    /**
+     * Asks the player for the target of a card. The answer is checked in targetLogic().
+     *
+     * @param question to ask
+     * @param card     the played card
+     */
+    private void askForTarget(String question, byte card) {
+        sendMessage(question);
+        pendingCard = card;
+        state = State.TARGET;
+        room.startPrompt(player, card);
+    }
 
-            this.player.getPlayerHand().set(0, cardBuffer[1]);
-            sendMessage("You got the " + cardBuffer[1].getName() + " from " + targetPlayer.getName());
-            targetPlayer.getPlayerHand().set(0, cardBuffer[0]);
-            for (ClientHandler client : Server.clients) {
-                if (client.getPlayer() == targetPlayer) {
-                    client.sendMessage("You and " + this.player.getName() + " exchanged cards. You got the " + cardBuffer[0].getName() + " from " + this.player.getName() + ".");
-                }
-            }
+    /**
+     * Called by the room when the time for the turn is up and a card was played for the player:
+     * a question for a target or a guess is not open any more.
+     */
+    public void promptExpired() {
+        if (state == State.TARGET || state == State.GUESS) {
+            state = State.CHAT;
         }
-
-        this.player.setInactive();
-        Server.allPlayedCards.add(new Card("King", 6, 1));
     }
 
-    public void playPrince() {
-        try {
-            sendMessage("Choose a player who has to discard his card and draw a new one. If there is no legal target, you have to choose yourself.");
-            target = input.readLine();
-            isValidTarget = isValidTarget(target);
-
-            while (!isValidTarget) {
-                target = input.readLine();
-                isValidTarget = isValidTarget(target);
-            }
-            targetPlayer = getPlayerByName(target);
-
-        } catch (IOException e) {
-            e.printStackTrace();
+    /**
+     * Checks the answer to askForTarget() and asks again until the target is valid.
+     * Then the pending card is played (or, for the Guard, the card is asked for).
+     *
+     * @param line name of the target player
+     */
+    private void targetLogic(String line) {
+        target = line;
+        isValidTarget = isValidTarget(target);
+        if (!isValidTarget) {
+            return;
         }
+        targetPlayer = getPlayerByName(target);
+        state = State.CHAT;
 
-        if (targetPlayer != this.getPlayer()) {
-            Server.sendToAllClientsExceptSender(this.player.getName() + " played the Prince targeting " + targetPlayer.getName() + ". Say goodbye to your card.", this);
-            targetPlayer.discardCard();
-            targetPlayer.drawCard(Server.deck);
-
-        } else {
-            sendMessage("You choose yourself, so the card has no effect.");
-            Server.sendToAllClientsExceptSender(this.player.getName() + " played the Prince, but there was no target.", this);
+        // a Guard on the own player has no effect, so there is nothing to guess
+        if (pendingCard == Cards.GUARD && targetPlayer != player) {
+            sendMessage("Choose a card other than the Guard.");
+            state = State.GUESS;
+            return;
         }
-        this.player.setInactive();
-        this.player.removeCardFromHand("Prince");
-        Server.allPlayedCards.add(new Card("Prince", 5, 2));
+        room.playCard(player, Move.of(pendingCard, targetPlayer.getIndex()));
     }
 
-    public void playHandmaid() {
-        this.player.protect();
-        Server.sendToAllClientsExceptSender(this.player.getName() + " played the Handmaid. Keep your hands away!", this);
-        sendMessage("You are protected until your next turn.");
-        this.player.setInactive();
-        this.player.removeCardFromHand("Handmaid");
-        Server.allPlayedCards.add(new Card("Handmaid", 4, 2));
+    public void playKing() {
+        askForTarget("Choose a player to trade your card with. If every other player is protected by the Handmaid, there is no effect.", Cards.KING);
     }
 
-    public void playBaron() {
-        try {
-            sendMessage("Choose a player to compare your hand with.");
-            target = input.readLine();
-            isValidTarget = isValidTarget(target);
-
-            while (!isValidTarget) {
-                target = input.readLine();
-                isValidTarget = isValidTarget(target);
-            }
-            targetPlayer = getPlayerByName(target);
-
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-        if (this.player.getPlayerHand().get(0).getValue() < targetPlayer.getPlayerHand().get(0).getValue()) {
-            this.player.setInRound(false);
-            sendMessage(targetPlayer.getName() + " has the higher value card. You're out of the round :(");
-            Server.sendToAllClientsExceptSender(this.player.getName() + " played the Baron, but choose the wrong target and is kicked out of the round.", this);
-        }
-        if (this.player.getPlayerHand().get(0).getValue() > targetPlayer.getPlayerHand().get(0).getValue()) {
-            targetPlayer.setInRound(false);
-            targetPlayer.sendMessage(this.player.getName() + " has the higher value card. You're out of the round :(");
-        }
+    public void playPrince() {
+        askForTarget("Choose a player who has to discard his card and draw a new one. If there is no legal target, you have to choose yourself.", Cards.PRINCE);
+    }
 
-        this.player.setInactive();
-        this.player.removeCardFromHand("Baron");
-        Server.allPlayedCards.add(new Card("Baron", 3, 2));
+    public void playBaron() {
+        askForTarget("Choose a player to compare your hand with.", Cards.BARON);
     }
 
     public void playPriest() {
-        try {
-            sendMessage("Choose a player to spy on. If there is no legal target, you have to choose yourself.");
-            target = input.readLine();
-            isValidTarget = isValidTarget(target);
-
-            while (!isValidTarget) {
-                target = input.readLine();
-                isValidTarget = isValidTarget(target);
-            }
-            targetPlayer = getPlayerByName(target);
-
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-
-        Server.sendToAllClientsExceptSender(this.player.getName() + " played the Priest. Somebody's nosy.", this);
-
-        this.player.showCardToPlayer(targetPlayer.getName());
-
-        this.player.setInactive();
-        this.player.removeCardFromHand("Priest");
-        Server.allPlayedCards.add(new Card("Priest", 2, 2));
+        askForTarget("Choose a player to spy on. If there is no legal target, you have to choose yourself.", Cards.PRIEST);
     }
 
     String targetCard;
     boolean isValidCard;
 
     public void playGuard() {
-        try {
-            sendMessage("Choose a player. If there is no legal target, the card has no effect.");
-            target = input.readLine();
-            isValidTarget = isValidTarget(target);
-
-            while (!isValidTarget) {
-                target = input.readLine();
-                isValidTarget = isValidTarget(target);
-            }
-            targetPlayer = getPlayerByName(target);
-
-            sendMessage("Choose a card other than the Guard.");
-            targetCard = input.readLine();
-            isValidCard = isValidCard(targetCard);
-            if (targetCard.equals("Guard")) {
-                isValidCard = false;
-                sendMessage("You cannot choose the Guard. Please choose another card.");
-            }
-
-            while (!isValidCard) {
-                targetCard = input.readLine();
-                isValidCard = isValidCard(targetCard);
-                if (targetCard.equals("Guard")) {
-                    isValidCard = false;
-                    sendMessage("You cannot choose the Guard. Please choose another card.");
-                }
-            }
+        askForTarget("Choose a player. If there is no legal target, the card has no effect.", Cards.GUARD);
+    }
 
-        } catch (IOException e) {
-            e.printStackTrace();
+    /**
+     * Checks the card guessed with the Guard and asks again until it is valid, then plays the Guard.
+     *
+     * @param line name of the guessed card
+     */
+    private void guessLogic(String line) {
+        targetCard = line;
+        isValidCard = isValidCard(targetCard);
+        if (Cards.byName(targetCard) == Cards.GUARD) {
+            isValidCard = false;
+            sendMessage("You cannot choose the Guard. Please choose another card.");
         }
-        if (targetPlayer != this.getPlayer()) {
-            if (targetPlayer.getCard().getName().equals(targetCard)) {
-                targetPlayer.setInRound(false);
-                sendMessage("You guessed right! Sorry " + targetPlayer.getName() + "!");
-                Server.sendToAllClientsExceptSender(this.player.getName() + " played the Guard targeting " + targetPlayer.getName() + " and guessed right. Sorry " + targetPlayer.getName() + "!", this);
-            } else {
-                Server.sendToAllClientsExceptSender(this.player.getName() + " played the Guard targeting " + targetPlayer.getName() + " and guessed wrong. Lucky you, " + targetPlayer.getName() + "!", this);
-                sendMessage("That was wrong.");
-            }
+        if (!isValidCard) {
+            return;
         }
-
-        this.player.setInactive();
-        this.player.removeCardFromHand("Guard");
-        Server.allPlayedCards.add(new Card("Guard", 1, 5));
+        state = State.CHAT;
+        room.playCard(player, Move.of(Cards.GUARD, targetPlayer.getIndex(), Cards.byName(targetCard)));
     }
 
     /**
-     * Detects a String and runs the corresponding method. If the String is none of the commands, an error message will be displayed.
+     * Runs the method of the command.
      *
-     * @param command String with the name of the command
+     * @param command any but the room commands
      */
-    public void getCommandMethod(String command) {
+    public void getCommandMethod(Command command) {
         switch (command) {
-            case "help":
+            case HELP:
                 this.help();
                 break;
-            case "cards":
+            case CARDS:
                 this.cards();
                 break;
-            case "players":
+            case PLAYERS:
                 this.getPlayerNames();
                 break;
-            case "start":
-            case "play":
+            case START:
+            case PLAY:
                 if (legalGameStart()) {
-                    Server.acceptingClients = false;
-                    Server.gameRunning = true;
+                    room.startGame();
                 }
                 break;
-            case "endGame":
-                Server.gameRunning = false;
-                Server.acceptingClients = true;
-                for (ClientHandler client : Server.clients) {
-                    client.getPlayer().setInactive();
-                    client.getPlayer().getPlayerHand().clear();
-                    client.getPlayer().removeProtection();
-                }
+            case END_GAME:
+                room.endGame();
                 sendMessage("You ended the game before a winner could be decided!");
-                Server.sendToAllClientsExceptSender(this.getName() + " stopped the game. No winner was decided.", this);
-            case "points":
-                sendMessage("You have " + player.getPoints() + " points.");
+                room.sendToAllClientsExceptSender(this.getName() + " stopped the game. No winner was decided.", this);
+            case POINTS:
+                room.showPoints(player);
                 break;
-            case "hand":
-            case "showHand":
-                player.showHand();
+            case HAND:
+            case SHOW_HAND:
+                room.showHand(player);
                 break;
-            case "allCards":
-                sendMessage("Here are all cards that got played in this round:");
-                for (Card card : Server.allPlayedCards) {
-                    sendMessage(card.getName());
-                }
+            case ALL_CARDS:
+                room.showPlayedCards(player);
+                break;
+            case ODDS:
+                room.showOdds(player);
                 break;
-            case "active":
-                if (this.getPlayer().isActive()) {
+            case ACTIVE:
+                if (room.isActive(player)) {
                     sendMessage("It's your turn!");
                 } else {
                     this.getActivePlayer();
                 }
                 break;
-            case "Princess":
+            case PRINCESS:
                 playPrincess();
                 break;
-            case "Countess":
+            case COUNTESS:
                 playCountess();
                 break;
-            case "King":
-                if (player.mustPlayCountess()) {
+            case KING:
+                if (Engine.mustPlayCountess(room.getState(), player.getIndex())) {
                     player.sendMessage("You have the Countess and either King or Prince: the countess must be played!");
                     break;
                 }
                 playKing();
                 break;
-            case "Prince":
-                if (player.mustPlayCountess()) {
+            case PRINCE:
+                if (Engine.mustPlayCountess(room.getState(), player.getIndex())) {
                     player.sendMessage("You have the Countess and either King or Prince: the countess must be played!");
                     break;
                 }
                 playPrince();
                 break;
-            case "Handmaid":
+            case HANDMAID:
                 playHandmaid();
                 break;
-            case "Baron":
+            case BARON:
                 playBaron();
                 break;
-            case "Priest":
+            case PRIEST:
                 playPriest();
                 break;
-            case "Guard":
+            case GUARD:
                 playGuard();
                 break;
             default:
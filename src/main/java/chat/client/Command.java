@@ -0,0 +1,137 @@
+package chat.client;
+
+import game.engine.Cards;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * All commands a client can type after the '/', grouped like the checks in ClientHandler need them.
+ * The names are looked up in a table that is built once and compares bytes (see lookup()),
+ * so a command is found right in the line the client sent, without making a String of it.
+ */
+public enum Command {
+    HELP("help", Group.OTHER),
+    CARDS("cards", Group.OTHER),
+    PLAYERS("players", Group.OTHER),
+    START("start", Group.OTHER),
+    PLAY("play", Group.OTHER),
+    // the room commands may have an argument, e.g. "/join myRoom"
+    ROOMS("rooms", Group.ROOM),
+    CREATE("create", Group.ROOM),
+    JOIN("join", Group.ROOM),
+    LEAVE("leave", Group.ROOM),
+    QUEUE("queue", Group.ROOM),
+    UNQUEUE("unqueue", Group.ROOM),
+    WATCH("watch", Group.ROOM),
+    // only while the game is running
+    END_GAME("endGame", Group.GAME),
+    POINTS("points", Group.GAME),
+    HAND("hand", Group.GAME),
+    SHOW_HAND("showHand", Group.GAME),
+    ALL_CARDS("allCards", Group.GAME),
+    ACTIVE("active", Group.GAME),
+    ODDS("odds", Group.GAME),
+    // playing a card, only in the player's turn
+    PRINCESS(Cards.PRINCESS),
+    COUNTESS(Cards.COUNTESS),
+    KING(Cards.KING),
+    PRINCE(Cards.PRINCE),
+    HANDMAID(Cards.HANDMAID),
+    BARON(Cards.BARON),
+    PRIEST(Cards.PRIEST),
+    GUARD(Cards.GUARD);
+
+    public enum Group {
+        OTHER, ROOM, GAME, CARD
+    }
+
+    // the commands by the hash of their name, open addressing; big enough that most lookups hit on the first try
+    private static final Command[] table = new Command[64];
+    private static final int mask = table.length - 1;
+
+    static {
+        for (Command command : values()) {
+            int index = hash(command.name, 0, command.name.length) & mask;
+            while (table[index] != null) {
+                index = (index + 1) & mask;
+            }
+            table[index] = command;
+        }
+    }
+
+    private final String text;
+    private final byte[] name;
+    private final Group group;
+    private final byte card;
+
+    Command(String name, Group group) {
+        this.text = name;
+        this.name = name.getBytes(StandardCharsets.US_ASCII);
+        this.group = group;
+        this.card = Cards.NONE;
+    }
+
+    Command(byte card) {
+        this.text = Cards.name(card);
+        this.name = text.getBytes(StandardCharsets.US_ASCII);
+        this.group = Group.CARD;
+        this.card = card;
+    }
+
+    /**
+     * @return what the client types after the '/'
+     */
+    public String getName() {
+        return this.text;
+    }
+
+    public Group getGroup() {
+        return this.group;
+    }
+
+    /**
+     * @return id of the card for the card commands, Cards.NONE for the others
+     */
+    public byte getCard() {
+        return this.card;
+    }
+
+    /**
+     * @param line the bytes of the line
+     * @param from index of the first byte of the name
+     * @param to   index after the last byte of the name
+     * @return the command with exactly this name (the case matters), or null if there is none
+     */
+    public static Command lookup(byte[] line, int from, int to) {
+        int index = hash(line, from, to) & mask;
+        Command command;
+        while ((command = table[index]) != null) {
+            if (command.matches(line, from, to)) {
+                return command;
+            }
+            index = (index + 1) & mask;
+        }
+        return null;
+    }
+
+    private boolean matches(byte[] line, int from, int to) {
+        if (to - from != name.length) {
+            return false;
+        }
+        for (int i = 0; i < name.length; i++) {
+            if (line[from + i] != name[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int hash(byte[] bytes, int from, int to) {
+        int hash = to - from;
+        for (int i = from; i < to; i++) {
+            hash = hash * 31 + bytes[i];
+        }
+        // spread the bits, the table uses only the lowest ones
+        return hash ^ hash >>> 7 ^ hash >>> 15;
+    }
+}
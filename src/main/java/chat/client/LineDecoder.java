@@ -0,0 +1,83 @@
+package chat.client;
+
+/**
+ * Tells in one pass over the bytes of a line what the client wants: chat, whisper to a player, a command (see Command)
+ * or leave with "bye". The line is read right where the transport put it; only the parts that are really needed as text
+ * (chat messages, names) are turned into Strings afterwards, by the ClientHandler.
+ * The result is packed into one int: bits 0-3 the kind, bits 4-11 the ordinal of the command plus one (0 for none),
+ * bits 12-31 the index of the first byte after the command or the name of the whisper.
+ */
+public final class LineDecoder {
+    public static final int EMPTY = 0;
+    public static final int CHAT = 1;
+    public static final int BYE = 2;
+    // "/name text": the name ends at end(), the text starts after the space
+    public static final int WHISPER = 3;
+    // a known command; the room commands may have an argument after end()
+    public static final int COMMAND = 4;
+    // a '/' without a known command
+    public static final int UNKNOWN = 5;
+
+    // lines are much shorter (see NioConnection), a longer first word can't be a command or a name anyway
+    private static final int maxEnd = (1 << 20) - 1;
+    private static final Command[] commands = Command.values();
+
+    private LineDecoder() {
+    }
+
+    /**
+     * @param line   the bytes of the line, without the line break
+     * @param length number of bytes of the line
+     * @return the packed kind, command and end, see the accessors
+     */
+    public static int decode(byte[] line, int length) {
+        if (length == 0) {
+            return EMPTY;
+        }
+        if (line[0] != '/') {
+            if (length == 3 && line[0] == 'b' && line[1] == 'y' && line[2] == 'e') {
+                return BYE;
+            }
+            return CHAT;
+        }
+        int end = 1;
+        while (end < length && line[end] != ' ') {
+            end++;
+        }
+        if (end > maxEnd) {
+            return UNKNOWN;
+        }
+        Command command = Command.lookup(line, 1, end);
+        if (end == length) {
+            return command == null ? UNKNOWN : of(COMMAND, command, end);
+        }
+        // there is a space: a room command with its argument, otherwise the first word is the name of a player
+        if (command != null && command.getGroup() == Command.Group.ROOM) {
+            return of(COMMAND, command, end);
+        }
+        return end == 1 ? UNKNOWN : of(WHISPER, null, end);
+    }
+
+    private static int of(int kind, Command command, int end) {
+        return kind | (command == null ? 0 : command.ordinal() + 1) << 4 | end << 12;
+    }
+
+    public static int kind(int decoded) {
+        return decoded & 0xF;
+    }
+
+    /**
+     * @return the command, or null if the line is not a command
+     */
+    public static Command command(int decoded) {
+        int ordinal = (decoded >> 4) & 0xFF;
+        return ordinal == 0 ? null : commands[ordinal - 1];
+    }
+
+    /**
+     * @return index of the first byte after the command or the name of the whisper
+     */
+    public static int end(int decoded) {
+        return decoded >>> 12;
+    }
+}
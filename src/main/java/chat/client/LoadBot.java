@@ -0,0 +1,336 @@
+package chat.client;
+
+import chat.protocol.CardPlayed;
+import chat.protocol.HandUpdate;
+import chat.protocol.Message;
+import chat.protocol.MessageCodec;
+import chat.protocol.Protocol;
+import chat.protocol.Text;
+import chat.protocol.TurnStarted;
+import game.engine.Cards;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * One connection of the load test (see LoadTest): a bot that goes through the handshake like a player,
+ * meets the other bots of its room, and plays legal cards whenever it is its turn.
+ * It speaks the binary protocol, so it reads the typed messages instead of the text, and sends one command at a time:
+ * the time from a command to the first message after it is recorded per type of command.
+ * All methods run on the thread of the bot's LoadTest.Worker.
+ */
+class LoadBot {
+    private final LoadTest test;
+    private final int index;
+    private final String name;
+    private final boolean creator; // the first bot of a room creates and starts it
+    private final int playersInRoom;
+    // the names to try as target: the other bots of the room in random order, the bot itself last
+    private final String[] targets;
+    private final SocketChannel channel;
+    private SelectionKey key;
+    private LoadTest.Worker worker;
+
+    private ByteBuffer in = ByteBuffer.allocate(16 * 1024);
+    private final ByteBuffer out = ByteBuffer.allocate(4 * 1024);
+    private boolean greeted = false; // the greeting is a line, everything after it is a frame
+    private boolean closed = false;
+    private boolean inHandshake = true; // until the date was accepted
+
+    private int pending = -1; // the command that waits for its answer, one of LoadTest.NAME...
+    private long sentAt;
+    private long moveStartedAt;
+    private long retryAt; // when to join again, if the room did not exist yet
+    private int joined = 1;   // players in the room, counted by the creator
+    private boolean myTurn = false;
+    private boolean moving = false;
+    private int candidate;
+    private String guess;
+
+    // constructor
+    LoadBot(LoadTest test, int index, SocketChannel channel) {
+        this.test = test;
+        this.index = index;
+        this.channel = channel;
+        this.name = test.botName(index);
+        int first = index - index % LoadTest.playersPerRoom;
+        this.creator = index == first;
+        this.playersInRoom = Math.min(LoadTest.playersPerRoom, test.getConnections() - first);
+        this.targets = new String[playersInRoom];
+        int count = 0;
+        for (int i = first; i < first + playersInRoom; i++) {
+            if (i != index) {
+                targets[count++] = test.botName(i);
+            }
+        }
+        for (int i = count - 1; i > 0; i--) {
+            int j = ThreadLocalRandom.current().nextInt(i + 1);
+            String swap = targets[i];
+            targets[i] = targets[j];
+            targets[j] = swap;
+        }
+        targets[count] = name;
+    }
+
+    /**
+     * Registers the channel with the selector of the worker, on the thread of the worker.
+     */
+    void open(Selector selector, LoadTest.Worker worker) {
+        this.worker = worker;
+        // a connection to the local host may be up right away
+        boolean connecting = channel.isConnectionPending();
+        try {
+            key = channel.register(selector, connecting ? SelectionKey.OP_CONNECT : SelectionKey.OP_READ, this);
+        } catch (IOException e) {
+            fail();
+            return;
+        }
+        if (!connecting) {
+            connected();
+        }
+    }
+
+    long getRetryAt() {
+        return this.retryAt;
+    }
+
+    boolean isClosed() {
+        return this.closed;
+    }
+
+    /**
+     * The connection is up: choose the binary protocol and tell the name.
+     */
+    void connected() {
+        try {
+            if (channel.isConnectionPending() && !channel.finishConnect()) {
+                return;
+            }
+        } catch (IOException e) {
+            fail();
+            return;
+        }
+        key.interestOps(SelectionKey.OP_READ);
+        send("/protocol binary", -1);
+        send(name, LoadTest.NAME);
+    }
+
+    /**
+     * Reads what the server sent and handles every complete frame.
+     */
+    void read() {
+        int read;
+        try {
+            read = channel.read(in);
+        } catch (IOException e) {
+            read = -1;
+        }
+        if (read < 0) {
+            fail();
+            return;
+        }
+        in.flip();
+        if (!greeted) {
+            while (in.hasRemaining() && !greeted) {
+                greeted = in.get() == '\n';
+            }
+        }
+        while (greeted && in.remaining() >= 4) {
+            int length = in.getInt(in.position());
+            if (in.remaining() < 4 + length) {
+                if (4 + length > in.capacity()) {
+                    // a frame longer than the buffer, e.g. a long chat message
+                    ByteBuffer bigger = ByteBuffer.allocate(4 + length);
+                    bigger.put(in);
+                    in = bigger;
+                    return;
+                }
+                break;
+            }
+            in.getInt();
+            byte[] bytes = new byte[length];
+            in.get(bytes);
+            test.countMessageIn();
+            try {
+                onMessage(MessageCodec.decode(bytes, Protocol.BINARY));
+            } catch (IOException e) {
+                fail();
+                return;
+            }
+        }
+        in.compact();
+    }
+
+    private void onMessage(Message message) {
+        long now = System.nanoTime();
+        int answered = pending;
+        // the commands of a move are answered by the next message, nobody else acts during the turn
+        if (moving && pending >= 0) {
+            record(pending, now - sentAt);
+            pending = -1;
+        }
+        if (message instanceof Text) {
+            onText(((Text) message).getText(), answered, now);
+        } else if (message instanceof TurnStarted) {
+            myTurn = ((TurnStarted) message).getPlayer().equals(name);
+        } else if (message instanceof HandUpdate) {
+            HandUpdate hand = (HandUpdate) message;
+            // the hand comes right after the turn started, with the drawn card
+            if (myTurn && !moving && hand.getCardCount() == 2) {
+                playCard(hand.getCard(0), hand.getCard(1));
+            }
+        } else if (message instanceof CardPlayed && moving && ((CardPlayed) message).getPlayer().equals(name)) {
+            record(LoadTest.MOVE, now - moveStartedAt);
+            test.countMove();
+            moving = false;
+            myTurn = false;
+        }
+    }
+
+    private void onText(String text, int answered, long now) {
+        if (moving) {
+            if (text.startsWith("Choose a player")) {
+                candidate = 0;
+                send(targets[candidate], LoadTest.TARGET);
+            } else if (text.startsWith("Choose a card other than the Guard")) {
+                send(guess, LoadTest.GUESS);
+            } else if (answered == LoadTest.TARGET && candidate + 1 < targets.length) {
+                // the target was out of the round or protected: try the next one
+                send(targets[++candidate], LoadTest.TARGET);
+            }
+            return;
+        }
+        if (pending == LoadTest.NAME && text.startsWith("Welcome")) {
+            answer(now);
+            send("2020-02-02", LoadTest.DATE);
+        } else if (pending == LoadTest.DATE && text.startsWith("Thanks for this")) {
+            answer(now);
+            inHandshake = false;
+            test.handshakeDone();
+            joinRoom();
+        } else if (pending == LoadTest.ROOM && text.startsWith("You joined the room")) {
+            answer(now);
+            startIfComplete();
+        } else if (pending == LoadTest.ROOM && text.startsWith("There is no room")) {
+            // the creator of the room was not there yet
+            pending = -1;
+            retryAt = now + 20000000L;
+            worker.retryLater(this);
+        } else if (creator && text.endsWith(" joined the room.")) {
+            joined++;
+            startIfComplete();
+        } else if (pending == LoadTest.START && text.startsWith("Game started")) {
+            answer(now);
+        } else if (text.startsWith("The game is over")) {
+            myTurn = false;
+            if (creator) {
+                test.countGame();
+                if (test.isRunning()) {
+                    send("/start", LoadTest.START);
+                }
+            }
+        }
+    }
+
+    /**
+     * Plays one of the two cards like a careful beginner: never the Princess, the Countess when she has to,
+     * otherwise one of the two at random.
+     */
+    private void playCard(int first, int second) {
+        int card;
+        if (first == Cards.PRINCESS || second == Cards.PRINCESS) {
+            card = first == Cards.PRINCESS ? second : first;
+        } else if (first == Cards.COUNTESS && (second == Cards.KING || second == Cards.PRINCE)) {
+            card = first;
+        } else if (second == Cards.COUNTESS && (first == Cards.KING || first == Cards.PRINCE)) {
+            card = second;
+        } else {
+            card = ThreadLocalRandom.current().nextBoolean() ? first : second;
+        }
+        guess = Cards.name(Cards.PRIEST + ThreadLocalRandom.current().nextInt(Cards.PRINCESS - Cards.PRIEST + 1));
+        moving = true;
+        moveStartedAt = System.nanoTime();
+        send("/" + Cards.name(card), LoadTest.CARD);
+    }
+
+    /**
+     * Creates or joins the room of the bot. Called again by the worker if the room did not exist yet.
+     */
+    void joinRoom() {
+        send((creator ? "/create " : "/join ") + test.roomName(index), LoadTest.ROOM);
+    }
+
+    private void startIfComplete() {
+        if (creator && pending != LoadTest.ROOM && joined == playersInRoom && playersInRoom > 1) {
+            send("/start", LoadTest.START);
+        }
+    }
+
+    private void answer(long now) {
+        record(pending, now - sentAt);
+        pending = -1;
+    }
+
+    private void record(int command, long nanos) {
+        worker.getLatencies()[command].recordValue(Math.min(nanos / 1000, LoadTest.maxLatencyMicros));
+    }
+
+    /**
+     * Sends one line; the time is taken for the answer unless command is -1.
+     */
+    private void send(String line, int command) {
+        if (closed) {
+            return;
+        }
+        if (command >= 0) {
+            pending = command;
+            sentAt = System.nanoTime();
+        }
+        out.put(line.getBytes(StandardCharsets.UTF_8)).put((byte) '\n');
+        test.countMessageOut();
+        flush();
+    }
+
+    /**
+     * Writes what the socket takes; the rest waits for OP_WRITE.
+     */
+    void flush() {
+        out.flip();
+        try {
+            channel.write(out);
+        } catch (IOException e) {
+            fail();
+            return;
+        }
+        int ops = out.hasRemaining() ? SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ;
+        out.compact();
+        key.interestOps(ops);
+    }
+
+    private void fail() {
+        if (!closed) {
+            test.countFailure(inHandshake);
+        }
+        close();
+    }
+
+    void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (key != null) {
+            key.cancel();
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // nothing left to do
+        }
+    }
+}
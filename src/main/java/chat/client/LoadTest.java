@@ -0,0 +1,268 @@
+package chat.client;
+
+import org.HdrHistogram.Histogram;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.InetSocketAddress;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Load test against a running server: opens many connections with a bot each (see LoadBot), four bots per room,
+ * lets them play game after game for the given time and prints the latency from command to answer per type of command.
+ * A few Worker threads serve all bots with a Selector each, so thousands of connections need no thousands of threads.
+ * Run it against a local server before a change of the server goes live, e.g.
+ * java -jar vp-damboeck-1.0-SNAPSHOT.jar loadtest 2000 60 localhost 8000
+ */
+public class LoadTest {
+    // the types of commands whose latency is recorded
+    static final int NAME = 0;
+    static final int DATE = 1;
+    static final int ROOM = 2;
+    static final int START = 3;
+    static final int CARD = 4;
+    static final int TARGET = 5;
+    static final int GUESS = 6;
+    static final int MOVE = 7; // a whole move, from the card to the CardPlayed of the server
+    private static final String[] commandNames = {"name", "date", "room", "start", "card", "target", "guess", "move"};
+    static final int playersPerRoom = 4;
+    static final long maxLatencyMicros = 60L * 60 * 1000 * 1000;
+    // new connections wait while this many bots are still in the handshake, so the lobby announcements stay small
+    private static final int maxHandshakes = 200;
+
+    private final String host;
+    private final int port;
+    private final int connections;
+    private final int seconds;
+    // part of every name, so a second run against the same server does not collide with the names and rooms of the first
+    private final String runId;
+    private volatile boolean running = true;
+    private final AtomicInteger handshakes = new AtomicInteger();
+    private final LongAdder messagesIn = new LongAdder();
+    private final LongAdder messagesOut = new LongAdder();
+    private final LongAdder moves = new LongAdder();
+    private final LongAdder games = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+
+    // constructor
+    public LoadTest(String host, int port, int connections, int seconds) {
+        this.host = host;
+        this.port = port;
+        this.connections = connections;
+        this.seconds = seconds;
+        // always three letters ("baa" to "zzz"), so the names of two runs can't run into each other
+        this.runId = letters(26 * 26 + ThreadLocalRandom.current().nextInt(25 * 26 * 26));
+    }
+
+    /**
+     * Connects the bots, lets them play for the given time and prints the results.
+     */
+    public void run(PrintStream out) throws IOException, InterruptedException {
+        int workerCount = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+        Worker[] workers = new Worker[workerCount];
+        Thread[] threads = new Thread[workerCount];
+        for (int i = 0; i < workerCount; i++) {
+            workers[i] = new Worker();
+            threads[i] = new Thread(workers[i], "load-worker-" + i);
+            threads[i].start();
+        }
+
+        long start = System.nanoTime();
+        long end = start + seconds * 1000000000L;
+        InetSocketAddress address = new InetSocketAddress(host, port);
+        for (int i = 0; i < connections && System.nanoTime() < end; i++) {
+            while (handshakes.get() >= maxHandshakes && System.nanoTime() < end) {
+                Thread.sleep(1);
+            }
+            SocketChannel channel = SocketChannel.open();
+            channel.configureBlocking(false);
+            channel.connect(address);
+            handshakes.incrementAndGet();
+            workers[i % workerCount].add(new LoadBot(this, i, channel));
+        }
+        long connectMillis = (System.nanoTime() - start) / 1000000;
+        while (System.nanoTime() < end) {
+            Thread.sleep(Math.max(1, Math.min(1000, (end - System.nanoTime()) / 1000000)));
+        }
+        running = false;
+
+        Histogram[] latencies = new Histogram[commandNames.length];
+        for (int command = 0; command < latencies.length; command++) {
+            latencies[command] = new Histogram(maxLatencyMicros, 3);
+        }
+        for (int i = 0; i < workerCount; i++) {
+            workers[i].stop();
+            threads[i].join();
+            for (int command = 0; command < latencies.length; command++) {
+                latencies[command].add(workers[i].getLatencies()[command]);
+            }
+        }
+        double elapsed = (System.nanoTime() - start) / 1e9;
+        print(out, latencies, elapsed, connectMillis);
+    }
+
+    private void print(PrintStream out, Histogram[] latencies, double elapsed, long connectMillis) {
+        out.println(String.format("connections=%d failed=%d connected in %d ms, %.0f s",
+                connections, failures.sum(), connectMillis, elapsed));
+        out.println(String.format("games=%d (%.1f/min) moves=%d (%.1f/s) messages in=%d (%.0f/s) out=%d (%.0f/s)",
+                games.sum(), games.sum() * 60 / elapsed, moves.sum(), moves.sum() / elapsed,
+                messagesIn.sum(), messagesIn.sum() / elapsed, messagesOut.sum(), messagesOut.sum() / elapsed));
+        out.println(String.format("%-8s %10s %10s %10s %10s %10s %10s", "command", "count", "p50 (us)", "p90", "p99", "p99.9", "max"));
+        for (int command = 0; command < latencies.length; command++) {
+            Histogram histogram = latencies[command];
+            out.println(String.format("%-8s %10d %10d %10d %10d %10d %10d", commandNames[command], histogram.getTotalCount(),
+                    histogram.getValueAtPercentile(50), histogram.getValueAtPercentile(90), histogram.getValueAtPercentile(99),
+                    histogram.getValueAtPercentile(99.9), histogram.getMaxValue()));
+        }
+    }
+
+    int getConnections() {
+        return this.connections;
+    }
+
+    boolean isRunning() {
+        return this.running;
+    }
+
+    String botName(int index) {
+        return "Load" + runId + letters(index);
+    }
+
+    String roomName(int index) {
+        return "load" + runId + letters(index / playersPerRoom);
+    }
+
+    void handshakeDone() {
+        handshakes.decrementAndGet();
+    }
+
+    void countFailure(boolean inHandshake) {
+        failures.increment();
+        if (inHandshake) {
+            handshakes.decrementAndGet();
+        }
+    }
+
+    void countMessageIn() {
+        messagesIn.increment();
+    }
+
+    void countMessageOut() {
+        messagesOut.increment();
+    }
+
+    void countMove() {
+        moves.increment();
+    }
+
+    void countGame() {
+        games.increment();
+    }
+
+    /**
+     * Names may only contain letters, so numbers are written with letters (0 = a, 26 = ba, ...).
+     */
+    private static String letters(int number) {
+        StringBuilder builder = new StringBuilder();
+        do {
+            builder.insert(0, (char) ('a' + number % 26));
+            number /= 26;
+        } while (number > 0);
+        return builder.toString();
+    }
+
+    /**
+     * One thread with one Selector for many bots. Every worker records into its own histograms,
+     * they are only added up once the worker stopped.
+     */
+    static class Worker implements Runnable {
+        private final Selector selector;
+        private final Queue<LoadBot> added = new ConcurrentLinkedQueue<>();
+        private final List<LoadBot> bots = new ArrayList<>();
+        // bots that wait to join their room again, in the order of their retry time
+        private final ArrayDeque<LoadBot> retries = new ArrayDeque<>();
+        private final Histogram[] latencies = new Histogram[commandNames.length];
+        private volatile boolean stopped = false;
+
+        // constructor
+        Worker() throws IOException {
+            this.selector = Selector.open();
+            for (int command = 0; command < latencies.length; command++) {
+                latencies[command] = new Histogram(maxLatencyMicros, 3);
+            }
+        }
+
+        Histogram[] getLatencies() {
+            return this.latencies;
+        }
+
+        void add(LoadBot bot) {
+            added.add(bot);
+            selector.wakeup();
+        }
+
+        void retryLater(LoadBot bot) {
+            retries.add(bot);
+        }
+
+        void stop() {
+            stopped = true;
+            selector.wakeup();
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (!stopped) {
+                    selector.select(retries.isEmpty() ? 0 : 10);
+                    LoadBot bot;
+                    while ((bot = added.poll()) != null) {
+                        bot.open(selector, this);
+                        bots.add(bot);
+                    }
+                    for (SelectionKey key : selector.selectedKeys()) {
+                        bot = (LoadBot) key.attachment();
+                        if (key.isValid() && key.isConnectable()) {
+                            bot.connected();
+                        }
+                        if (key.isValid() && key.isReadable()) {
+                            bot.read();
+                        }
+                        if (key.isValid() && key.isWritable()) {
+                            bot.flush();
+                        }
+                    }
+                    selector.selectedKeys().clear();
+                    long now = System.nanoTime();
+                    while (!retries.isEmpty() && retries.peek().getRetryAt() <= now) {
+                        bot = retries.poll();
+                        if (!bot.isClosed()) {
+                            bot.joinRoom();
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            } finally {
+                for (LoadBot bot : bots) {
+                    bot.close();
+                }
+                try {
+                    selector.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+}
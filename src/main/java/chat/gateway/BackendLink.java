@@ -0,0 +1,198 @@
+package chat.gateway;
+
+import chat.protocol.Message;
+import chat.protocol.MessageCodec;
+import chat.protocol.Protocol;
+import chat.protocol.Text;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * The connection of one GatewaySession to one backend server. It reads what the server sends one message at a time,
+ * a line or a frame of the structured protocol, so the session can pass the bytes on unchanged
+ * and only looks into the few texts that tell where the player is (see text()).
+ */
+final class BackendLink {
+    // like the lines of the clients (see NioConnection); frames are limited by MessageCodec
+    private static final int maxLineLength = 8 * 1024;
+    private static final int maxFrameLength = 1024 * 1024;
+    // {"type":"Text", the start of every Text in JSON
+    private static final byte[] jsonText = "{\"type\":\"Text\"".getBytes(StandardCharsets.US_ASCII);
+    private static final int binaryText = 1;
+
+    private final InetSocketAddress backend;
+    private final Socket socket;
+    private final DataInputStream input;
+    private final OutputStream output;
+    // the greeting is always a line, see switchProtocol()
+    private volatile Protocol protocol = Protocol.LINE;
+    // set once the session moved on to another backend: whatever this one still sends is not for the client any more
+    private volatile boolean retired = false;
+    // the last message read, with its line break or length
+    private byte[] message = new byte[256];
+    private int length;
+
+    // constructor
+    BackendLink(InetSocketAddress backend) throws IOException {
+        this.backend = backend;
+        this.socket = new Socket();
+        socket.connect(backend, 5000);
+        socket.setTcpNoDelay(true);
+        this.input = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        this.output = new BufferedOutputStream(socket.getOutputStream());
+    }
+
+    InetSocketAddress getBackend() {
+        return this.backend;
+    }
+
+    /**
+     * Everything the server sends after the answer to "/protocol" is in the protocol the client asked for.
+     */
+    void switchProtocol(Protocol protocol) {
+        this.protocol = protocol;
+    }
+
+    void setTimeout(int millis) throws IOException {
+        socket.setSoTimeout(millis);
+    }
+
+    boolean isRetired() {
+        return this.retired;
+    }
+
+    void retire() {
+        this.retired = true;
+    }
+
+    /**
+     * Reads the next message of the server into message().
+     *
+     * @throws EOFException once the server closed the connection
+     */
+    void read() throws IOException {
+        if (protocol == Protocol.LINE) {
+            length = 0;
+            int b;
+            while ((b = input.read()) != '\n') {
+                if (b < 0) {
+                    throw new EOFException();
+                }
+                if (length < maxLineLength) {
+                    ensureCapacity(length + 2);
+                    message[length++] = (byte) b;
+                }
+            }
+            message[length++] = '\n';
+            return;
+        }
+        int frameLength = input.readInt();
+        if (frameLength < 0 || frameLength > maxFrameLength) {
+            throw new IOException("Invalid frame length " + frameLength);
+        }
+        ensureCapacity(4 + frameLength);
+        message[0] = (byte) (frameLength >>> 24);
+        message[1] = (byte) (frameLength >>> 16);
+        message[2] = (byte) (frameLength >>> 8);
+        message[3] = (byte) frameLength;
+        input.readFully(message, 4, frameLength);
+        length = 4 + frameLength;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (message.length < capacity) {
+            message = Arrays.copyOf(message, Math.max(capacity, message.length * 2));
+        }
+    }
+
+    /**
+     * @return number of bytes that can be read without waiting for the server
+     */
+    int available() throws IOException {
+        return input.available();
+    }
+
+    /**
+     * @return the bytes of the last message; only the first length() belong to it
+     */
+    byte[] message() {
+        return this.message;
+    }
+
+    int length() {
+        return this.length;
+    }
+
+    /**
+     * The texts of the server that the session looks at all start with 'Y', 'T' or 'W'
+     * ("You joined the room", "The room ... was closed", "Welcome ..."), so every other message is passed on without decoding it.
+     *
+     * @return the text of the last message if it may be one of them, otherwise null
+     */
+    String text() throws IOException {
+        if (protocol == Protocol.LINE) {
+            int end = length - 1;
+            if (end > 0 && message[end - 1] == '\r') {
+                end--;
+            }
+            return end > 0 && isFirstLetter(message[0]) ? new String(message, 0, end, StandardCharsets.UTF_8) : null;
+        }
+        if (protocol == Protocol.BINARY) {
+            // type, length of the string (two bytes), then the string
+            if (length < 8 || message[4] != binaryText || !isFirstLetter(message[7])) {
+                return null;
+            }
+        } else if (!startsWith(jsonText)) {
+            return null;
+        }
+        Message decoded = MessageCodec.decode(Arrays.copyOfRange(message, 4, length), protocol);
+        return decoded instanceof Text ? ((Text) decoded).getText() : null;
+    }
+
+    private static boolean isFirstLetter(byte b) {
+        return b == 'Y' || b == 'T' || b == 'W';
+    }
+
+    private boolean startsWith(byte[] prefix) {
+        if (length - 4 < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (message[4 + i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Sends one line of the client.
+     */
+    void send(byte[] line, int length) throws IOException {
+        output.write(line, 0, length);
+        output.write('\n');
+        output.flush();
+    }
+
+    void send(String line) throws IOException {
+        byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+        send(bytes, bytes.length);
+    }
+
+    void close() {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // closed anyway
+        }
+    }
+}
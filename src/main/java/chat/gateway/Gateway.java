@@ -0,0 +1,274 @@
+package chat.gateway;
+
+import chat.server.Threads;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Spreads the rooms over several servers (backends): the clients connect to the gateway as if it were the server,
+ * the gateway passes every client on to the backend of his/her room (see GatewaySession).
+ * Which backend a room lives on is decided by consistent hashing of its name (see HashRing),
+ * so the backends share the rooms without knowing of each other, and every room is played on exactly one of them.
+ * <p>
+ * Backends are added and removed while the gateway runs (type "add host:port", "remove host:port" or "backends"
+ * on its console). A room that has players keeps its backend until the last of them left (see pin()):
+ * adding or removing a backend only changes where new rooms (and the rooms that are empty right now) go.
+ * The lobby is the lobby of the backend the client happens to be on, so chat and whispers only reach the players there.
+ * <p>
+ * The session tokens of the backends are only valid on the backend that gave them out, so the gateway remembers
+ * the backend of every token it passed on: "/resume" goes to that backend (see resumable()).
+ */
+public class Gateway {
+    // how long the token of a player who lost the connection in a room is remembered; longer than any seat is kept
+    private static final long resumableMillis = TimeUnit.HOURS.toMillis(1);
+    private volatile HashRing ring = HashRing.empty();
+    // the rooms with players, by name; they stay on their backend, whatever happens to the ring
+    private final Map<String, Pin> pins = new ConcurrentHashMap<>();
+    // the names of all players of the gateway: a player who moves to another backend has to keep his/her name
+    private final Map<String, GatewaySession> names = new ConcurrentHashMap<>();
+    // number of sessions by backend, for the console
+    private final Map<InetSocketAddress, AtomicInteger> sessions = new ConcurrentHashMap<>();
+    private final AtomicLong nextSession = new AtomicLong();
+    // the session tokens of the players, see rememberToken()
+    private final Map<String, Resumable> tokens = new ConcurrentHashMap<>();
+    private final AtomicLong remembered = new AtomicLong();
+    // two threads per client: one reads the client, one the backend (virtual threads on Java 21+)
+    private final ExecutorService pool;
+
+    /**
+     * The backend of a room with players, and how many of them came through the gateway.
+     */
+    private static final class Pin {
+        private final InetSocketAddress backend;
+        private final int players;
+
+        // constructor
+        private Pin(InetSocketAddress backend, int players) {
+            this.backend = backend;
+            this.players = players;
+        }
+    }
+
+    /**
+     * What a session needs to go on where it stopped: the backend that gave out the token, the name and the date
+     * (played again when the player moves to another backend later, see GatewaySession.handshake()).
+     */
+    static final class Resumable {
+        private final InetSocketAddress backend;
+        private final String name;
+        private final String date;
+        // System.currentTimeMillis() until which the token is remembered, once its session is closed
+        private volatile long keptUntil = Long.MAX_VALUE;
+
+        // constructor
+        private Resumable(InetSocketAddress backend, String name, String date) {
+            this.backend = backend;
+            this.name = name;
+            this.date = date;
+        }
+
+        InetSocketAddress getBackend() {
+            return this.backend;
+        }
+
+        String getName() {
+            return this.name;
+        }
+
+        String getDate() {
+            return this.date;
+        }
+    }
+
+    // constructor
+    public Gateway(List<InetSocketAddress> backends) {
+        for (InetSocketAddress backend : backends) {
+            addBackend(backend);
+        }
+        ExecutorService virtualPool = Threads.newVirtualThreadPerTaskExecutor();
+        this.pool = virtualPool != null ? virtualPool : Executors.newCachedThreadPool();
+    }
+
+    /**
+     * Accepts the clients on the port, on a thread of its own.
+     *
+     * @param port the clients connect to, e.g. Server.PORT
+     */
+    public void runGateway(int port) {
+        Thread gatewayThread = new Thread(() -> {
+            try (ServerSocket serverSocket = new ServerSocket(port, 1024)) {
+                System.out.println("Gateway started on port " + port + ". Backends: " + ring.getBackends());
+                while (true) {
+                    Socket clientSocket = serverSocket.accept();
+                    try {
+                        pool.execute(new GatewaySession(this, clientSocket));
+                    } catch (IOException e) {
+                        clientSocket.close();
+                    }
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }, "gateway");
+        gatewayThread.start();
+    }
+
+    /**
+     * Reads the commands of the console until it is closed: "add host:port", "remove host:port" and "backends".
+     */
+    public void runConsole(InputStream console) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(console));
+        String line;
+        while ((line = reader.readLine()) != null) {
+            String[] words = line.trim().split("\\s+");
+            try {
+                if (words.length == 2 && words[0].equalsIgnoreCase("add")) {
+                    addBackend(parseAddress(words[1]));
+                } else if (words.length == 2 && words[0].equalsIgnoreCase("remove")) {
+                    removeBackend(parseAddress(words[1]));
+                } else if (!words[0].equalsIgnoreCase("backends")) {
+                    System.out.println("Use 'add host:port', 'remove host:port' or 'backends'.");
+                    continue;
+                }
+            } catch (IllegalArgumentException e) {
+                System.out.println(e.getMessage());
+                continue;
+            }
+            for (InetSocketAddress backend : ring.getBackends()) {
+                AtomicInteger count = sessions.get(backend);
+                System.out.println(backend.getHostString() + ":" + backend.getPort() + " (" + (count == null ? 0 : count.get()) + " players)");
+            }
+            System.out.println(pins.size() + " rooms with players");
+        }
+    }
+
+    public synchronized void addBackend(InetSocketAddress backend) {
+        ring = ring.add(backend);
+    }
+
+    /**
+     * New rooms don't go to the backend any more; its rooms with players are played to the end there.
+     */
+    public synchronized void removeBackend(InetSocketAddress backend) {
+        ring = ring.remove(backend);
+    }
+
+    /**
+     * @param address "host:port", or only the port for a backend on this machine
+     */
+    public static InetSocketAddress parseAddress(String address) {
+        int colon = address.lastIndexOf(':');
+        try {
+            if (colon < 0) {
+                return new InetSocketAddress("localhost", Integer.parseInt(address));
+            }
+            return new InetSocketAddress(address.substring(0, colon), Integer.parseInt(address.substring(colon + 1)));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Not a host:port: " + address);
+        }
+    }
+
+    /**
+     * @param room name of the room, or null for the lobby of a new client
+     * @return the backend of the room, or null if there is no backend
+     */
+    InetSocketAddress route(String room) {
+        if (room == null) {
+            // any backend will do; a new key for every client spreads them over the ring like the rooms
+            return ring.route("lobby" + nextSession.incrementAndGet());
+        }
+        Pin pin = pins.get(room);
+        return pin != null ? pin.backend : ring.route(room);
+    }
+
+    /**
+     * Keeps the room on its backend while a player of the gateway is in it.
+     */
+    void pin(String room, InetSocketAddress backend) {
+        pins.compute(room, (name, pin) -> pin == null ? new Pin(backend, 1)
+                // a room of the same name on another backend (it was created before the ring changed) is not pinned twice
+                : pin.backend.equals(backend) ? new Pin(backend, pin.players + 1) : pin);
+    }
+
+    void unpin(String room, InetSocketAddress backend) {
+        pins.computeIfPresent(room, (name, pin) -> !pin.backend.equals(backend) ? pin
+                : pin.players > 1 ? new Pin(backend, pin.players - 1) : null);
+    }
+
+    /**
+     * @return false if another player of the gateway has the name
+     */
+    boolean reserveName(String name, GatewaySession session) {
+        GatewaySession owner = names.putIfAbsent(name, session);
+        return owner == null || owner == session;
+    }
+
+    void releaseName(String name, GatewaySession session) {
+        names.remove(name, session);
+    }
+
+    /**
+     * Counts the session at its new backend.
+     *
+     * @param from the backend it left, or null
+     * @param to   the backend it is on now, or null once it is closed
+     */
+    void sessionMoved(InetSocketAddress from, InetSocketAddress to) {
+        if (from != null) {
+            sessions.computeIfAbsent(from, backend -> new AtomicInteger()).decrementAndGet();
+        }
+        if (to != null) {
+            sessions.computeIfAbsent(to, backend -> new AtomicInteger()).incrementAndGet();
+        }
+    }
+
+    /**
+     * Remembers the backend that gave the token to a player of the gateway.
+     */
+    void rememberToken(String token, InetSocketAddress backend, String name, String date) {
+        tokens.put(token, new Resumable(backend, name, date));
+        if ((remembered.incrementAndGet() & 1023) == 0) {
+            long now = System.currentTimeMillis();
+            tokens.values().removeIf(resumable -> resumable.keptUntil < now);
+        }
+    }
+
+    /**
+     * @return where the session of the token goes on, or null if the gateway does not know the token
+     */
+    Resumable resumable(String token) {
+        return tokens.get(token);
+    }
+
+    /**
+     * Keeps the token of a closed session a while longer: its player may resume the session.
+     */
+    void keepToken(String token) {
+        Resumable resumable = tokens.get(token);
+        if (resumable != null) {
+            resumable.keptUntil = System.currentTimeMillis() + resumableMillis;
+        }
+    }
+
+    void forgetToken(String token) {
+        tokens.remove(token);
+    }
+
+    void execute(Runnable task) {
+        pool.execute(task);
+    }
+}
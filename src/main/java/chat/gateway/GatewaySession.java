@@ -0,0 +1,552 @@
+package chat.gateway;
+
+import chat.client.Command;
+import chat.client.LineDecoder;
+import chat.protocol.MessageCodec;
+import chat.protocol.Protocol;
+import chat.protocol.Text;
+import chat.server.Frame;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * One client of the Gateway. The client talks to exactly one backend at a time, through a BackendLink:
+ * every line of the client goes to the backend unchanged, everything the backend sends goes to the client unchanged.
+ * Only when the client creates, joins or watches a room that lives on another backend (see Gateway.route()),
+ * the session moves to that backend first: it connects, plays the handshake again (protocol, name and date)
+ * without showing it to the client, and closes the old connection with "bye".
+ * A player never moves while he/she is in a room, so a running game never loses a player to the gateway.
+ * <p>
+ * To know the name, the date and whether the player is in a room, the session reads the texts the backend
+ * sends anyway ("Welcome Anna!", "You joined the room myRoom. ..."), so the servers need no extra protocol for it.
+ * A client that resumes a session with "/resume" instead of the name is sent to the backend that gave out the token
+ * (see Gateway.resumable()), and gets the name and the date of the session it resumes.
+ */
+final class GatewaySession implements Runnable {
+    // longer lines are cut, like the server does (see NioConnection)
+    private static final int maxLineLength = 8 * 1024;
+    private static final int handshakeTimeoutMillis = 5000;
+
+    private enum Phase {
+        NAME, DATE, CHAT
+    }
+
+    private final Gateway gateway;
+    private final Socket socket;
+    private final OutputStream clientOutput;
+    private volatile BackendLink link;
+    private volatile Phase phase = Phase.NAME;
+    private Protocol protocol = Protocol.LINE;
+    private String protocolLine;
+    // the name the client asked for last, reserved at the gateway until the backend accepts or refuses it
+    private volatile String reservedName;
+    private volatile String name;
+    private String date;
+    // true from "You joined the room" (or a seat, or watching) until the player is back in the lobby
+    private volatile boolean inRoom = false;
+    // the room whose backend is pinned for this player (see Gateway.pin())
+    private volatile String pinnedRoom;
+    private volatile boolean byeSent = false;
+    // the session token the backend gave the player last (see Gateway.rememberToken()), null before the handshake
+    private volatile String sessionToken;
+    // the session the client asked to resume, until the backend answers
+    private volatile Gateway.Resumable resuming;
+    private volatile String resumingToken;
+    private volatile boolean closed = false;
+    // messages the backend sent so far, counted until the chat starts (see awaitAnswer())
+    private long answers;
+    private byte[] line = new byte[64];
+    private int lineLength;
+
+    // constructor
+    GatewaySession(Gateway gateway, Socket socket) throws IOException {
+        this.gateway = gateway;
+        this.socket = socket;
+        socket.setTcpNoDelay(true);
+        this.clientOutput = new BufferedOutputStream(socket.getOutputStream());
+    }
+
+    /**
+     * Connects to a backend, passes on the greeting and then the lines of the client until the client is gone.
+     */
+    @Override
+    public void run() {
+        try {
+            InetSocketAddress backend = gateway.route(null);
+            if (backend == null) {
+                writeToClient("There is no server to play on right now. Please try again later.");
+                return;
+            }
+            link = new BackendLink(backend);
+            gateway.sessionMoved(null, backend);
+            // the greeting, before the client may choose a protocol
+            link.read();
+            writeToClient(link, true);
+            InputStream input = new BufferedInputStream(socket.getInputStream());
+            boolean first = true;
+            while (readLine(input)) {
+                long before = answersSoFar();
+                boolean sent = onLine(first);
+                if (first) {
+                    // read only now, when it is clear in which protocol the backend answers (see BackendLink.switchProtocol())
+                    startReader(link);
+                    first = false;
+                }
+                if (sent && phase != Phase.CHAT) {
+                    awaitAnswer(before);
+                }
+            }
+        } catch (IOException e) {
+            // the client or the first backend is gone
+        } finally {
+            close();
+        }
+    }
+
+    private boolean readLine(InputStream input) throws IOException {
+        lineLength = 0;
+        int b;
+        while ((b = input.read()) != '\n') {
+            if (b < 0) {
+                return false;
+            }
+            if (lineLength < maxLineLength) {
+                if (lineLength == line.length) {
+                    line = Arrays.copyOf(line, Math.min(line.length * 2, maxLineLength));
+                }
+                line[lineLength++] = (byte) b;
+            }
+        }
+        if (lineLength > 0 && line[lineLength - 1] == '\r') {
+            lineLength--;
+        }
+        return true;
+    }
+
+    /**
+     * @return false if the line was not sent to the backend
+     */
+    private boolean onLine(boolean first) throws IOException {
+        if (phase == Phase.CHAT) {
+            int decoded = LineDecoder.decode(line, lineLength);
+            if (LineDecoder.kind(decoded) == LineDecoder.BYE) {
+                byeSent = true;
+            } else if (LineDecoder.kind(decoded) == LineDecoder.COMMAND && !inRoom && !moveForRoom(decoded)) {
+                return false;
+            }
+            link.send(line, lineLength);
+            return true;
+        }
+        String text = new String(line, 0, lineLength, StandardCharsets.UTF_8);
+        if (text.startsWith("/protocol")) {
+            Protocol chosen = Protocol.byName(text.substring("/protocol".length()).trim());
+            if (!first && chosen != null) {
+                writeToClient("Through the gateway the protocol can only be chosen with the first line.");
+                return false;
+            }
+            if (chosen != null) {
+                protocol = chosen;
+                protocolLine = text;
+                link.switchProtocol(chosen);
+            }
+        } else if (phase == Phase.NAME && text.startsWith("/resume")) {
+            return resume(text.substring("/resume".length()).trim(), first);
+        } else if (phase == Phase.NAME) {
+            // a name the backend did not take (e.g. with digits) is free again
+            String previous = reservedName;
+            if (previous != null && !previous.equals(name)) {
+                gateway.releaseName(previous, this);
+            }
+            if (!gateway.reserveName(text, this)) {
+                reservedName = null;
+                writeToClient("This name is already taken. Please choose another name!");
+                return false;
+            }
+            reservedName = text;
+        } else {
+            // the backend only moves on to the chat with a valid date, so the last one is the one to play again
+            date = text;
+        }
+        link.send(line, lineLength);
+        return true;
+    }
+
+    /**
+     * Sends "/resume" to the backend that gave out the token, so the player gets the seat that is kept there.
+     *
+     * @param token the session token
+     * @param first true if this is the first line of the client, nobody reads the backend yet
+     * @return false if the line was not sent to the backend
+     */
+    private boolean resume(String token, boolean first) throws IOException {
+        Gateway.Resumable resumable = gateway.resumable(token);
+        // a token the gateway does not know goes to the current backend, which refuses it
+        if (resumable != null && !resumable.getBackend().equals(link.getBackend())) {
+            BackendLink moved;
+            try {
+                moved = connect(resumable.getBackend());
+            } catch (IOException e) {
+                writeToClient("The server of your game can't be reached right now. Please try again later.");
+                return false;
+            }
+            // the old backend only had the greeting so far, it needs no "bye"
+            BackendLink old = link;
+            old.retire();
+            link = moved;
+            gateway.sessionMoved(old.getBackend(), moved.getBackend());
+            if (!first) {
+                startReader(moved);
+            }
+            old.close();
+        }
+        resuming = resumable;
+        resumingToken = token;
+        link.send(line, lineLength);
+        return true;
+    }
+
+    private synchronized long answersSoFar() {
+        return answers;
+    }
+
+    /**
+     * Waits until the backend answered the last line. Until the chat starts, whether the next line is a name, a date
+     * or already a command depends on that answer ("Welcome Anna!", "Thanks for this ..."), and the backend
+     * answers every line of the handshake before it reads the next one, the first message of the answer is enough.
+     */
+    private synchronized void awaitAnswer(long before) {
+        long deadline = System.currentTimeMillis() + handshakeTimeoutMillis;
+        long remaining;
+        try {
+            while (answers == before && !closed && (remaining = deadline - System.currentTimeMillis()) > 0) {
+                wait(remaining);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private synchronized void answered() {
+        answers++;
+        notifyAll();
+    }
+
+    /**
+     * Moves the session to the backend of the room, if the command is about a room on another backend.
+     *
+     * @param decoded the command, see LineDecoder
+     * @return false if the line must not be sent, because the backend of the room can't be reached
+     */
+    private boolean moveForRoom(int decoded) throws IOException {
+        Command command = LineDecoder.command(decoded);
+        if (command != Command.CREATE && command != Command.JOIN && command != Command.WATCH) {
+            return true;
+        }
+        int end = LineDecoder.end(decoded);
+        if (end >= lineLength) {
+            // no name: the backend explains how the command works
+            return true;
+        }
+        String room = new String(line, end + 1, lineLength - end - 1, StandardCharsets.UTF_8).trim();
+        InetSocketAddress backend = gateway.route(room);
+        if (backend == null || backend.equals(link.getBackend())) {
+            return true;
+        }
+        BackendLink moved;
+        try {
+            moved = handshake(backend);
+        } catch (IOException e) {
+            writeToClient("The server of the room " + room + " can't be reached right now. Please try again later.");
+            return false;
+        }
+        if (moved == null) {
+            writeToClient("You can't enter the room " + room + " with this name, it is taken on its server.");
+            return false;
+        }
+        BackendLink old = link;
+        old.retire();
+        link = moved;
+        gateway.sessionMoved(old.getBackend(), backend);
+        startReader(moved);
+        try {
+            old.send("bye");
+        } catch (IOException e) {
+            // gone already
+        }
+        old.close();
+        return true;
+    }
+
+    /**
+     * Connects to the backend and plays the handshake of the client again, without showing it to the client.
+     *
+     * @return the new link once the player is in the lobby of the backend, or null if the backend refused the name
+     */
+    private BackendLink handshake(InetSocketAddress backend) throws IOException {
+        BackendLink moved = new BackendLink(backend);
+        try {
+            moved.setTimeout(handshakeTimeoutMillis);
+            // the greeting
+            moved.read();
+            if (protocolLine != null) {
+                moved.switchProtocol(protocol);
+                moved.send(protocolLine);
+            }
+            moved.send(name);
+            moved.send(date);
+            while (true) {
+                moved.read();
+                String text = moved.text();
+                if (text == null) {
+                    continue;
+                }
+                if (text.startsWith("This name is already taken")) {
+                    moved.close();
+                    return null;
+                }
+                if (text.startsWith("Thanks for this personal information")) {
+                    moved.setTimeout(0);
+                    return moved;
+                }
+            }
+        } catch (IOException e) {
+            // also a SocketTimeoutException, if the backend does not answer
+            moved.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Connects to the backend and chooses the protocol of the client there, without showing it to the client.
+     *
+     * @return the new link, where the client can go on with the name (or "/resume")
+     */
+    private BackendLink connect(InetSocketAddress backend) throws IOException {
+        BackendLink moved = new BackendLink(backend);
+        try {
+            moved.setTimeout(handshakeTimeoutMillis);
+            // the greeting
+            moved.read();
+            if (protocolLine != null) {
+                moved.switchProtocol(protocol);
+                moved.send(protocolLine);
+                // "Protocol: json"
+                moved.read();
+            }
+            moved.setTimeout(0);
+            return moved;
+        } catch (IOException e) {
+            moved.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Passes on everything the backend sends, on a thread of the gateway's pool, until the link is closed or retired.
+     */
+    private void startReader(BackendLink reading) {
+        gateway.execute(() -> {
+            try {
+                while (true) {
+                    reading.read();
+                    if (reading.isRetired()) {
+                        return;
+                    }
+                    if (phase != Phase.CHAT) {
+                        track(reading.text());
+                        // after the tracking, so the next line of the client is read in the new phase
+                        answered();
+                    } else {
+                        track(reading.text());
+                    }
+                    writeToClient(reading, false);
+                }
+            } catch (IOException e) {
+                if (reading.isRetired() || closed) {
+                    return;
+                }
+                if (!byeSent) {
+                    writeToClient("The server you played on can't be reached any more.");
+                }
+                close();
+            }
+        });
+    }
+
+    /**
+     * Follows the player through the lobby and the rooms from the texts of the backend.
+     *
+     * @param text of a message of the backend, or null
+     */
+    private void track(String text) {
+        if (text == null) {
+            return;
+        }
+        if (text.startsWith("Your session token is ")) {
+            // the first answer to a "/resume" the backend accepted, or the token after the handshake
+            Gateway.Resumable resumed = resuming;
+            if (phase == Phase.NAME && resumed != null) {
+                resuming = null;
+                name = resumed.getName();
+                date = resumed.getDate();
+                gateway.reserveName(name, this);
+                gateway.forgetToken(resumingToken);
+                phase = Phase.CHAT;
+            }
+            rememberToken(text);
+        } else if (phase == Phase.NAME) {
+            if (text.startsWith("Welcome ") && text.endsWith("!")) {
+                name = text.substring("Welcome ".length(), text.length() - 1);
+                // reserved already, unless the client sent the next line before this answer came
+                gateway.reserveName(name, this);
+                phase = Phase.DATE;
+            } else if (text.startsWith("This session can't be resumed")) {
+                resuming = null;
+            }
+        } else if (phase == Phase.DATE) {
+            if (text.startsWith("Thanks for this personal information")) {
+                phase = Phase.CHAT;
+            }
+        } else if (text.startsWith("Welcome back! Your game in the room ") && text.contains(" goes on: ")) {
+            // the seat of a resumed session
+            enterRoom(roomName(text, "Welcome back! Your game in the room "), true);
+        } else if (text.startsWith("You joined the room ")) {
+            enterRoom(roomName(text, "You joined the room "), true);
+        } else if (text.startsWith("You got a seat at the table ")) {
+            enterRoom(roomName(text, "You got a seat at the table "), true);
+        } else if (text.startsWith("You are watching the room ")) {
+            enterRoom(null, false);
+        } else if (text.startsWith("You left the room ") || text.startsWith("You stopped watching")
+                || text.startsWith("The room ") && text.endsWith("You are back in the lobby.")) {
+            leaveRoom();
+        }
+    }
+
+    /**
+     * Remembers the backend of the token in "Your session token is mBq3k1Xo5c6uR0AkJ2cKzw. If your ...",
+     * the token before is not valid any more.
+     */
+    private void rememberToken(String text) {
+        int start = "Your session token is ".length();
+        int end = text.indexOf('.', start);
+        if (end < 0) {
+            return;
+        }
+        String previous = sessionToken;
+        sessionToken = text.substring(start, end);
+        gateway.rememberToken(sessionToken, link.getBackend(), name, date);
+        if (previous != null) {
+            gateway.forgetToken(previous);
+        }
+    }
+
+    /**
+     * @return the name of the room right after the prefix (names of rooms are letters and digits)
+     */
+    private static String roomName(String text, String prefix) {
+        int end = prefix.length();
+        while (end < text.length() && Character.isLetterOrDigit(text.charAt(end))) {
+            end++;
+        }
+        return text.substring(prefix.length(), end);
+    }
+
+    private void enterRoom(String room, boolean seat) {
+        inRoom = true;
+        if (seat && pinnedRoom == null) {
+            pinnedRoom = room;
+            gateway.pin(room, link.getBackend());
+        }
+    }
+
+    private void leaveRoom() {
+        inRoom = false;
+        String room = pinnedRoom;
+        if (room != null) {
+            pinnedRoom = null;
+            gateway.unpin(room, link.getBackend());
+        }
+    }
+
+    /**
+     * Passes one message of the backend on. The buffer is only flushed once the backend has nothing more right now,
+     * so a burst of messages (e.g. the events of one card) goes out in one packet.
+     */
+    private void writeToClient(BackendLink from, boolean flush) throws IOException {
+        synchronized (clientOutput) {
+            clientOutput.write(from.message(), 0, from.length());
+            if (flush || from.available() == 0) {
+                clientOutput.flush();
+            }
+        }
+    }
+
+    /**
+     * Tells the client something from the gateway itself, in the protocol of the client.
+     */
+    private void writeToClient(String text) {
+        Frame frame = protocol == Protocol.LINE ? Frame.of(text) : MessageCodec.encode(new Text(text), protocol);
+        try {
+            synchronized (clientOutput) {
+                clientOutput.write(frame.array(), 0, frame.length());
+                clientOutput.flush();
+            }
+        } catch (IOException e) {
+            // the client is gone, run() finds out
+        } finally {
+            frame.release();
+        }
+    }
+
+    String getName() {
+        return this.name;
+    }
+
+    /**
+     * Closes the client and the backend, once.
+     */
+    void close() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            notifyAll();
+        }
+        String token = sessionToken;
+        if (token != null) {
+            // a player who lost the connection in a room may come back to the seat that is kept for him/her
+            if (inRoom && !byeSent) {
+                gateway.keepToken(token);
+            } else {
+                gateway.forgetToken(token);
+            }
+        }
+        leaveRoom();
+        BackendLink current = link;
+        if (current != null) {
+            current.close();
+            gateway.sessionMoved(current.getBackend(), null);
+        }
+        String reserved = reservedName;
+        if (reserved != null) {
+            gateway.releaseName(reserved, this);
+        }
+        if (name != null) {
+            gateway.releaseName(name, this);
+        }
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // closed anyway
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package chat.gateway;
+
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Consistent hashing of room names onto the backend servers of the Gateway.
+ * Every backend is put on a ring of hash values at many points (virtual nodes), a room belongs to the first point
+ * after the hash of its name. Adding a backend only takes over the rooms between its new points and the points before
+ * them, removing one only gives its own rooms to the next points: all other rooms stay where they are.
+ * The ring is never changed, adding and removing builds a new one, so the sessions look up rooms without any lock.
+ */
+public final class HashRing {
+    // points per backend; enough that every backend gets about the same share of the rooms
+    private static final int virtualNodes = 160;
+
+    private final TreeMap<Integer, InetSocketAddress> points;
+    private final List<InetSocketAddress> backends;
+
+    // constructor
+    private HashRing(TreeMap<Integer, InetSocketAddress> points, List<InetSocketAddress> backends) {
+        this.points = points;
+        this.backends = backends;
+    }
+
+    public static HashRing empty() {
+        return new HashRing(new TreeMap<>(), Collections.emptyList());
+    }
+
+    /**
+     * @return a new ring with the backend, or this ring if it has the backend already
+     */
+    public HashRing add(InetSocketAddress backend) {
+        if (backends.contains(backend)) {
+            return this;
+        }
+        TreeMap<Integer, InetSocketAddress> added = new TreeMap<>(points);
+        for (int i = 0; i < virtualNodes; i++) {
+            // on the (very rare) collision of two points the older backend keeps it
+            added.putIfAbsent(hash(backend.getHostString() + ":" + backend.getPort() + "#" + i), backend);
+        }
+        List<InetSocketAddress> list = new ArrayList<>(backends);
+        list.add(backend);
+        return new HashRing(added, Collections.unmodifiableList(list));
+    }
+
+    /**
+     * @return a new ring without the backend, or this ring if it does not have the backend
+     */
+    public HashRing remove(InetSocketAddress backend) {
+        if (!backends.contains(backend)) {
+            return this;
+        }
+        // built again from the others, so the points the removed backend took from them in a collision are theirs again
+        HashRing ring = empty();
+        for (InetSocketAddress other : backends) {
+            if (!other.equals(backend)) {
+                ring = ring.add(other);
+            }
+        }
+        return ring;
+    }
+
+    /**
+     * @param key e.g. the name of a room
+     * @return the backend the key belongs to, or null if the ring is empty
+     */
+    public InetSocketAddress route(String key) {
+        if (points.isEmpty()) {
+            return null;
+        }
+        Map.Entry<Integer, InetSocketAddress> point = points.ceilingEntry(hash(key));
+        return point != null ? point.getValue() : points.firstEntry().getValue();
+    }
+
+    public List<InetSocketAddress> getBackends() {
+        return this.backends;
+    }
+
+    /**
+     * FNV-1a over the UTF-8 bytes, mixed like the finalizer of MurmurHash3:
+     * names like "room1" and "room2" differ in one byte only, but have to land far apart on the ring.
+     */
+    static int hash(String key) {
+        int hash = 0x811C9DC5;
+        for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xFF;
+            hash *= 0x01000193;
+        }
+        hash ^= hash >>> 16;
+        hash *= 0x85EBCA6B;
+        hash ^= hash >>> 13;
+        hash *= 0xC2B2AE35;
+        hash ^= hash >>> 16;
+        return hash;
+    }
+}
@@ -0,0 +1,166 @@
+package chat.journal;
+
+import game.engine.Cards;
+import game.engine.GameState;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Append-only record of every game the server plays: who sat where, the order of every shuffled deck
+ * and every event of the engine (draws, played cards with target and guess, players out, points), see game.engine.Event.
+ * It is meant for disputes ("I had the Princess!"), replays and analysis of many games (see JournalReader).
+ * The rooms only encode a record into a small byte array and hand it to the JournalWriter, which appends it
+ * to memory-mapped segment files on its own thread and syncs them once per batch: a game never waits for the disk.
+ * <p>
+ * Every record is: length (int) and CRC32 (int) of the body, then the body: type (byte), game (long),
+ * time in milliseconds (long) and the data of the type, see below.
+ */
+public final class Journal {
+    // room (string), number of players (byte), starting seat (byte), seed of the game (long), then the name of every seat (string)
+    public static final byte GAME_STARTED = 1;
+    // number of the round (byte), then all cards of the deck in the order they are drawn (Cards.deckSize bytes)
+    public static final byte DECK = 2;
+    // number of events (byte), then the events (int each) of one call to the engine
+    public static final byte EVENTS = 3;
+    // why the game ended (byte): WON, STOPPED or ABANDONED
+    public static final byte GAME_ENDED = 4;
+
+    // reasons of GAME_ENDED
+    public static final byte WON = 0;
+    public static final byte STOPPED = 1;   // a player typed /endGame
+    public static final byte ABANDONED = 2; // every player left the room
+
+    static final int headerLength = 1 + 8 + 8;
+
+    private static volatile JournalWriter writer;
+    // unique over restarts of the server, as long as it does not start more than 1000 games per millisecond
+    private static final AtomicLong nextGame = new AtomicLong(System.currentTimeMillis() * 1000);
+
+    private Journal() {
+    }
+
+    /**
+     * Opens the journal in the directory (a new segment after the ones that are there already) and starts the writer thread.
+     *
+     * @param directory of the segments, created if it does not exist
+     */
+    public static synchronized void start(Path directory) {
+        if (writer != null) {
+            return;
+        }
+        try {
+            JournalWriter started = new JournalWriter(directory);
+            started.start();
+            writer = started;
+            Runtime.getRuntime().addShutdownHook(new Thread(started::stop, "journal-shutdown"));
+            System.out.println("Journal in " + directory.toAbsolutePath());
+        } catch (IOException e) {
+            System.err.println("The games are not recorded, the journal could not be opened: " + e);
+        }
+    }
+
+    public static boolean isEnabled() {
+        return writer != null;
+    }
+
+    /**
+     * @return records that were dropped because the writer could not keep up
+     */
+    public static long getDroppedRecords() {
+        JournalWriter current = writer;
+        return current == null ? 0 : current.getDropped();
+    }
+
+    /**
+     * @return id of a new game, to be given to every record of the game
+     */
+    public static long newGame() {
+        return nextGame.incrementAndGet();
+    }
+
+    /**
+     * @param names of the players by seat
+     * @param seed  of the game, every deck of the game can be dealt again from it (see Engine.roundSeed())
+     */
+    public static void gameStarted(long game, String room, String[] names, int playerCount, int startingSeat, long seed) {
+        if (writer == null) {
+            return;
+        }
+        byte[][] strings = new byte[playerCount + 1][];
+        int length = 2 + 8;
+        strings[0] = room.getBytes(StandardCharsets.UTF_8);
+        for (int seat = 0; seat < playerCount; seat++) {
+            strings[seat + 1] = names[seat].getBytes(StandardCharsets.UTF_8);
+        }
+        for (byte[] string : strings) {
+            length += 2 + string.length;
+        }
+        ByteBuffer record = record(GAME_STARTED, game, length);
+        putString(record, strings[0]);
+        record.put((byte) playerCount).put((byte) startingSeat).putLong(seed);
+        for (int seat = 0; seat < playerCount; seat++) {
+            putString(record, strings[seat + 1]);
+        }
+        append(record);
+    }
+
+    /**
+     * Records the deck of the round that was just dealt, before its events.
+     */
+    public static void deck(long game, GameState state) {
+        if (writer == null) {
+            return;
+        }
+        ByteBuffer record = record(DECK, game, 1 + Cards.deckSize);
+        record.put((byte) state.getRound());
+        for (int i = 0; i < Cards.deckSize; i++) {
+            record.put(state.getDeckCard(i));
+        }
+        append(record);
+    }
+
+    /**
+     * Records the events of the last call to the engine.
+     */
+    public static void events(long game, GameState state) {
+        if (writer == null || state.getEventCount() == 0) {
+            return;
+        }
+        ByteBuffer record = record(EVENTS, game, 1 + state.getEventCount() * 4);
+        record.put((byte) state.getEventCount());
+        for (int i = 0; i < state.getEventCount(); i++) {
+            record.putInt(state.getEvent(i));
+        }
+        append(record);
+    }
+
+    /**
+     * @param reason WON, STOPPED or ABANDONED
+     */
+    public static void gameEnded(long game, byte reason) {
+        if (writer == null) {
+            return;
+        }
+        append(record(GAME_ENDED, game, 1).put(reason));
+    }
+
+    private static ByteBuffer record(byte type, long game, int dataLength) {
+        ByteBuffer record = ByteBuffer.allocate(headerLength + dataLength);
+        return record.put(type).putLong(game).putLong(System.currentTimeMillis());
+    }
+
+    private static void putString(ByteBuffer record, byte[] string) {
+        record.putShort((short) string.length).put(string);
+    }
+
+    private static void append(ByteBuffer record) {
+        JournalWriter current = writer;
+        if (current != null) {
+            current.append(record.array());
+        }
+    }
+}
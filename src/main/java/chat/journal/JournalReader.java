@@ -0,0 +1,212 @@
+package chat.journal;
+
+import game.engine.Cards;
+import game.engine.Event;
+import game.engine.Move;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Reads the records of a journal (see Journal) in the order they were written, segment after segment.
+ * A record whose checksum is wrong (the server died while the disk wrote it) ends its segment.
+ * The server can be running while the journal is read, the reader then sees everything that was written up to then.
+ * java -jar vp-damboeck-1.0-SNAPSHOT.jar journal [directory] prints the whole journal.
+ */
+public class JournalReader {
+    private static final String[] eventNames = {"", "ROUND_STARTED", "CARD_SET_ASIDE", "CARD_DRAWN", "TURN_STARTED",
+            "CARD_PLAYED", "NO_EFFECT", "PROTECTED", "GUESSED_RIGHT", "GUESSED_WRONG", "CARD_SEEN", "BARON_TIE",
+            "PLAYER_OUT", "CARD_DISCARDED", "CARD_RECEIVED", "ROUND_WON", "GAME_WON"};
+    private static final String[] endReasons = {"won", "stopped", "abandoned"};
+
+    private final List<Path> segments = new ArrayList<>();
+    private int nextSegment = 0;
+    private MappedByteBuffer segment;
+    private final CRC32 crc = new CRC32();
+    private long corrupted = 0;
+
+    private byte type;
+    private long game;
+    private long time;
+    private ByteBuffer data;
+
+    // constructor
+    public JournalReader(Path directory) throws IOException {
+        try (DirectoryStream<Path> paths = Files.newDirectoryStream(directory, JournalWriter.segmentPrefix + "*" + JournalWriter.segmentSuffix)) {
+            for (Path path : paths) {
+                if (JournalWriter.segmentNumber(path) >= 0) {
+                    segments.add(path);
+                }
+            }
+        }
+        segments.sort(Comparator.comparingInt(JournalWriter::segmentNumber));
+    }
+
+    /**
+     * Moves on to the next record.
+     *
+     * @return false if there are no more records
+     */
+    public boolean next() throws IOException {
+        while (true) {
+            if (segment == null || segment.remaining() < 8) {
+                if (!openNextSegment()) {
+                    return false;
+                }
+                continue;
+            }
+            int length = segment.getInt();
+            if (length == 0) {
+                // the end of the segment
+                segment = null;
+                continue;
+            }
+            int checksum = segment.getInt();
+            if (length < Journal.headerLength || length > segment.remaining()) {
+                corrupted++;
+                segment = null;
+                continue;
+            }
+            ByteBuffer body = segment.slice();
+            body.limit(length);
+            segment.position(segment.position() + length);
+            crc.reset();
+            for (int i = 0; i < length; i++) {
+                crc.update(body.get(i));
+            }
+            if ((int) crc.getValue() != checksum) {
+                corrupted++;
+                segment = null;
+                continue;
+            }
+            type = body.get();
+            game = body.getLong();
+            time = body.getLong();
+            data = body.slice();
+            return true;
+        }
+    }
+
+    private boolean openNextSegment() throws IOException {
+        if (nextSegment >= segments.size()) {
+            return false;
+        }
+        try (FileChannel channel = FileChannel.open(segments.get(nextSegment++), StandardOpenOption.READ)) {
+            segment = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        return true;
+    }
+
+    /**
+     * @return Journal.GAME_STARTED, DECK, EVENTS or GAME_ENDED
+     */
+    public byte getType() {
+        return this.type;
+    }
+
+    public long getGame() {
+        return this.game;
+    }
+
+    /**
+     * @return System.currentTimeMillis() when the record was made
+     */
+    public long getTime() {
+        return this.time;
+    }
+
+    /**
+     * @return the data of the record, after type, game and time
+     */
+    public ByteBuffer getData() {
+        return this.data;
+    }
+
+    /**
+     * @return records that were skipped because they were not written completely
+     */
+    public long getCorrupted() {
+        return this.corrupted;
+    }
+
+    /**
+     * Prints every record as one line of text.
+     */
+    public static void print(Path directory, PrintStream out) throws IOException {
+        JournalReader reader = new JournalReader(directory);
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS");
+        long records = 0;
+        while (reader.next()) {
+            records++;
+            StringBuilder line = new StringBuilder();
+            line.append(format.format(new Date(reader.getTime()))).append(" game ").append(reader.getGame()).append(' ');
+            ByteBuffer data = reader.getData();
+            switch (reader.getType()) {
+                case Journal.GAME_STARTED:
+                    line.append("started in room ").append(readString(data));
+                    int playerCount = data.get();
+                    line.append(", seat ").append(data.get()).append(" begins");
+                    line.append(", seed ").append(data.getLong()).append(':');
+                    for (int seat = 0; seat < playerCount; seat++) {
+                        line.append(' ').append(seat).append('=').append(readString(data));
+                    }
+                    break;
+                case Journal.DECK:
+                    line.append("round ").append(data.get()).append(" deck:");
+                    while (data.hasRemaining()) {
+                        line.append(' ').append(Cards.name(data.get()));
+                    }
+                    break;
+                case Journal.EVENTS:
+                    int count = data.get() & 0xFF;
+                    for (int i = 0; i < count; i++) {
+                        appendEvent(line.append(i == 0 ? "" : ", "), data.getInt());
+                    }
+                    break;
+                case Journal.GAME_ENDED:
+                    int reason = data.get();
+                    line.append("ended: ").append(reason >= 0 && reason < endReasons.length ? endReasons[reason] : "?");
+                    break;
+                default:
+                    line.append("unknown record ").append(reader.getType());
+                    break;
+            }
+            out.println(line);
+        }
+        out.println(records + " records" + (reader.getCorrupted() > 0 ? ", " + reader.getCorrupted() + " incomplete" : ""));
+    }
+
+    private static void appendEvent(StringBuilder line, int event) {
+        int type = Event.type(event);
+        line.append(type < eventNames.length ? eventNames[type] : String.valueOf(type)).append(" seat ").append(Event.seat(event));
+        if (Event.target(event) != Move.noTarget) {
+            line.append(" target ").append(Event.target(event));
+        }
+        if (Event.card(event) != Cards.NONE) {
+            line.append(' ').append(Cards.name(Event.card(event)));
+        }
+        if (Event.extra(event) != 0) {
+            line.append(" (").append(Event.extra(event)).append(')');
+        }
+    }
+
+    private static String readString(ByteBuffer data) {
+        byte[] bytes = new byte[data.getShort() & 0xFFFF];
+        data.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,173 @@
+package chat.journal;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.zip.CRC32;
+
+/**
+ * The thread that writes the journal (see Journal). Any thread may append a record, it is only put on a queue.
+ * The writer takes everything that is on the queue, copies it into the memory-mapped segment and then syncs
+ * the segment once for the whole batch (group commit): while one sync runs, the next batch collects on the queue,
+ * so the more the rooms write, the fewer syncs per record.
+ * Segments have a fixed size (-Dloveletter.journalSegmentMB, default 64); a record that does not fit starts the next one.
+ * The rest of a segment stays zero, a length of 0 marks its end.
+ */
+class JournalWriter implements Runnable {
+    static final String segmentPrefix = "journal-";
+    static final String segmentSuffix = ".seg";
+    private static final long defaultSegmentSize = Long.getLong("loveletter.journalSegmentMB", 64) * 1024 * 1024;
+    // records waiting for the writer; more than this are dropped instead of eating the memory of the server
+    private static final int maxPending = 1 << 20;
+    // the writer sleeps at most this long, in case a wake up got lost
+    private static final long maxSleepNanos = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private final Path directory;
+    private final long segmentSize;
+    private final Queue<byte[]> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pendingCount = new AtomicInteger();
+    private final LongAdder dropped = new LongAdder();
+    private final CRC32 crc = new CRC32();
+    private int segmentNumber;
+    private MappedByteBuffer segment;
+    private Thread thread;
+    private volatile boolean sleeping = false;
+    private volatile boolean running = true;
+
+    // constructor
+    JournalWriter(Path directory) throws IOException {
+        this(directory, defaultSegmentSize);
+    }
+
+    /**
+     * @param segmentSize bytes of every segment file
+     */
+    JournalWriter(Path directory, long segmentSize) throws IOException {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        Files.createDirectories(directory);
+        // never write into an old segment: its end could be a record that was only written halfway
+        try (DirectoryStream<Path> segments = Files.newDirectoryStream(directory, segmentPrefix + "*" + segmentSuffix)) {
+            for (Path path : segments) {
+                segmentNumber = Math.max(segmentNumber, segmentNumber(path));
+            }
+        }
+        openNextSegment();
+    }
+
+    /**
+     * @return number of the segment file, or -1 if it is no segment
+     */
+    static int segmentNumber(Path path) {
+        String name = path.getFileName().toString();
+        if (!name.startsWith(segmentPrefix) || !name.endsWith(segmentSuffix)) {
+            return -1;
+        }
+        try {
+            return Integer.parseInt(name.substring(segmentPrefix.length(), name.length() - segmentSuffix.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    void start() {
+        thread = new Thread(this, "journal");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    long getDropped() {
+        return dropped.sum();
+    }
+
+    /**
+     * Puts the record on the queue; never waits.
+     *
+     * @param body type, game, time and data of the record
+     */
+    void append(byte[] body) {
+        if (pendingCount.incrementAndGet() > maxPending) {
+            pendingCount.decrementAndGet();
+            dropped.increment();
+            return;
+        }
+        pending.add(body);
+        if (sleeping) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    /**
+     * Writes what is still on the queue and waits for the writer to finish, called when the server shuts down.
+     */
+    void stop() {
+        running = false;
+        LockSupport.unpark(thread);
+        try {
+            thread.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void run() {
+        while (running || !pending.isEmpty()) {
+            byte[] body = pending.poll();
+            if (body == null) {
+                sleeping = true;
+                // checked again after the flag is set, so a record added in between is not left waiting
+                if (pending.isEmpty() && running) {
+                    LockSupport.parkNanos(this, maxSleepNanos);
+                }
+                sleeping = false;
+                continue;
+            }
+            try {
+                // the batch: everything that is on the queue right now, then one sync for all of it
+                do {
+                    pendingCount.decrementAndGet();
+                    write(body);
+                } while ((body = pending.poll()) != null);
+                segment.force();
+            } catch (IOException | RuntimeException e) {
+                System.err.println("The journal could not be written: " + e);
+            }
+        }
+        segment.force();
+    }
+
+    private void write(byte[] body) throws IOException {
+        if (segment.remaining() < 8 + body.length + 4) {
+            segment.force();
+            openNextSegment();
+        }
+        crc.reset();
+        crc.update(body, 0, body.length);
+        // the length last, so a reader never sees a length without its record
+        int start = segment.position();
+        segment.position(start + 4);
+        segment.putInt((int) crc.getValue());
+        segment.put(body);
+        segment.putInt(start, body.length);
+    }
+
+    private void openNextSegment() throws IOException {
+        segmentNumber++;
+        Path path = directory.resolve(String.format("%s%08d%s", segmentPrefix, segmentNumber, segmentSuffix));
+        // the mapping stays valid after the channel is closed
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package chat.metrics;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+/**
+ * Records durations from many threads at once and keeps the histogram of the last complete window (see Metrics).
+ * Recording never locks and never allocates: the Recorder of HdrHistogram writes into a histogram of its own
+ * and swaps it with a fresh one only when the window is rolled over.
+ */
+public final class LatencyRecorder {
+    private final long highestValue;
+    private final Recorder recorder;
+    // the last complete window, replaced by roll() and only read afterwards
+    private volatile Histogram window;
+
+    /**
+     * @param highestValue longer durations are recorded as this value
+     */
+    LatencyRecorder(long highestValue) {
+        this.highestValue = highestValue;
+        // two significant digits: 1% is exact enough and keeps the histograms small
+        this.recorder = new Recorder(highestValue, 2);
+        this.window = new Histogram(highestValue, 2);
+    }
+
+    /**
+     * @param value duration in the unit of this recorder, e.g. nanoseconds
+     */
+    public void record(long value) {
+        recorder.recordValue(Math.max(0, Math.min(value, highestValue)));
+    }
+
+    /**
+     * Ends the current window; the values recorded so far can be read with summary().
+     */
+    void roll() {
+        window = recorder.getIntervalHistogram();
+    }
+
+    /**
+     * @return count, percentiles and maximum of the last complete window
+     */
+    public LatencySummary summary() {
+        Histogram histogram = window;
+        return new LatencySummary(histogram.getTotalCount(), histogram.getValueAtPercentile(50),
+                histogram.getValueAtPercentile(90), histogram.getValueAtPercentile(99), histogram.getMaxValue());
+    }
+}
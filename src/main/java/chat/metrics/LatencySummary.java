@@ -0,0 +1,42 @@
+package chat.metrics;
+
+/**
+ * Count, percentiles and maximum of one LatencyRecorder for one window.
+ * JMX shows it as a composite value with one item per getter.
+ */
+public final class LatencySummary {
+    private final long count;
+    private final long p50;
+    private final long p90;
+    private final long p99;
+    private final long max;
+
+    // constructor
+    public LatencySummary(long count, long p50, long p90, long p99, long max) {
+        this.count = count;
+        this.p50 = p50;
+        this.p90 = p90;
+        this.p99 = p99;
+        this.max = max;
+    }
+
+    public long getCount() {
+        return this.count;
+    }
+
+    public long getP50() {
+        return this.p50;
+    }
+
+    public long getP90() {
+        return this.p90;
+    }
+
+    public long getP99() {
+        return this.p99;
+    }
+
+    public long getMax() {
+        return this.max;
+    }
+}
@@ -0,0 +1,171 @@
+package chat.metrics;
+
+import chat.server.GameRoom;
+import chat.server.OutboundQueue;
+import chat.server.Server;
+import chat.server.SpectatorLog;
+import game.engine.Cards;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters and durations of the server, read over JMX (see MetricsMXBean) and over HTTP as plain text (see MetricsEndpoint).
+ * The server only ever adds to a LongAdder or records into a LatencyRecorder, neither locks nor allocates.
+ * Everything else happens on the metrics thread: once per second it computes the rates from the counters,
+ * every windowSeconds it closes the window of the recorders, so the percentiles are always those of the last window.
+ */
+public final class Metrics {
+    public static final int windowSeconds = 10;
+
+    public static final LongAdder connections = new LongAdder();
+    public static final LongAdder handshakes = new LongAdder();
+    public static final LongAdder messagesIn = new LongAdder();
+    public static final LongAdder gamesStarted = new LongAdder();
+    public static final LongAdder gamesFinished = new LongAdder();
+    public static final LongAdder rounds = new LongAdder();
+    // moves played for players who did not play in time (see GameRoom)
+    public static final LongAdder autoPlayedMoves = new LongAdder();
+
+    // time to hand one broadcast to all recipients, in nanoseconds
+    public static final LatencyRecorder broadcastNanos = new LatencyRecorder(TimeUnit.SECONDS.toNanos(10));
+    // time from the start of a turn until the card is played, in microseconds
+    public static final LatencyRecorder turnMicros = new LatencyRecorder(TimeUnit.HOURS.toMicros(1));
+    // time a player waited in the queue of the Matchmaker for a table, in milliseconds
+    public static final LatencyRecorder queueWaitMillis = new LatencyRecorder(TimeUnit.HOURS.toMillis(1));
+    // time the engine needs to resolve a card, in nanoseconds, by card id
+    private static final LatencyRecorder[] cardNanos = new LatencyRecorder[Cards.PRINCESS + 1];
+
+    // the last 60 seconds of the counters the rates are computed from, one sample per second
+    private static final int messagesInSample = 0;
+    private static final int messagesOutSample = 1;
+    private static final int gamesSample = 2;
+    private static final int roundsSample = 3;
+    private static final long[][] samples = new long[4][61];
+    private static int seconds = 0;
+    private static volatile long messagesInPerSecond;
+    private static volatile long messagesOutPerSecond;
+    private static volatile long gamesPerMinute;
+    private static volatile long roundsPerMinute;
+
+    private static ScheduledExecutorService ticker;
+
+    static {
+        for (int card = Cards.GUARD; card <= Cards.PRINCESS; card++) {
+            cardNanos[card] = new LatencyRecorder(TimeUnit.SECONDS.toNanos(10));
+        }
+    }
+
+    private Metrics() {
+    }
+
+    /**
+     * Starts the metrics thread, registers the MXBean and, unless the port is negative, the HTTP endpoint on localhost.
+     *
+     * @param httpPort port of the plain-text endpoint, e.g. 8001
+     */
+    public static synchronized void start(int httpPort) {
+        if (ticker != null) {
+            return;
+        }
+        ticker = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "metrics");
+            thread.setDaemon(true);
+            return thread;
+        });
+        ticker.scheduleAtFixedRate(Metrics::tick, 1, 1, TimeUnit.SECONDS);
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(new MetricsBean(), MetricsBean.objectName());
+        } catch (Exception e) {
+            System.err.println("Metrics are not available over JMX: " + e);
+        }
+        if (httpPort >= 0) {
+            MetricsEndpoint.start(httpPort);
+        }
+    }
+
+    /**
+     * @param card id of the card
+     * @return the recorder for the time the engine needs to resolve the card
+     */
+    public static LatencyRecorder cardResolution(int card) {
+        return cardNanos[card];
+    }
+
+    /**
+     * Runs once per second on the metrics thread.
+     */
+    private static void tick() {
+        seconds++;
+        int now = seconds % samples[0].length;
+        int secondAgo = (seconds - 1) % samples[0].length;
+        // the oldest sample is a minute ago, or the start if the server runs for less than a minute
+        int minuteAgo = Math.max(0, seconds - 60) % samples[0].length;
+        samples[messagesInSample][now] = messagesIn.sum();
+        samples[messagesOutSample][now] = OutboundQueue.getAcceptedMessages();
+        samples[gamesSample][now] = gamesFinished.sum();
+        samples[roundsSample][now] = rounds.sum();
+        messagesInPerSecond = samples[messagesInSample][now] - samples[messagesInSample][secondAgo];
+        messagesOutPerSecond = samples[messagesOutSample][now] - samples[messagesOutSample][secondAgo];
+        gamesPerMinute = samples[gamesSample][now] - samples[gamesSample][minuteAgo];
+        roundsPerMinute = samples[roundsSample][now] - samples[roundsSample][minuteAgo];
+
+        if (seconds % windowSeconds == 0) {
+            broadcastNanos.roll();
+            turnMicros.roll();
+            queueWaitMillis.roll();
+            for (int card = Cards.GUARD; card <= Cards.PRINCESS; card++) {
+                cardNanos[card].roll();
+            }
+        }
+    }
+
+    public static long getActiveConnections() {
+        return Server.players.size();
+    }
+
+    public static long getActiveRooms() {
+        return Server.rooms.size();
+    }
+
+    public static long getRunningGames() {
+        long running = 0;
+        for (GameRoom room : Server.rooms.values()) {
+            if (room.isGameRunning()) {
+                running++;
+            }
+        }
+        return running;
+    }
+
+    public static long getQueuedPlayers() {
+        return Server.matchmaker.getWaiting();
+    }
+
+    public static long getPendingTimers() {
+        return Server.timers.getPending();
+    }
+
+    public static long getSpectators() {
+        return SpectatorLog.getTotalSpectators();
+    }
+
+    public static long getMessagesInPerSecond() {
+        return messagesInPerSecond;
+    }
+
+    public static long getMessagesOutPerSecond() {
+        return messagesOutPerSecond;
+    }
+
+    public static long getGamesPerMinute() {
+        return gamesPerMinute;
+    }
+
+    public static long getRoundsPerMinute() {
+        return roundsPerMinute;
+    }
+}
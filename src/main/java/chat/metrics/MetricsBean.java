@@ -0,0 +1,148 @@
+package chat.metrics;
+
+import chat.server.OutboundQueue;
+import game.engine.Cards;
+
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Hands the metrics to JMX (see MetricsMXBean).
+ */
+class MetricsBean implements MetricsMXBean {
+
+    static ObjectName objectName() throws MalformedObjectNameException {
+        return new ObjectName("loveletter:type=Metrics");
+    }
+
+    @Override
+    public long getConnections() {
+        return Metrics.connections.sum();
+    }
+
+    @Override
+    public long getActiveConnections() {
+        return Metrics.getActiveConnections();
+    }
+
+    @Override
+    public long getHandshakes() {
+        return Metrics.handshakes.sum();
+    }
+
+    @Override
+    public long getMessagesIn() {
+        return Metrics.messagesIn.sum();
+    }
+
+    @Override
+    public long getMessagesOut() {
+        return OutboundQueue.getAcceptedMessages();
+    }
+
+    @Override
+    public long getMessagesInPerSecond() {
+        return Metrics.getMessagesInPerSecond();
+    }
+
+    @Override
+    public long getMessagesOutPerSecond() {
+        return Metrics.getMessagesOutPerSecond();
+    }
+
+    @Override
+    public long getQueuedMessages() {
+        return OutboundQueue.getQueuedMessages();
+    }
+
+    @Override
+    public long getDroppedMessages() {
+        return OutboundQueue.getDroppedMessages();
+    }
+
+    @Override
+    public long getSlowConsumers() {
+        return OutboundQueue.getSlowConsumers();
+    }
+
+    @Override
+    public long getActiveRooms() {
+        return Metrics.getActiveRooms();
+    }
+
+    @Override
+    public long getRunningGames() {
+        return Metrics.getRunningGames();
+    }
+
+    @Override
+    public long getQueuedPlayers() {
+        return Metrics.getQueuedPlayers();
+    }
+
+    @Override
+    public long getPendingTimers() {
+        return Metrics.getPendingTimers();
+    }
+
+    @Override
+    public long getSpectators() {
+        return Metrics.getSpectators();
+    }
+
+    @Override
+    public long getAutoPlayedMoves() {
+        return Metrics.autoPlayedMoves.sum();
+    }
+
+    @Override
+    public long getGamesStarted() {
+        return Metrics.gamesStarted.sum();
+    }
+
+    @Override
+    public long getGamesFinished() {
+        return Metrics.gamesFinished.sum();
+    }
+
+    @Override
+    public long getGamesPerMinute() {
+        return Metrics.getGamesPerMinute();
+    }
+
+    @Override
+    public long getRounds() {
+        return Metrics.rounds.sum();
+    }
+
+    @Override
+    public long getRoundsPerMinute() {
+        return Metrics.getRoundsPerMinute();
+    }
+
+    @Override
+    public LatencySummary getBroadcastNanos() {
+        return Metrics.broadcastNanos.summary();
+    }
+
+    @Override
+    public LatencySummary getTurnMicros() {
+        return Metrics.turnMicros.summary();
+    }
+
+    @Override
+    public LatencySummary getQueueWaitMillis() {
+        return Metrics.queueWaitMillis.summary();
+    }
+
+    @Override
+    public Map<String, LatencySummary> getCardResolutionNanos() {
+        Map<String, LatencySummary> cards = new LinkedHashMap<>();
+        for (int card = Cards.GUARD; card <= Cards.PRINCESS; card++) {
+            cards.put(Cards.name(card), Metrics.cardResolution(card).summary());
+        }
+        return cards;
+    }
+}
@@ -0,0 +1,92 @@
+package chat.metrics;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+/**
+ * Plain-text endpoint for scrapers on http://localhost:port/metrics, one "name value" per line in the text format of Prometheus.
+ * It only listens on the loopback address: the metrics are for the machine of the server, not for the players.
+ */
+final class MetricsEndpoint {
+
+    private MetricsEndpoint() {
+    }
+
+    static void start(int port) {
+        try {
+            HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+            server.createContext("/metrics", MetricsEndpoint::handle);
+            // the single dispatcher thread of the HttpServer is enough for a scraper every few seconds
+            server.start();
+            System.out.println("Metrics on http://localhost:" + port + "/metrics");
+        } catch (IOException e) {
+            System.err.println("Metrics are not available over HTTP: " + e);
+        }
+    }
+
+    private static void handle(HttpExchange exchange) throws IOException {
+        byte[] body = text().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    /**
+     * @return all metrics in the text format
+     */
+    static String text() {
+        MetricsBean bean = new MetricsBean();
+        StringBuilder text = new StringBuilder();
+        line(text, "loveletter_connections_total", bean.getConnections());
+        line(text, "loveletter_connections_active", bean.getActiveConnections());
+        line(text, "loveletter_handshakes_total", bean.getHandshakes());
+        line(text, "loveletter_messages_in_total", bean.getMessagesIn());
+        line(text, "loveletter_messages_out_total", bean.getMessagesOut());
+        line(text, "loveletter_messages_in_per_second", bean.getMessagesInPerSecond());
+        line(text, "loveletter_messages_out_per_second", bean.getMessagesOutPerSecond());
+        line(text, "loveletter_outbound_queued", bean.getQueuedMessages());
+        line(text, "loveletter_outbound_dropped_total", bean.getDroppedMessages());
+        line(text, "loveletter_slow_consumers_total", bean.getSlowConsumers());
+        line(text, "loveletter_rooms_active", bean.getActiveRooms());
+        line(text, "loveletter_games_running", bean.getRunningGames());
+        line(text, "loveletter_queued_players", bean.getQueuedPlayers());
+        line(text, "loveletter_timers_pending", bean.getPendingTimers());
+        line(text, "loveletter_auto_played_moves_total", bean.getAutoPlayedMoves());
+        line(text, "loveletter_spectators", bean.getSpectators());
+        line(text, "loveletter_games_started_total", bean.getGamesStarted());
+        line(text, "loveletter_games_finished_total", bean.getGamesFinished());
+        line(text, "loveletter_games_per_minute", bean.getGamesPerMinute());
+        line(text, "loveletter_rounds_total", bean.getRounds());
+        line(text, "loveletter_rounds_per_minute", bean.getRoundsPerMinute());
+        summary(text, "loveletter_broadcast_nanos", "", bean.getBroadcastNanos());
+        summary(text, "loveletter_turn_micros", "", bean.getTurnMicros());
+        summary(text, "loveletter_queue_wait_millis", "", bean.getQueueWaitMillis());
+        for (Map.Entry<String, LatencySummary> card : bean.getCardResolutionNanos().entrySet()) {
+            summary(text, "loveletter_card_resolution_nanos", "card=\"" + card.getKey() + "\",", card.getValue());
+        }
+        return text.toString();
+    }
+
+    private static void line(StringBuilder text, String name, long value) {
+        text.append(name).append(' ').append(value).append('\n');
+    }
+
+    private static void summary(StringBuilder text, String name, String labels, LatencySummary summary) {
+        text.append(name).append("{").append(labels).append("quantile=\"0.5\"} ").append(summary.getP50()).append('\n');
+        text.append(name).append("{").append(labels).append("quantile=\"0.9\"} ").append(summary.getP90()).append('\n');
+        text.append(name).append("{").append(labels).append("quantile=\"0.99\"} ").append(summary.getP99()).append('\n');
+        text.append(name).append("{").append(labels).append("quantile=\"1\"} ").append(summary.getMax()).append('\n');
+        String count = labels.isEmpty() ? "" : "{" + labels.substring(0, labels.length() - 1) + "}";
+        // the count of the last window, not since the start
+        text.append(name).append("_window_count").append(count).append(' ').append(summary.getCount()).append('\n');
+    }
+}
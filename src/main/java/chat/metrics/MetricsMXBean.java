@@ -0,0 +1,63 @@
+package chat.metrics;
+
+import java.util.Map;
+
+/**
+ * The metrics of the server as seen in JConsole or any other JMX client, under "loveletter:type=Metrics".
+ * Counters count since the start of the server, durations are those of the last window (see Metrics).
+ */
+public interface MetricsMXBean {
+
+    long getConnections();
+
+    long getActiveConnections();
+
+    long getHandshakes();
+
+    long getMessagesIn();
+
+    long getMessagesOut();
+
+    long getMessagesInPerSecond();
+
+    long getMessagesOutPerSecond();
+
+    long getQueuedMessages();
+
+    long getDroppedMessages();
+
+    long getSlowConsumers();
+
+    long getActiveRooms();
+
+    long getRunningGames();
+
+    long getQueuedPlayers();
+
+    long getPendingTimers();
+
+    long getAutoPlayedMoves();
+
+    long getSpectators();
+
+    long getGamesStarted();
+
+    long getGamesFinished();
+
+    long getGamesPerMinute();
+
+    long getRounds();
+
+    long getRoundsPerMinute();
+
+    LatencySummary getBroadcastNanos();
+
+    LatencySummary getTurnMicros();
+
+    LatencySummary getQueueWaitMillis();
+
+    /**
+     * @return the time the engine needs to resolve a card, by the name of the card
+     */
+    Map<String, LatencySummary> getCardResolutionNanos();
+}
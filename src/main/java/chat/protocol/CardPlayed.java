@@ -0,0 +1,113 @@
+package chat.protocol;
+
+import com.squareup.moshi.JsonAdapter;
+import com.squareup.moshi.JsonReader;
+import com.squareup.moshi.JsonWriter;
+import game.engine.Cards;
+import okio.BufferedSink;
+import okio.BufferedSource;
+
+import java.io.IOException;
+
+/**
+ * A player played a card (see game.engine.Event.CARD_PLAYED), with the target and the guess of the Guard if there are any.
+ * Cards are the ids of game.engine.Cards; in JSON they are written with their names, e.g. "Guard".
+ */
+public final class CardPlayed extends Message {
+    private final String player;
+    private final int card;
+    private final String target; // null if the card has no target
+    private final int guess;     // Cards.NONE unless the card is the Guard
+
+    // constructor
+    public CardPlayed(String player, int card, String target, int guess) {
+        this.player = player;
+        this.card = card;
+        this.target = target;
+        this.guess = guess;
+    }
+
+    public String getPlayer() {
+        return this.player;
+    }
+
+    public int getCard() {
+        return this.card;
+    }
+
+    public String getTarget() {
+        return this.target;
+    }
+
+    public int getGuess() {
+        return this.guess;
+    }
+
+    @Override
+    int binaryType() {
+        return MessageCodec.CARD_PLAYED;
+    }
+
+    @Override
+    void writeBinary(BufferedSink sink) throws IOException {
+        MessageCodec.writeString(sink, player);
+        sink.writeByte(card);
+        // no target is written as an empty name, names are never empty
+        MessageCodec.writeString(sink, target == null ? "" : target);
+        sink.writeByte(guess);
+    }
+
+    static CardPlayed readBinary(BufferedSource source) throws IOException {
+        String player = MessageCodec.readString(source);
+        int card = source.readByte();
+        String target = MessageCodec.readString(source);
+        int guess = source.readByte();
+        return new CardPlayed(player, card, target.isEmpty() ? null : target, guess);
+    }
+
+    static final class Adapter extends JsonAdapter<CardPlayed> {
+        @Override
+        public CardPlayed fromJson(JsonReader reader) throws IOException {
+            String player = null;
+            int card = Cards.NONE;
+            String target = null;
+            int guess = Cards.NONE;
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case "player":
+                        player = reader.nextString();
+                        break;
+                    case "card":
+                        card = Cards.byName(reader.nextString());
+                        break;
+                    case "target":
+                        target = reader.nextString();
+                        break;
+                    case "guess":
+                        guess = Cards.byName(reader.nextString());
+                        break;
+                    default:
+                        reader.skipValue();
+                }
+            }
+            reader.endObject();
+            return new CardPlayed(player, card, target, guess);
+        }
+
+        @Override
+        public void toJson(JsonWriter writer, CardPlayed value) throws IOException {
+            writer.beginObject();
+            writer.name("player").value(value.player);
+            writer.name("card").value(Cards.name(value.card));
+            // fields that don't apply are left out
+            if (value.target != null) {
+                writer.name("target").value(value.target);
+            }
+            if (value.guess != Cards.NONE) {
+                writer.name("guess").value(Cards.name(value.guess));
+            }
+            writer.endObject();
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package chat.protocol;
+
+import com.squareup.moshi.JsonAdapter;
+import com.squareup.moshi.JsonReader;
+import com.squareup.moshi.JsonWriter;
+import okio.BufferedSink;
+import okio.BufferedSource;
+
+import java.io.IOException;
+
+/**
+ * A chat message of another player, to the room or the lobby or whispered to this client only.
+ */
+public final class ChatMessage extends Message {
+    private final String sender;
+    private final String text;
+    private final boolean whisper;
+
+    // constructor
+    public ChatMessage(String sender, String text, boolean whisper) {
+        this.sender = sender;
+        this.text = text;
+        this.whisper = whisper;
+    }
+
+    public String getSender() {
+        return this.sender;
+    }
+
+    public String getText() {
+        return this.text;
+    }
+
+    public boolean isWhisper() {
+        return this.whisper;
+    }
+
+    @Override
+    int binaryType() {
+        return MessageCodec.CHAT_MESSAGE;
+    }
+
+    @Override
+    void writeBinary(BufferedSink sink) throws IOException {
+        MessageCodec.writeString(sink, sender);
+        MessageCodec.writeString(sink, text);
+        sink.writeByte(whisper ? 1 : 0);
+    }
+
+    static ChatMessage readBinary(BufferedSource source) throws IOException {
+        String sender = MessageCodec.readString(source);
+        String text = MessageCodec.readString(source);
+        return new ChatMessage(sender, text, source.readByte() != 0);
+    }
+
+    static final class Adapter extends JsonAdapter<ChatMessage> {
+        @Override
+        public ChatMessage fromJson(JsonReader reader) throws IOException {
+            String sender = null;
+            String text = null;
+            boolean whisper = false;
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case "sender":
+                        sender = reader.nextString();
+                        break;
+                    case "text":
+                        text = reader.nextString();
+                        break;
+                    case "whisper":
+                        whisper = reader.nextBoolean();
+                        break;
+                    default:
+                        reader.skipValue();
+                }
+            }
+            reader.endObject();
+            return new ChatMessage(sender, text, whisper);
+        }
+
+        @Override
+        public void toJson(JsonWriter writer, ChatMessage value) throws IOException {
+            writer.beginObject();
+            writer.name("sender").value(value.sender);
+            writer.name("text").value(value.text);
+            writer.name("whisper").value(value.whisper);
+            writer.endObject();
+        }
+    }
+}
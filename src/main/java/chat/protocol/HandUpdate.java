@@ -0,0 +1,82 @@
+package chat.protocol;
+
+import com.squareup.moshi.JsonAdapter;
+import com.squareup.moshi.JsonReader;
+import com.squareup.moshi.JsonWriter;
+import game.engine.Cards;
+import okio.BufferedSink;
+import okio.BufferedSource;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * The cards in the hand of this client, sent whenever the hand changed and for "/hand".
+ * Only the owner of the hand gets it. Cards are the ids of game.engine.Cards, in JSON their names.
+ */
+public final class HandUpdate extends Message {
+    private final byte[] cards;
+
+    /**
+     * @param cards one or two cards; the array is copied
+     */
+    public HandUpdate(byte[] cards) {
+        this.cards = cards.clone();
+    }
+
+    public int getCardCount() {
+        return this.cards.length;
+    }
+
+    public int getCard(int index) {
+        return this.cards[index];
+    }
+
+    @Override
+    int binaryType() {
+        return MessageCodec.HAND_UPDATE;
+    }
+
+    @Override
+    void writeBinary(BufferedSink sink) throws IOException {
+        sink.writeByte(cards.length);
+        sink.write(cards);
+    }
+
+    static HandUpdate readBinary(BufferedSource source) throws IOException {
+        return new HandUpdate(source.readByteArray(source.readByte()));
+    }
+
+    static final class Adapter extends JsonAdapter<HandUpdate> {
+        @Override
+        public HandUpdate fromJson(JsonReader reader) throws IOException {
+            byte[] cards = new byte[0];
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if (reader.nextName().equals("cards")) {
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        cards = Arrays.copyOf(cards, cards.length + 1);
+                        cards[cards.length - 1] = Cards.byName(reader.nextString());
+                    }
+                    reader.endArray();
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+            return new HandUpdate(cards);
+        }
+
+        @Override
+        public void toJson(JsonWriter writer, HandUpdate value) throws IOException {
+            writer.beginObject();
+            writer.name("cards").beginArray();
+            for (byte card : value.cards) {
+                writer.value(Cards.name(card));
+            }
+            writer.endArray();
+            writer.endObject();
+        }
+    }
+}
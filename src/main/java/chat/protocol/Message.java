@@ -0,0 +1,25 @@
+package chat.protocol;
+
+import okio.BufferedSink;
+
+import java.io.IOException;
+
+/**
+ * A typed message of the structured protocol (see Protocol).
+ * Every message has a JSON adapter (see MessageCodec) and writes itself in the binary encoding:
+ * one byte for the type, then its fields in a fixed order, numbers as single bytes and strings as
+ * two bytes of length and the UTF-8 bytes.
+ * Messages are never changed once they are created, so one message can be encoded once for many clients.
+ */
+public abstract class Message {
+
+    /**
+     * @return the byte that tells the type in the binary encoding (see MessageCodec)
+     */
+    abstract int binaryType();
+
+    /**
+     * Writes the fields of the message in the binary encoding, without the type.
+     */
+    abstract void writeBinary(BufferedSink sink) throws IOException;
+}
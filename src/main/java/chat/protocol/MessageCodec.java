@@ -0,0 +1,158 @@
+package chat.protocol;
+
+import chat.server.Frame;
+import com.squareup.moshi.JsonAdapter;
+import com.squareup.moshi.Moshi;
+import com.squareup.moshi.adapters.PolymorphicJsonAdapterFactory;
+import okio.Buffer;
+import okio.BufferedSink;
+import okio.BufferedSource;
+import okio.Utf8;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+
+/**
+ * Encodes the messages of the structured protocol into frames and decodes them again.
+ * Every frame starts with the length of the message in four bytes (big-endian), followed by the message:
+ * in JSON an object with the type in "type", e.g. {"type":"TurnStarted","round":1,"turn":3,"player":"Anna"},
+ * in the binary encoding the type byte and the fields (see Message).
+ * Since every frame says how long it is, a client can read many of them from one packet without looking for line breaks.
+ * The JSON adapters are written by hand with the streaming API of Moshi: they don't need reflection and
+ * the generated adapters of Moshi only exist for Kotlin.
+ */
+public final class MessageCodec {
+    // the type bytes of the binary encoding
+    static final int TEXT = 1;
+    static final int CHAT_MESSAGE = 2;
+    static final int TURN_STARTED = 3;
+    static final int CARD_PLAYED = 4;
+    static final int HAND_UPDATE = 5;
+    // a longer frame can only be a broken stream
+    private static final int maxFrameLength = 1024 * 1024;
+
+    private static final JsonAdapter<Message> jsonAdapter = new Moshi.Builder()
+            .add(PolymorphicJsonAdapterFactory.of(Message.class, "type")
+                    .withSubtype(Text.class, "Text")
+                    .withSubtype(ChatMessage.class, "ChatMessage")
+                    .withSubtype(TurnStarted.class, "TurnStarted")
+                    .withSubtype(CardPlayed.class, "CardPlayed")
+                    .withSubtype(HandUpdate.class, "HandUpdate"))
+            .add(Text.class, new Text.Adapter())
+            .add(ChatMessage.class, new ChatMessage.Adapter())
+            .add(TurnStarted.class, new TurnStarted.Adapter())
+            .add(CardPlayed.class, new CardPlayed.Adapter())
+            .add(HandUpdate.class, new HandUpdate.Adapter())
+            .build()
+            .adapter(Message.class);
+
+    private MessageCodec() {
+    }
+
+    /**
+     * Encodes the message into a frame. The caller holds the first reference of the frame and has to release it.
+     *
+     * @param message  to encode
+     * @param protocol JSON or BINARY
+     * @return the frame with the length and the message
+     */
+    public static Frame encode(Message message, Protocol protocol) {
+        Buffer buffer = new Buffer();
+        try {
+            if (protocol == Protocol.JSON) {
+                jsonAdapter.toJson(buffer, message);
+            } else if (protocol == Protocol.BINARY) {
+                buffer.writeByte(message.binaryType());
+                message.writeBinary(buffer);
+            } else {
+                throw new IllegalArgumentException("Messages of the line protocol are encoded with Frame.of()");
+            }
+        } catch (IOException e) {
+            // a Buffer lives in memory, writing to it does not fail
+            throw new IllegalStateException(e);
+        }
+        int length = (int) buffer.size();
+        Frame frame = Frame.allocate(4 + length);
+        byte[] bytes = frame.array();
+        bytes[0] = (byte) (length >>> 24);
+        bytes[1] = (byte) (length >>> 16);
+        bytes[2] = (byte) (length >>> 8);
+        bytes[3] = (byte) length;
+        int position = 4;
+        while (position < 4 + length) {
+            position += buffer.read(bytes, position, 4 + length - position);
+        }
+        return frame;
+    }
+
+    /**
+     * Reads the next frame from the stream, e.g. in a client.
+     *
+     * @param input    stream of frames
+     * @param protocol JSON or BINARY, the one the client asked for
+     * @return the message
+     * @throws IOException if the stream ends or the frame is broken
+     */
+    public static Message read(DataInputStream input, Protocol protocol) throws IOException {
+        int length = input.readInt();
+        if (length < 0 || length > maxFrameLength) {
+            throw new IOException("Invalid frame length " + length);
+        }
+        byte[] bytes = new byte[length];
+        input.readFully(bytes);
+        return decode(bytes, protocol);
+    }
+
+    /**
+     * @param bytes    the message of one frame, without the length
+     * @param protocol JSON or BINARY
+     * @return the message
+     * @throws IOException if the message is broken or of an unknown type
+     */
+    public static Message decode(byte[] bytes, Protocol protocol) throws IOException {
+        Buffer buffer = new Buffer().write(bytes);
+        if (protocol == Protocol.JSON) {
+            return jsonAdapter.fromJson(buffer);
+        }
+        int type = buffer.readByte();
+        switch (type) {
+            case TEXT:
+                return Text.readBinary(buffer);
+            case CHAT_MESSAGE:
+                return ChatMessage.readBinary(buffer);
+            case TURN_STARTED:
+                return TurnStarted.readBinary(buffer);
+            case CARD_PLAYED:
+                return CardPlayed.readBinary(buffer);
+            case HAND_UPDATE:
+                return HandUpdate.readBinary(buffer);
+            default:
+                throw new IOException("Unknown message type " + type);
+        }
+    }
+
+    /**
+     * @return the message as JSON, without the length (e.g. to print it)
+     */
+    public static String toJson(Message message) {
+        return jsonAdapter.toJson(message);
+    }
+
+    /**
+     * Writes a string of the binary encoding: two bytes for the number of UTF-8 bytes, then the bytes.
+     */
+    static void writeString(BufferedSink sink, String value) throws IOException {
+        long length = Utf8.size(value);
+        if (length > 0xFFFF) {
+            // lines of the clients are cut at 8 KB, so no message of the server comes close to this
+            throw new IllegalArgumentException("String too long for the binary encoding: " + length + " bytes");
+        }
+        sink.writeShort((int) length);
+        sink.writeUtf8(value);
+    }
+
+    static String readString(BufferedSource source) throws IOException {
+        int length = source.readShort() & 0xFFFF;
+        return source.readUtf8(length);
+    }
+}
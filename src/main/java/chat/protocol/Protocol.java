@@ -0,0 +1,26 @@
+package chat.protocol;
+
+/**
+ * How the server writes to a client. A client chooses it with "/protocol json" (or binary) before it sends its name.
+ * LINE is the default for humans: one line of English text per message, as printed by the Client.
+ * JSON and BINARY are for bots and other programs: typed messages (see Message) in length-prefixed frames
+ * (see MessageCodec), so nobody has to scrape the text. What the client sends stays a line of text in every protocol.
+ */
+public enum Protocol {
+    LINE,
+    JSON,
+    BINARY;
+
+    /**
+     * @param name of the protocol, e.g. "json"
+     * @return the protocol or null if there is no protocol with that name
+     */
+    public static Protocol byName(String name) {
+        for (Protocol protocol : values()) {
+            if (protocol.name().equalsIgnoreCase(name)) {
+                return protocol;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,64 @@
+package chat.protocol;
+
+import com.squareup.moshi.JsonAdapter;
+import com.squareup.moshi.JsonReader;
+import com.squareup.moshi.JsonWriter;
+import okio.BufferedSink;
+import okio.BufferedSource;
+
+import java.io.IOException;
+
+/**
+ * Any message of the server that has no type of its own, e.g. the greeting, the help or an error.
+ * The text is the same a client of the line protocol gets.
+ */
+public final class Text extends Message {
+    private final String text;
+
+    // constructor
+    public Text(String text) {
+        this.text = text;
+    }
+
+    public String getText() {
+        return this.text;
+    }
+
+    @Override
+    int binaryType() {
+        return MessageCodec.TEXT;
+    }
+
+    @Override
+    void writeBinary(BufferedSink sink) throws IOException {
+        MessageCodec.writeString(sink, text);
+    }
+
+    static Text readBinary(BufferedSource source) throws IOException {
+        return new Text(MessageCodec.readString(source));
+    }
+
+    static final class Adapter extends JsonAdapter<Text> {
+        @Override
+        public Text fromJson(JsonReader reader) throws IOException {
+            String text = null;
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if (reader.nextName().equals("text")) {
+                    text = reader.nextString();
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+            return new Text(text);
+        }
+
+        @Override
+        public void toJson(JsonWriter writer, Text value) throws IOException {
+            writer.beginObject();
+            writer.name("text").value(value.text);
+            writer.endObject();
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package chat.protocol;
+
+import com.squareup.moshi.JsonAdapter;
+import com.squareup.moshi.JsonReader;
+import com.squareup.moshi.JsonWriter;
+import okio.BufferedSink;
+import okio.BufferedSource;
+
+import java.io.IOException;
+
+/**
+ * The turn of a player started (see game.engine.Event.TURN_STARTED).
+ */
+public final class TurnStarted extends Message {
+    private final int round;
+    private final int turn;
+    private final String player;
+
+    // constructor
+    public TurnStarted(int round, int turn, String player) {
+        this.round = round;
+        this.turn = turn;
+        this.player = player;
+    }
+
+    public int getRound() {
+        return this.round;
+    }
+
+    public int getTurn() {
+        return this.turn;
+    }
+
+    public String getPlayer() {
+        return this.player;
+    }
+
+    @Override
+    int binaryType() {
+        return MessageCodec.TURN_STARTED;
+    }
+
+    @Override
+    void writeBinary(BufferedSink sink) throws IOException {
+        // a game ends long before round or turn could reach 255
+        sink.writeByte(round);
+        sink.writeByte(turn);
+        MessageCodec.writeString(sink, player);
+    }
+
+    static TurnStarted readBinary(BufferedSource source) throws IOException {
+        int round = source.readByte() & 0xFF;
+        int turn = source.readByte() & 0xFF;
+        return new TurnStarted(round, turn, MessageCodec.readString(source));
+    }
+
+    static final class Adapter extends JsonAdapter<TurnStarted> {
+        @Override
+        public TurnStarted fromJson(JsonReader reader) throws IOException {
+            int round = 0;
+            int turn = 0;
+            String player = null;
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case "round":
+                        round = reader.nextInt();
+                        break;
+                    case "turn":
+                        turn = reader.nextInt();
+                        break;
+                    case "player":
+                        player = reader.nextString();
+                        break;
+                    default:
+                        reader.skipValue();
+                }
+            }
+            reader.endObject();
+            return new TurnStarted(round, turn, player);
+        }
+
+        @Override
+        public void toJson(JsonWriter writer, TurnStarted value) throws IOException {
+            writer.beginObject();
+            writer.name("round").value(value.round);
+            writer.name("turn").value(value.turn);
+            writer.name("player").value(value.player);
+            writer.endObject();
+        }
+    }
+}
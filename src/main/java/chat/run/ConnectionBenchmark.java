@@ -0,0 +1,126 @@
+package chat.run;
+
+import chat.client.ClientHandler;
+import chat.server.Server;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compares the thread modes of the server: starts a server in this JVM, connects many clients that go through
+ * the name and date handshake, open a room each and then stay idle, and prints the number of threads and the memory used.
+ * Run every mode in its own JVM, e.g.
+ * java -cp vp-damboeck-1.0-SNAPSHOT.jar chat.run.ConnectionBenchmark virtual 10000
+ */
+public class ConnectionBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        if (args.length != 2) {
+            System.out.println("Usage: java -cp vp-damboeck-1.0-SNAPSHOT.jar chat.run.ConnectionBenchmark <nio|blocking|virtual> <connections>");
+            return;
+        }
+        String mode = args[0];
+        int connections = Integer.parseInt(args[1]);
+
+        Server server = new Server();
+        if (mode.equalsIgnoreCase("blocking")) {
+            server.runBlockingServer(false);
+        } else if (mode.equalsIgnoreCase("virtual")) {
+            server.runBlockingServer(true);
+        } else {
+            server.runServer();
+        }
+
+        long start = System.nanoTime();
+        List<SocketChannel> channels = new ArrayList<>();
+        for (int i = 0; i < connections; i++) {
+            SocketChannel channel = connect();
+            // name, date and room in one go; the clients never read, the greetings stay in the socket buffers.
+            // Every bot leaves the lobby for its own room right away, so the lobby announcements stay small.
+            String handshake = "Bot" + letters(i) + "\n2020-02-02\n/create room" + letters(i) + "\n";
+            channel.write(ByteBuffer.wrap(handshake.getBytes(StandardCharsets.UTF_8)));
+            channels.add(channel);
+            // one client at a time: the benchmark measures the idle connections, not how fast they can join
+            while (countReadyClients() < i + 1) {
+                Thread.sleep(1);
+            }
+        }
+        long setupMillis = (System.nanoTime() - start) / 1000000;
+
+        System.gc();
+        Thread.sleep(500);
+        long heapUsed = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+        System.out.println("mode=" + mode
+                + " connections=" + connections
+                + " setup=" + setupMillis + "ms"
+                // virtual threads are not counted here, only the platform threads that carry them
+                + " threads=" + ManagementFactory.getThreadMXBean().getThreadCount()
+                + " peakThreads=" + ManagementFactory.getThreadMXBean().getPeakThreadCount()
+                + " heapUsed=" + heapUsed / (1024 * 1024) + "MB"
+                + " rss=" + residentSetMegabytes() + "MB");
+        System.exit(0);
+    }
+
+    /**
+     * Connects to the server, waiting for it to come up.
+     */
+    private static SocketChannel connect() throws InterruptedException {
+        while (true) {
+            try {
+                return SocketChannel.open(new InetSocketAddress("localhost", Server.PORT));
+            } catch (IOException e) {
+                Thread.sleep(50);
+            }
+        }
+    }
+
+    /**
+     * @return number of clients that finished the handshake and sit in their room
+     */
+    private static int countReadyClients() {
+        int count = 0;
+        for (ClientHandler client : Server.players.getClients()) {
+            if (client.getRoom() != null) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Names may only contain letters, so the number of the bot is written with letters (0 = a, 26 = ba, ...).
+     */
+    private static String letters(int number) {
+        StringBuilder builder = new StringBuilder();
+        do {
+            builder.insert(0, (char) ('a' + number % 26));
+            number /= 26;
+        } while (number > 0);
+        return builder.toString();
+    }
+
+    /**
+     * @return resident memory of the process in MB, or -1 if the system does not tell (only Linux does)
+     */
+    private static long residentSetMegabytes() {
+        try (BufferedReader reader = new BufferedReader(new FileReader("/proc/self/status"))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith("VmRSS:")) {
+                    return Long.parseLong(line.replaceAll("[^0-9]", "")) / 1024;
+                }
+            }
+        } catch (IOException | NumberFormatException e) {
+            return -1;
+        }
+        return -1;
+    }
+}
@@ -1,24 +1,121 @@
 package chat.run;
 
 import chat.client.Client;
+import chat.client.LoadTest;
+import chat.gateway.Gateway;
+import chat.journal.Journal;
+import chat.journal.JournalReader;
+import chat.metrics.Metrics;
+import chat.protocol.Protocol;
 import chat.server.Server;
+import chat.server.Snapshots;
+import game.sim.SimulationStats;
+import game.sim.Simulator;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
 
 public class Main {
     public static void main(String[] args) {
-        if (args.length != 1) {
-            System.out.println("Usage: java -jar vp-damboeck-1.0-SNAPSHOT.jar <server|client>");
+        if (args.length < 1) {
+            System.out.println("Usage: java -jar vp-damboeck-1.0-SNAPSHOT.jar <server [blocking|virtual]|client [json|binary]|simulate <games> <bot> <bot> [bot] [bot]|loadtest <connections> <seconds> [host] [port]|journal [directory]|gateway <host:port> [host:port...]>");
             return;
         }
 
         String mode = args[0];
         if (mode.equalsIgnoreCase("server")) {
+            // JMX and http://localhost:8001/metrics, -Dloveletter.metricsPort=-1 turns the endpoint off
+            Metrics.start(Integer.getInteger("loveletter.metricsPort", 8001));
+            // with -Dloveletter.journal=journal every game is recorded in the journal directory, for audits; off by default
+            String journal = System.getProperty("loveletter.journal", "");
+            if (!journal.isEmpty()) {
+                Journal.start(Paths.get(journal));
+                System.out.println("Journal: " + Paths.get(journal).toAbsolutePath());
+            }
+            // with -Dloveletter.snapshots=games.snapshot the running games are saved into this file and restored
+            // when the server starts again; off by default, so a server started elsewhere never gets old games back
+            String snapshots = System.getProperty("loveletter.snapshots", "");
+            if (!snapshots.isEmpty()) {
+                System.out.println("Snapshots: " + Paths.get(snapshots).toAbsolutePath());
+                Snapshots.start(Paths.get(snapshots));
+            }
             Server server = new Server();
-            server.runServer();
+            // the selector transport is the default, "server blocking" uses one thread per client,
+            // "server virtual" one virtual thread per client and per game
+            if (args.length == 2 && args[1].equalsIgnoreCase("blocking")) {
+                server.runBlockingServer(false);
+            } else if (args.length == 2 && args[1].equalsIgnoreCase("virtual")) {
+                server.runBlockingServer(true);
+            } else {
+                server.runServer();
+            }
         } else if (mode.equalsIgnoreCase("client")) {
-            Client client = new Client();
+            // "client json" and "client binary" use the structured protocol instead of the lines
+            Protocol protocol = args.length == 2 ? Protocol.byName(args[1]) : Protocol.LINE;
+            if (protocol == null) {
+                System.out.println("Use either 'line', 'json' or 'binary' as protocol.");
+                return;
+            }
+            Client client = new Client(protocol);
             client.startClient();
+        } else if (mode.equalsIgnoreCase("simulate") && args.length >= 4) {
+            simulate(Long.parseLong(args[1]), Arrays.copyOfRange(args, 2, args.length));
+        } else if (mode.equalsIgnoreCase("loadtest") && args.length >= 3) {
+            String host = args.length >= 4 ? args[3] : "localhost";
+            int port = args.length >= 5 ? Integer.parseInt(args[4]) : Server.PORT;
+            try {
+                new LoadTest(host, port, Integer.parseInt(args[1]), Integer.parseInt(args[2])).run(System.out);
+            } catch (IOException | InterruptedException e) {
+                System.err.println("The load test failed: " + e);
+            }
+        } else if (mode.equalsIgnoreCase("gateway") && args.length >= 2) {
+            // the clients connect to the gateway on -Dloveletter.port, the backends are servers started with other ports
+            List<InetSocketAddress> backends = new ArrayList<>();
+            for (int i = 1; i < args.length; i++) {
+                backends.add(Gateway.parseAddress(args[i]));
+            }
+            Gateway gateway = new Gateway(backends);
+            gateway.runGateway(Server.PORT);
+            try {
+                gateway.runConsole(System.in);
+            } catch (IOException e) {
+                System.err.println("The console of the gateway could not be read: " + e);
+            }
+        } else if (mode.equalsIgnoreCase("journal")) {
+            try {
+                JournalReader.print(Paths.get(args.length >= 2 ? args[1] : "journal"), System.out);
+            } catch (IOException e) {
+                System.err.println("The journal could not be read: " + e);
+            }
         } else {
-            System.out.println("Use either 'server' or 'client' as argument.");
+            System.out.println("Use either 'server', 'client', 'simulate', 'loadtest', 'journal' or 'gateway' as argument.");
+        }
+    }
+
+    /**
+     * Plays the games between the bots on all cores and prints the stats, e.g. "simulate 1000000 greedy random".
+     * The games are dealt from -Dloveletter.seed (random by default), which is printed so a run can be repeated.
+     *
+     * @param games    number of games
+     * @param policies one bot policy per player (random, greedy or mcts)
+     */
+    private static void simulate(long games, String[] policies) {
+        Long seed = Long.getLong("loveletter.seed");
+        if (seed == null) {
+            seed = new SplittableRandom().nextLong();
         }
+        Simulator simulator = new Simulator(policies, seed);
+        long start = System.nanoTime();
+        SimulationStats stats = simulator.run(games);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.println("seed: " + seed);
+        stats.print(System.out);
+        System.out.println(String.format("%.2f s, %.0f games per minute on %d cores",
+                seconds, stats.getGames() * 60 / seconds, Runtime.getRuntime().availableProcessors()));
     }
 }
@@ -0,0 +1,82 @@
+package chat.server;
+
+import chat.protocol.Message;
+import chat.protocol.MessageCodec;
+import chat.protocol.Protocol;
+import chat.protocol.Text;
+
+/**
+ * One message for many clients that may speak different protocols (see chat.protocol.Protocol):
+ * the text for the clients of the line protocol and the typed message for the others.
+ * Every protocol is encoded the first time a client needs it and then shared by all recipients,
+ * so a broadcast still costs one encoding per protocol, not one per client.
+ * A broadcast is sent on one thread; whoever creates it has to release() it afterwards.
+ */
+public final class Broadcast {
+    private static final int protocolCount = Protocol.values().length;
+    private final String text;
+    private Message message;
+    private final boolean hasMessage;
+    // encoded frames by Protocol.ordinal(), null until a client needs them
+    private final Frame[] frames = new Frame[protocolCount];
+
+    /**
+     * The same text for everyone: the structured clients get it as a Text message.
+     *
+     * @param text without the line break
+     */
+    public Broadcast(String text) {
+        this.text = text;
+        this.hasMessage = true;
+    }
+
+    /**
+     * @param text    for the clients of the line protocol, or null if they get nothing
+     * @param message for the clients of the structured protocols, or null if they get nothing
+     */
+    public Broadcast(String text, Message message) {
+        this.text = text;
+        this.message = message;
+        this.hasMessage = message != null;
+    }
+
+    /**
+     * @param protocol of the recipient
+     * @return the encoded frame (still owned by the broadcast) or null if there is nothing for clients of this protocol
+     */
+    public Frame frame(Protocol protocol) {
+        Frame frame = frames[protocol.ordinal()];
+        if (frame != null) {
+            return frame;
+        }
+        if (protocol == Protocol.LINE) {
+            if (text == null) {
+                return null;
+            }
+            frame = Frame.of(text);
+        } else {
+            if (!hasMessage) {
+                return null;
+            }
+            if (message == null) {
+                // created only once a structured client is among the recipients
+                message = new Text(text);
+            }
+            frame = MessageCodec.encode(message, protocol);
+        }
+        frames[protocol.ordinal()] = frame;
+        return frame;
+    }
+
+    /**
+     * Gives back the frames; the queues of the recipients keep their own references.
+     */
+    public void release() {
+        for (int i = 0; i < frames.length; i++) {
+            if (frames[i] != null) {
+                frames[i].release();
+                frames[i] = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package chat.server;
+
+/**
+ * The network side of a client, as seen by the ClientHandler.
+ * The transport reads the lines of the client and hands them to the ClientHandler,
+ * the ClientHandler only ever sends messages and closes the connection.
+ */
+public interface Connection {
+
+    /**
+     * Sends one line to the client. Must not block the calling thread for long,
+     * because it is called from broadcasts and the game loop.
+     *
+     * @param message without the line break
+     */
+    default void sendMessage(String message) {
+        Frame frame = Frame.of(message);
+        try {
+            send(frame, false);
+        } finally {
+            frame.release();
+        }
+    }
+
+    /**
+     * Sends a chat line. Unlike the messages of the game, chat may be dropped for a client that reads too slowly
+     * (see OutboundQueue.SlowConsumerPolicy).
+     *
+     * @param message without the line break
+     */
+    default void sendChatMessage(String message) {
+        Frame frame = Frame.of(message);
+        try {
+            send(frame, true);
+        } finally {
+            frame.release();
+        }
+    }
+
+    /**
+     * Sends an encoded line. Broadcasts encode their message once and send the same frame to every recipient.
+     * The connection takes its own reference if it keeps the frame, the caller still has to release its own.
+     *
+     * @param frame to be sent
+     * @param chat  true for chat, which may be dropped for a client that reads too slowly
+     */
+    void send(Frame frame, boolean chat);
+
+    /**
+     * Closes the connection once everything that was sent before has been written.
+     * The transport calls ClientHandler.onDisconnect() afterwards.
+     */
+    void close();
+}
@@ -0,0 +1,107 @@
+package chat.server;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * One thread with one Selector that serves many NioConnections.
+ * All reads, writes and the ClientHandler logic of its connections run on this thread,
+ * other threads hand work to the loop with execute().
+ */
+public class EventLoop implements Runnable {
+    private final Selector selector;
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    // true while a wakeup is already on its way, so a burst of execute() calls wakes the selector only once
+    private final AtomicBoolean wakeupPending = new AtomicBoolean();
+    // all connections of this loop read into the same buffer, only partial lines are copied per connection
+    private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(16 * 1024);
+    private Thread thread;
+
+    // constructor
+    public EventLoop() throws IOException {
+        this.selector = Selector.open();
+    }
+
+    public Selector getSelector() {
+        return this.selector;
+    }
+
+    ByteBuffer getReadBuffer() {
+        return this.readBuffer;
+    }
+
+    /**
+     * Starts the loop on a new thread.
+     *
+     * @param name of the thread
+     */
+    public void start(String name) {
+        thread = new Thread(this, name);
+        thread.start();
+    }
+
+    public boolean inEventLoop() {
+        return Thread.currentThread() == thread;
+    }
+
+    /**
+     * Runs the task on the thread of the loop.
+     *
+     * @param task to run
+     */
+    public void execute(Runnable task) {
+        tasks.add(task);
+        if (!inEventLoop() && wakeupPending.compareAndSet(false, true)) {
+            selector.wakeup();
+        }
+    }
+
+    @Override
+    public void run() {
+        while (true) {
+            try {
+                // tasks added by the loop itself (e.g. a flush after a broadcast) must not wait for the next event
+                if (tasks.isEmpty()) {
+                    selector.select();
+                } else {
+                    selector.selectNow();
+                }
+                wakeupPending.set(false);
+                runTasks();
+
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    NioConnection connection = (NioConnection) key.attachment();
+                    if (key.isValid() && key.isReadable()) {
+                        connection.read();
+                    }
+                    if (key.isValid() && key.isWritable()) {
+                        connection.flush();
+                    }
+                }
+            } catch (Exception e) {
+                // one broken connection or handler must not stop the loop for all others
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private void runTasks() {
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            try {
+                task.run();
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package chat.server;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+/**
+ * One message as it goes over the wire: the UTF-8 bytes of the line and the line break
+ * (or a length-prefixed frame of the structured protocol, see allocate()).
+ * A broadcast encodes its message once into a Frame and puts the same Frame into the queue of every recipient,
+ * so the encoding costs the same for one recipient or a thousand.
+ * A Frame is never changed after it was encoded. It counts its references: whoever creates a Frame holds one,
+ * every queue that takes it holds one more and gives it back once the frame is written or thrown away.
+ * When the last reference is released, the byte array goes back into a pool for the next frames.
+ */
+public final class Frame {
+    // the pooled array sizes; longer lines get an array of their own
+    private static final int[] sizeClasses = {128, 512, 2048, 8192};
+    // arrays kept per size class
+    private static final int poolSize = 4096;
+    private static final ArrayBlockingQueue<byte[]>[] pools = createPools();
+    private static final AtomicIntegerFieldUpdater<Frame> referencesUpdater =
+            AtomicIntegerFieldUpdater.newUpdater(Frame.class, "references");
+
+    private final byte[] bytes;
+    private final int length;
+    private volatile int references = 1;
+
+    private Frame(byte[] bytes, int length) {
+        this.bytes = bytes;
+        this.length = length;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static ArrayBlockingQueue<byte[]>[] createPools() {
+        ArrayBlockingQueue<byte[]>[] pools = new ArrayBlockingQueue[sizeClasses.length];
+        for (int i = 0; i < pools.length; i++) {
+            pools[i] = new ArrayBlockingQueue<>(poolSize);
+        }
+        return pools;
+    }
+
+    /**
+     * Encodes the message and a line break. The caller holds the first reference and has to release it.
+     *
+     * @param message without the line break
+     * @return the new frame
+     */
+    public static Frame of(String message) {
+        int length = utf8Length(message) + 1;
+        byte[] bytes = acquire(length);
+        int position = 0;
+        for (int i = 0; i < message.length(); i++) {
+            char c = message.charAt(i);
+            if (c < 0x80) {
+                bytes[position++] = (byte) c;
+            } else if (c < 0x800) {
+                bytes[position++] = (byte) (0xC0 | c >> 6);
+                bytes[position++] = (byte) (0x80 | c & 0x3F);
+            } else if (Character.isHighSurrogate(c) && i + 1 < message.length() && Character.isLowSurrogate(message.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, message.charAt(++i));
+                bytes[position++] = (byte) (0xF0 | codePoint >> 18);
+                bytes[position++] = (byte) (0x80 | codePoint >> 12 & 0x3F);
+                bytes[position++] = (byte) (0x80 | codePoint >> 6 & 0x3F);
+                bytes[position++] = (byte) (0x80 | codePoint & 0x3F);
+            } else if (Character.isSurrogate(c)) {
+                // a lone surrogate can't be encoded, like String.getBytes() it becomes a '?'
+                bytes[position++] = '?';
+            } else {
+                bytes[position++] = (byte) (0xE0 | c >> 12);
+                bytes[position++] = (byte) (0x80 | c >> 6 & 0x3F);
+                bytes[position++] = (byte) (0x80 | c & 0x3F);
+            }
+        }
+        bytes[position] = '\n';
+        return new Frame(bytes, length);
+    }
+
+    /**
+     * Takes a frame of the given length for bytes that are not a line of text, e.g. the frames of the structured protocol
+     * (see chat.protocol.MessageCodec). The caller fills array() before the frame is sent and holds the first reference.
+     *
+     * @param length number of bytes of the frame
+     * @return the new frame
+     */
+    public static Frame allocate(int length) {
+        return new Frame(acquire(length), length);
+    }
+
+    private static int utf8Length(String message) {
+        int length = 0;
+        for (int i = 0; i < message.length(); i++) {
+            char c = message.charAt(i);
+            if (c < 0x80) {
+                length++;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < message.length() && Character.isLowSurrogate(message.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else if (Character.isSurrogate(c)) {
+                length++;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    private static byte[] acquire(int length) {
+        for (int i = 0; i < sizeClasses.length; i++) {
+            if (length <= sizeClasses[i]) {
+                byte[] bytes = pools[i].poll();
+                return bytes != null ? bytes : new byte[sizeClasses[i]];
+            }
+        }
+        return new byte[length];
+    }
+
+    /**
+     * Takes one more reference, e.g. when the frame is put into a queue.
+     *
+     * @return this
+     */
+    public Frame retain() {
+        int before = referencesUpdater.getAndIncrement(this);
+        if (before <= 0) {
+            throw new IllegalStateException("The frame was already released");
+        }
+        return this;
+    }
+
+    /**
+     * Gives back one reference. The last one returns the byte array to the pool, the frame must not be used afterwards.
+     */
+    public void release() {
+        int after = referencesUpdater.decrementAndGet(this);
+        if (after == 0) {
+            for (int i = 0; i < sizeClasses.length; i++) {
+                if (bytes.length == sizeClasses[i]) {
+                    // if the pool is full, the array is left to the garbage collector
+                    pools[i].offer(bytes);
+                    return;
+                }
+            }
+        } else if (after < 0) {
+            throw new IllegalStateException("The frame was released too often");
+        }
+    }
+
+    /**
+     * @return the bytes of the frame; only the first length() bytes belong to it and they must not be changed
+     */
+    public byte[] array() {
+        return this.bytes;
+    }
+
+    /**
+     * @return number of bytes including the line break
+     */
+    public int length() {
+        return this.length;
+    }
+
+    /**
+     * @param offset number of bytes already written
+     * @return a buffer over the rest of the frame with its own position, for one recipient
+     */
+    public ByteBuffer buffer(int offset) {
+        return ByteBuffer.wrap(bytes, offset, length - offset);
+    }
+}
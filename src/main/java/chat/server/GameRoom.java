@@ -0,0 +1,1150 @@
+package chat.server;
+
+import chat.client.ClientHandler;
+import chat.journal.Journal;
+import chat.metrics.Metrics;
+import chat.protocol.CardPlayed;
+import chat.protocol.HandUpdate;
+import chat.protocol.Message;
+import chat.protocol.Protocol;
+import chat.protocol.TurnStarted;
+import game.Player;
+import game.bot.Bot;
+import game.bot.Bots;
+import game.engine.Cards;
+import game.engine.Engine;
+import game.engine.Event;
+import game.engine.GameState;
+import game.engine.Move;
+import game.engine.Odds;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A GameRoom is one table of Love Letter.
+ * Every room owns its own game state, so the server can run many games side by side.
+ * Players create, list and join rooms from the chat (see ClientHandler).
+ * The rules are played by the game engine (see game.engine.Engine), the room only connects it to the players:
+ * it hands the moves of the players to the engine and turns the events of the engine into chat messages.
+ * Everything that changes the game runs as a task on the room's queue, one task at a time on a thread of the server's game pool.
+ * No thread waits while the players think.
+ */
+public class GameRoom {
+    public static final int maxClients = 4;
+    // time for a turn, and for the answer to the question for the target or the guess once the card is chosen;
+    // then a card is played for the player (see timeUp()). 0 turns the deadline off
+    private static final long turnMillis = TimeUnit.SECONDS.toMillis(Long.getLong("loveletter.turnSeconds", 60));
+    private static final long promptMillis = TimeUnit.SECONDS.toMillis(Long.getLong("loveletter.promptSeconds", 30));
+    // the bot that plays when the time is up (see game.bot.Bots)
+    private static final String autoPlayPolicy = System.getProperty("loveletter.autoPlay", "mcts");
+    // bots keep big buffers (the search tree of the mcts bot) and are not thread-safe:
+    // a room borrows one for a move, so there are only as many as rooms whose time is up at the same moment
+    private static final Queue<Bot> autoPlayers = new ConcurrentLinkedQueue<>();
+
+    static {
+        // the first one right away, so a policy that does not exist stops the server at the start and not in the middle of a game
+        autoPlayers.add(Bots.create(autoPlayPolicy));
+    }
+    private final String name;
+    // number of players of a table of the Matchmaker, 0 for a room that was created by a player
+    private final int tableSize;
+    // the seats of the room; written rarely (join/leave), read on every broadcast
+    private final List<ClientHandler> clients = new CopyOnWriteArrayList<>();
+    // the public messages of the room for the spectators, who don't take a seat
+    private final SpectatorLog spectators = new SpectatorLog();
+    // only changed by tasks on the room's queue
+    private final GameState state = new GameState();
+    // the seeds of the games of this room (see Engine.newGame()); only used on the room's queue, so it is never contended
+    private final SplittableRandom seeds = new SplittableRandom();
+    // the players by their seat in the game
+    private final Player[] seats = new Player[maxClients];
+    // id of the running game in the journal (see chat.journal.Journal)
+    private long journalGame;
+    // System.nanoTime() when the turn of the active player started
+    private long turnStartedAt;
+    // the deadline of the current turn, and its number, so a deadline that was replaced right when it ran can tell it is too late
+    private TimerWheel.Timeout deadline;
+    private long deadlineNumber;
+    private final int[] moves = new int[64];
+    private volatile boolean gameRunning = false;
+    // set once the last player left, so nobody can join a room that was already removed from the server
+    private boolean closed = false;
+    // seats of players who lost the connection and may still resume their session (see parkSeat()); the room stays open for them
+    private int parkedSeats = 0;
+    // guards joining, leaving and starting; a lock instead of synchronized, so virtual threads are not pinned while they wait
+    private final ReentrantLock lock = new ReentrantLock();
+    // the room's queue: tasks run one after the other, never two at the same time
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean tasksScheduled = new AtomicBoolean();
+
+    public GameRoom(String name) {
+        this(name, 0);
+    }
+
+    public GameRoom(String name, int tableSize) {
+        this.name = name;
+        this.tableSize = tableSize;
+    }
+
+    public String getName() {
+        return this.name;
+    }
+
+    public List<ClientHandler> getClients() {
+        return this.clients;
+    }
+
+    public GameState getState() {
+        return this.state;
+    }
+
+    public boolean isGameRunning() {
+        return this.gameRunning;
+    }
+
+    public boolean isFull() {
+        return this.clients.size() >= (tableSize > 0 ? tableSize : maxClients);
+    }
+
+    public int getTableSize() {
+        return this.tableSize;
+    }
+
+    public int getSpectatorCount() {
+        return this.spectators.getSpectatorCount();
+    }
+
+    /**
+     * @return true if this is a table of the Matchmaker with a free seat and no game running
+     */
+    public boolean isOpenTable() {
+        lock.lock();
+        try {
+            return tableSize > 0 && !closed && !gameRunning && !isFull();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Seats a client at the table.
+     *
+     * @param client to seat
+     * @return false if the room is full, closed or a game is already running
+     */
+    public boolean join(ClientHandler client) {
+        lock.lock();
+        try {
+            if (closed || gameRunning || isFull()) {
+                return false;
+            }
+            clients.add(client);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes a client from the table. The last player to leave closes the room and removes it from the server.
+     *
+     * @param client to remove
+     */
+    public void leave(ClientHandler client) {
+        lock.lock();
+        try {
+            clients.remove(client);
+            closeIfEmpty();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Closes the room once nobody is left in it and nobody may come back. Called under the lock.
+     */
+    private void closeIfEmpty() {
+        if (clients.isEmpty() && parkedSeats == 0) {
+            closed = true;
+            if (gameRunning) {
+                // on the room's queue, after the events of a card that may still be played
+                execute(() -> {
+                    cancelDeadline();
+                    Journal.gameEnded(journalGame, Journal.ABANDONED);
+                    Snapshots.remove(name);
+                    releaseSeats();
+                });
+            }
+            gameRunning = false;
+            Server.rooms.remove(name, this);
+            for (ClientHandler spectator : spectators.unwatchAll()) {
+                spectator.watchingEnded(this);
+            }
+        } else if (tableSize > 0 && !gameRunning) {
+            // the Matchmaker gives the seat to the next player in the queue
+            Server.matchmaker.seatFreed(this);
+        }
+    }
+
+    /**
+     * Keeps the seat of a player who lost the connection during the game, until he/she resumes the session
+     * (see resumeSeat()) or the time for that is up (see giveUpSeat()). Meanwhile the seat has no client,
+     * like the seats of a restored game: the deadlines play for it.
+     *
+     * @param client that lost the connection
+     * @return false if no game is running or the client has no seat in it
+     */
+    public boolean parkSeat(ClientHandler client) {
+        lock.lock();
+        try {
+            if (closed || !gameRunning || !clients.remove(client)) {
+                return false;
+            }
+            client.getPlayer().setClient(null);
+            parkedSeats++;
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Gives a parked seat to the player who resumed the session on a new connection.
+     *
+     * @param client the new client of the player
+     * @return false if the game is over by now, the player is not in the room any more then
+     */
+    public boolean resumeSeat(ClientHandler client) {
+        lock.lock();
+        try {
+            parkedSeats--;
+            if (seatAgain(client)) {
+                return true;
+            }
+            closeIfEmpty();
+            return false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Gives up a parked seat, the player did not come back in time.
+     * The game goes on without him/her like after /leave.
+     */
+    public void giveUpSeat() {
+        lock.lock();
+        try {
+            parkedSeats--;
+            closeIfEmpty();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Lets a client watch the room without a seat: he/she is told where the game is, then gets the public messages
+     * of the room from the spectator log (see SpectatorLog), but never the cards of a player.
+     *
+     * @param client who wants to watch
+     * @return false if the room is closed
+     */
+    public boolean watch(ClientHandler client) {
+        lock.lock();
+        try {
+            if (closed) {
+                return false;
+            }
+            // on the room's queue, so the client is told exactly the state the next message of the log starts from
+            execute(() -> {
+                lock.lock();
+                try {
+                    if (closed) {
+                        client.watchingEnded(this);
+                        return;
+                    }
+                    showGameToSpectator(client);
+                    spectators.watch(client);
+                } finally {
+                    lock.unlock();
+                }
+            });
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Stops feeding the client with the messages of the room.
+     */
+    public void unwatch(ClientHandler client) {
+        lock.lock();
+        try {
+            spectators.unwatch(client);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Tells a new spectator the players, their points and the played cards of the round.
+     */
+    private void showGameToSpectator(ClientHandler client) {
+        if (!gameRunning) {
+            client.sendMessage("You are watching the room " + name + ". No game is running, you see the next one once it starts.");
+            return;
+        }
+        client.sendMessage("You are watching the room " + name + ": round " + state.getRound() + ", " + seats[state.getActiveSeat()].getName() + "'s turn.");
+        client.sendMessage(pointsText());
+        StringBuilder played = new StringBuilder();
+        for (int card = Cards.GUARD; card <= Cards.PRINCESS; card++) {
+            int count = state.getFaceUpCount(card);
+            if (count > 0) {
+                played.append(played.length() == 0 ? "" : ", ").append(count).append("x ").append(Cards.name(card));
+            }
+        }
+        client.sendMessage("Played in this round: " + (played.length() == 0 ? "nothing yet" : played) + ".");
+    }
+
+    /**
+     * @return the points of all players, e.g. "Points: Alice 2, Bob 1 (out of the round)"
+     */
+    private String pointsText() {
+        StringBuilder points = new StringBuilder("Points: ");
+        for (int seat = 0; seat < state.getPlayerCount(); seat++) {
+            points.append(seat == 0 ? "" : ", ").append(seats[seat].getName()).append(' ').append(state.getPoints(seat));
+            if (!state.isInRound(seat) && state.getPhase() == GameState.TURN) {
+                points.append(" (out of the round)");
+            }
+        }
+        return points.toString();
+    }
+
+    /**
+     * Gives a player of a restored game (see Snapshots) his/her seat back, once he/she resumed the session of the seat
+     * (see ClientHandler.resumeLogic()).
+     *
+     * @param client that just finished the handshake
+     * @return false if the game is over by now
+     */
+    public boolean reclaimSeat(ClientHandler client) {
+        lock.lock();
+        try {
+            return seatAgain(client);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Puts the client into the seat without a client that has his/her name. Called under the lock.
+     */
+    private boolean seatAgain(ClientHandler client) {
+        if (closed || !gameRunning) {
+            return false;
+        }
+        for (int seat = 0; seat < state.getPlayerCount(); seat++) {
+            // the game could have ended in between and cleared the seats
+            if (seats[seat] != null && seats[seat].getClient() == null && seats[seat].getName().equals(client.getName())) {
+                Player player = client.getPlayer();
+                player.setClient(client);
+                player.setIndex(seat);
+                seats[seat] = player;
+                clients.add(client);
+                execute(() -> welcomeBack(player));
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Tells the player who came back where the game is, on the room's queue.
+     */
+    private void welcomeBack(Player player) {
+        player.sendMessage("Welcome back! Your game in the room " + name + " goes on: round " + state.getRound()
+                + ", you have " + state.getPoints(player.getIndex()) + " points.");
+        sendToAllClientsExceptSender(player.getName() + " is back.", player.getClient());
+        if (!state.isInRound(player.getIndex())) {
+            player.sendMessage("You are out of this round.");
+        } else if (player.getClient().getProtocol() != Protocol.LINE) {
+            player.getClient().sendStructured(handUpdate(player.getIndex()));
+        } else {
+            for (int slot = 0; slot < 2; slot++) {
+                byte card = state.getHand(player.getIndex(), slot);
+                if (card != Cards.NONE) {
+                    player.sendMessage("Your card: " + Cards.name(card));
+                }
+            }
+        }
+        Player active = seats[state.getActiveSeat()];
+        if (active == player) {
+            player.sendMessage("It's your turn! Play a card by writing '/' and the name of the card.");
+        } else {
+            player.sendMessage("It's " + active.getName() + "'s turn.");
+        }
+    }
+
+    /**
+     * @param name of a player
+     * @return the player with the name in a seat of the running game, also if he/she is not connected, or null
+     */
+    public Player getSeatedPlayer(String name) {
+        for (int seat = 0; seat < state.getPlayerCount(); seat++) {
+            Player player = seats[seat];
+            if (player != null && player.getName().equals(name)) {
+                return player;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Encodes the game for Snapshots, on the room's queue between two turns:
+     * name of the room, journal id of the game, size of the table (0 for a normal room),
+     * the names, session tokens and dates by seat and the GameState.
+     */
+    byte[] snapshot() {
+        byte[] room = name.getBytes(StandardCharsets.UTF_8);
+        byte[][] names = new byte[state.getPlayerCount()][];
+        byte[][] tokens = new byte[names.length][];
+        int length = 2 + room.length + 8 + 1 + 1 + GameState.snapshotLength;
+        for (int seat = 0; seat < names.length; seat++) {
+            names[seat] = seats[seat].getName().getBytes(StandardCharsets.UTF_8);
+            String token = seats[seat].getSessionToken();
+            tokens[seat] = token == null ? new byte[0] : token.getBytes(StandardCharsets.US_ASCII);
+            length += 1 + names[seat].length + 1 + tokens[seat].length + 8;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        buffer.putShort((short) room.length).put(room).putLong(journalGame).put((byte) tableSize).put((byte) names.length);
+        for (int seat = 0; seat < names.length; seat++) {
+            buffer.put((byte) names[seat].length).put(names[seat]);
+            buffer.put((byte) tokens[seat].length).put(tokens[seat]);
+            buffer.putLong(seats[seat].getDaysFromLastDate());
+        }
+        state.writeTo(buffer);
+        return buffer.array();
+    }
+
+    /**
+     * Builds the room of a game saved by snapshot(). It has no clients yet: the seats wait for their players (see reclaimSeat()).
+     */
+    static GameRoom restore(ByteBuffer buffer) {
+        byte[] room = new byte[buffer.getShort()];
+        buffer.get(room);
+        long journalGame = buffer.getLong();
+        // a table of the Matchmaker stays one, so its seats are backfilled and /start waits for them after the game
+        GameRoom gameRoom = new GameRoom(new String(room, StandardCharsets.UTF_8), buffer.get());
+        gameRoom.journalGame = journalGame;
+        int playerCount = buffer.get();
+        for (int seat = 0; seat < playerCount; seat++) {
+            byte[] player = new byte[buffer.get()];
+            buffer.get(player);
+            byte[] token = new byte[buffer.get()];
+            buffer.get(token);
+            // a player without a client until he/she is back
+            gameRoom.seats[seat] = new Player(null, new String(player, StandardCharsets.UTF_8));
+            gameRoom.seats[seat].setIndex(seat);
+            gameRoom.seats[seat].setSessionToken(token.length == 0 ? null : new String(token, StandardCharsets.US_ASCII));
+            // the player skips the question for the date when he/she comes back, the next game still needs it
+            gameRoom.seats[seat].setDaysFromLastDate(buffer.getLong());
+        }
+        gameRoom.state.readFrom(buffer);
+        gameRoom.gameRunning = true;
+        gameRoom.turnStartedAt = System.nanoTime();
+        // a fresh deadline: nobody can play before the players are back
+        gameRoom.execute(() -> gameRoom.startDeadline(turnMillis, Cards.NONE));
+        return gameRoom;
+    }
+
+    /**
+     * Keeps the seats of a restored game for their players. A seat without a session token can't be claimed by anybody,
+     * the deadlines play for it.
+     */
+    void reserveSeats() {
+        for (int seat = 0; seat < state.getPlayerCount(); seat++) {
+            if (seats[seat].getSessionToken() != null) {
+                Server.players.reserveSeat(seats[seat].getName(), seats[seat].getSessionToken(), this);
+            }
+        }
+    }
+
+    /**
+     * Gives up the seats nobody came back for.
+     */
+    private void releaseSeats() {
+        for (int seat = 0; seat < state.getPlayerCount(); seat++) {
+            if (seats[seat] != null && seats[seat].getClient() == null) {
+                Server.players.releaseSeat(seats[seat].getName(), this);
+            }
+        }
+    }
+
+    /**
+     * Marks the game as running and starts the first round on the room's queue.
+     * If two players type /start at the same time, only the first one starts the game.
+     */
+    public void startGame() {
+        lock.lock();
+        try {
+            if (gameRunning || closed) {
+                return;
+            }
+            gameRunning = true;
+            execute(this::runGame);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Stops the game before a winner was decided and resets all players of the room.
+     */
+    public void endGame() {
+        execute(() -> {
+            if (gameRunning) {
+                resetGame();
+            }
+        });
+    }
+
+    /**
+     * Puts a task on the room's queue. The queue is worked off by one thread of the game pool at a time,
+     * so the tasks of one room never run in parallel, while different rooms run side by side.
+     *
+     * @param task to run
+     */
+    public void execute(Runnable task) {
+        tasks.add(task);
+        if (tasksScheduled.compareAndSet(false, true)) {
+            Server.executeGameTask(this::runTasks);
+        }
+    }
+
+    private void runTasks() {
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+        }
+        tasksScheduled.set(false);
+        // a task could have been added after the last poll, but before the flag was reset
+        if (!tasks.isEmpty() && tasksScheduled.compareAndSet(false, true)) {
+            Server.executeGameTask(this::runTasks);
+        }
+    }
+
+    /**
+     * Sends a message to all clients in the room except the one who has written the message (sender).
+     *
+     * @param message to be sent
+     * @param sender  that will NOT get the message
+     */
+    public void sendToAllClientsExceptSender(String message, ClientHandler sender) {
+        Broadcast broadcast = new Broadcast(message);
+        try {
+            sendToAllClientsExceptSender(broadcast, sender, false);
+        } finally {
+            broadcast.release();
+        }
+    }
+
+    /**
+     * Sends a chat message to all clients in the room except the sender.
+     * Unlike the messages of the game, a client that reads too slowly might not get it (see OutboundQueue).
+     *
+     * @param message to be sent
+     * @param sender  that will NOT get the message
+     */
+    public void sendChatToAllClientsExceptSender(String message, ClientHandler sender) {
+        Broadcast broadcast = new Broadcast(message);
+        try {
+            sendToAllClientsExceptSender(broadcast, sender, true);
+        } finally {
+            broadcast.release();
+        }
+    }
+
+    /**
+     * Sends a message to all clients in the room except the sender, e.g. a ChatMessage for the structured protocol.
+     *
+     * @param broadcast to be sent, released by the caller
+     * @param sender    that will NOT get the message
+     * @param chat      true for chat, which a client that reads too slowly might not get
+     */
+    public void sendToAllClientsExceptSender(Broadcast broadcast, ClientHandler sender, boolean chat) {
+        long start = System.nanoTime();
+        // encoded once per protocol for all recipients
+        for (ClientHandler client : clients) {
+            if (client != sender) {
+                client.send(broadcast, chat);
+            }
+        }
+        // the spectators see everything the table is told, but not the chat of the players
+        if (!chat) {
+            spectators.append(broadcast);
+        }
+        Metrics.broadcastNanos.record(System.nanoTime() - start);
+    }
+
+    /**
+     * Sends a message to all clients in the room.
+     *
+     * @param message to be sent
+     */
+    public void sendToAllClients(String message) {
+        Broadcast broadcast = new Broadcast(message);
+        try {
+            sendToAllClients(broadcast);
+        } finally {
+            broadcast.release();
+        }
+    }
+
+    /**
+     * Sends a message to all clients in the room, e.g. a typed message of the game for the structured protocol.
+     *
+     * @param broadcast to be sent, released by the caller
+     */
+    public void sendToAllClients(Broadcast broadcast) {
+        long start = System.nanoTime();
+        // encoded once per protocol for all recipients
+        for (ClientHandler client : clients) {
+            client.send(broadcast, false);
+        }
+        spectators.append(broadcast);
+        Metrics.broadcastNanos.record(System.nanoTime() - start);
+    }
+
+    /**
+     * Sets up the game before the first round:
+     * sends "Game started" message; gives every player a seat; determines the starting player:
+     * the player whose last date is the most recent.
+     */
+    private void initializeGame() {
+        Metrics.gamesStarted.increment();
+        sendToAllClients("Game started. Welcome to Love Letter!");
+
+        int numberOfPlayers = 0;
+        int startingSeat = 0;
+        long daysFromLastDate = Long.MAX_VALUE;
+        //determine the playing order by giving every player a fixed seat for the game
+        for (ClientHandler client : clients) {
+            Player player = client.getPlayer();
+            player.setIndex(numberOfPlayers);
+            seats[numberOfPlayers] = player;
+            if (player.getDaysFromLastDate() < daysFromLastDate) {
+                daysFromLastDate = player.getDaysFromLastDate();
+                startingSeat = numberOfPlayers;
+            }
+            numberOfPlayers++;
+        }
+        long seed = seeds.nextLong();
+        Engine.newGame(state, numberOfPlayers, startingSeat, seed);
+        System.out.println("Game started in room " + name + " with seed " + seed + "!");
+
+        journalGame = Journal.newGame();
+        if (Journal.isEnabled()) {
+            String[] names = new String[numberOfPlayers];
+            for (int seat = 0; seat < numberOfPlayers; seat++) {
+                names[seat] = seats[seat].getName();
+            }
+            Journal.gameStarted(journalGame, name, names, numberOfPlayers, startingSeat, seed);
+        }
+    }
+
+    /**
+     * Complete game: start with initializeGame(), then the first round.
+     * Rounds are played until one player has the points needed to win (the engine knows how many).
+     * The game runs on the room's queue: every step is triggered by the previous one or by a card play, no thread waits for the players.
+     */
+    private void runGame() {
+        initializeGame();
+        startRound();
+    }
+
+    /**
+     * Shuffles and deals a new round and starts the first turn.
+     */
+    private void startRound() {
+        Engine.startRound(state);
+        Journal.deck(journalGame, state);
+        publishEvents();
+    }
+
+    /**
+     * Plays a card on the room's queue and moves the game on right away.
+     * Called by the ClientHandler once the player has chosen the card (and its target and guess).
+     *
+     * @param player who plays the card
+     * @param move   card, target and guess (see game.engine.Move)
+     */
+    public void playCard(Player player, int move) {
+        execute(() -> {
+            // the card could have been sent twice or the game could have ended in between
+            if (!isActive(player)) {
+                player.sendMessage("It's not your turn!");
+                return;
+            }
+            play(player, move);
+        });
+    }
+
+    /**
+     * Gives the active player the time of a prompt to answer the question for the target (and the guess) of the card,
+     * instead of what is left of the turn. Called by the ClientHandler when it asks.
+     *
+     * @param player who chose the card
+     * @param card   that waits for its target
+     */
+    public void startPrompt(Player player, byte card) {
+        execute(() -> {
+            if (isActive(player)) {
+                startDeadline(promptMillis, card);
+            }
+        });
+    }
+
+    /**
+     * Replaces the deadline of the turn. On the room's queue.
+     *
+     * @param millis until the time is up, 0 for no deadline
+     * @param card   to play when the time is up, Cards.NONE for any
+     */
+    private void startDeadline(long millis, byte card) {
+        cancelDeadline();
+        if (millis <= 0) {
+            return;
+        }
+        long number = deadlineNumber;
+        deadline = Server.timers.schedule(() -> execute(() -> timeUp(number, card)), millis, TimeUnit.MILLISECONDS);
+    }
+
+    private void cancelDeadline() {
+        deadlineNumber++;
+        if (deadline != null) {
+            deadline.cancel();
+            deadline = null;
+        }
+    }
+
+    /**
+     * The active player did not play in time (or is not there at all): a bot chooses a move for him/her from what he/she
+     * knows, with the chosen card if there is one, so the table goes on. On the room's queue.
+     *
+     * @param number of the deadline, see startDeadline()
+     * @param card   the card the player already chose, or Cards.NONE
+     */
+    private void timeUp(long number, byte card) {
+        if (!gameRunning || state.getPhase() != GameState.TURN || number != deadlineNumber) {
+            // played just in time
+            return;
+        }
+        deadline = null;
+        int count = Engine.legalMoves(state, moves);
+        if (card != Cards.NONE) {
+            // only the moves with the chosen card
+            int chosen = 0;
+            for (int i = 0; i < count; i++) {
+                if (Move.card(moves[i]) == card) {
+                    moves[chosen++] = moves[i];
+                }
+            }
+            if (chosen > 0) {
+                count = chosen;
+            }
+        }
+        Bot bot = autoPlayers.poll();
+        if (bot == null) {
+            bot = Bots.create(autoPlayPolicy);
+        }
+        int move;
+        try {
+            move = bot.chooseMove(state, moves, count, ThreadLocalRandom.current());
+        } finally {
+            autoPlayers.add(bot);
+        }
+        Player player = seats[state.getActiveSeat()];
+        Metrics.autoPlayedMoves.increment();
+        player.sendMessage("Time is up! The " + Cards.name(Move.card(move)) + " is played for you.");
+        if (player.getClient() != null) {
+            player.getClient().promptExpired();
+        }
+        play(player, move);
+    }
+
+    /**
+     * Plays the move of the active player and moves the game on. On the room's queue.
+     */
+    private void play(Player player, int move) {
+        long start = System.nanoTime();
+        int result = Engine.apply(state, move);
+        if (result < 0) {
+            player.sendMessage(describeError(result));
+            return;
+        }
+        long end = System.nanoTime();
+        Metrics.cardResolution(Move.card(move)).record(end - start);
+        Metrics.turnMicros.record((end - turnStartedAt) / 1000);
+        cancelDeadline();
+        publishEvents();
+        if (state.getPhase() == GameState.ROUND_OVER) {
+            startRound();
+        } else if (state.getPhase() == GameState.GAME_OVER) {
+            resetGame();
+        }
+    }
+
+    /**
+     * @return message for a move the engine did not allow
+     */
+    public static String describeError(int error) {
+        switch (error) {
+            case Engine.NOT_IN_HAND:
+                return "That card is not in your hand! Please choose another one.";
+            case Engine.MUST_PLAY_COUNTESS:
+                return "You have the Countess and either King or Prince: the countess must be played!";
+            case Engine.INVALID_TARGET:
+                return "That player is not in the round.";
+            case Engine.TARGET_PROTECTED:
+                return "The player is protected by the handmaid!";
+            case Engine.TARGET_SELF:
+                return "You can only choose yourself if every other player is protected by the handmaid.";
+            case Engine.INVALID_GUESS:
+                return "You cannot choose the Guard. Please choose another card.";
+            default:
+                return "It's not your turn!";
+        }
+    }
+
+    /**
+     * @return true if it is the turn of the player right now
+     */
+    public boolean isActive(Player player) {
+        return gameRunning && state.getPhase() == GameState.TURN && seats[state.getActiveSeat()] == player;
+    }
+
+    public Player getActivePlayer() {
+        return seats[state.getActiveSeat()];
+    }
+
+    /**
+     * Shows the card(s) in the hand of the player, on the room's queue so the hand is not changed while it is read.
+     */
+    public void showHand(Player player) {
+        execute(() -> {
+            if (player.getClient().getProtocol() != Protocol.LINE) {
+                player.getClient().sendStructured(handUpdate(player.getIndex()));
+                return;
+            }
+            for (int slot = 0; slot < 2; slot++) {
+                byte card = state.getHand(player.getIndex(), slot);
+                if (card != Cards.NONE) {
+                    player.sendMessage(Cards.name(card));
+                }
+            }
+        });
+    }
+
+    public void showPoints(Player player) {
+        execute(() -> player.sendMessage("You have " + state.getPoints(player.getIndex()) + " points."));
+    }
+
+    public void showPlayedCards(Player player) {
+        execute(() -> {
+            player.sendMessage("Here are all cards that got played in this round:");
+            for (int card = Cards.GUARD; card <= Cards.PRINCESS; card++) {
+                int count = state.getFaceUpCount(card);
+                if (count > 0) {
+                    player.sendMessage(count + "x " + Cards.name(card));
+                }
+            }
+        });
+    }
+
+    /**
+     * Tells the player how likely every card is in the hands of the others, counted from the cards he/she has seen
+     * (see game.engine.Odds). A hand he/she has seen with the Priest, the Baron or the King is told as it is;
+     * everyone else in the round could hold any of the unseen cards, so the odds are the same for all of them.
+     */
+    public void showOdds(Player player) {
+        execute(() -> {
+            int viewer = player.getIndex();
+            StringBuilder others = new StringBuilder();
+            int holder = -1;
+            boolean anyoneElse = false;
+            for (int seat = 0; seat < state.getPlayerCount(); seat++) {
+                if (seat != viewer && state.isInRound(seat)) {
+                    anyoneElse = true;
+                    byte known = state.getKnownCard(viewer, seat);
+                    if (known != Cards.NONE) {
+                        player.sendMessage("You know the card of " + seats[seat].getName() + ": " + Cards.name(known) + ".");
+                    } else {
+                        others.append(others.length() == 0 ? "" : ", ").append(seats[seat].getName());
+                        holder = seat;
+                    }
+                }
+            }
+            if (!anyoneElse) {
+                player.sendMessage("Nobody else is in the round.");
+                return;
+            }
+            if (holder < 0) {
+                return;
+            }
+            StringBuilder odds = new StringBuilder();
+            for (int card = Cards.GUARD; card <= Cards.PRINCESS; card++) {
+                long percent = Math.round(Odds.probability(state, viewer, holder, card) * 100);
+                if (Odds.unseen(state, viewer, card) > 0) {
+                    odds.append(odds.length() == 0 ? "" : ", ").append(Cards.name(card)).append(' ').append(percent).append('%');
+                }
+            }
+            player.sendMessage("The card of " + others + " is: " + odds + " (" + Odds.unknownCards(state, viewer) + " cards unseen).");
+            player.sendMessage("Best guess for the Guard: " + Cards.name(Odds.mostLikelyGuess(state, viewer)));
+        });
+    }
+
+    /**
+     * Turns the events of the last engine call into messages: everyone sees what was played,
+     * but drawn, seen and traded cards are only told to their owner.
+     * Clients of the structured protocols get TurnStarted, CardPlayed and HandUpdate instead of the texts they stand for.
+     */
+    private void publishEvents() {
+        Journal.events(journalGame, state);
+        Player cardPlayer = null;
+        // seats whose hand changed, one bit per seat: they get a HandUpdate once all events are told
+        int handsChanged = 0;
+        for (int i = 0; i < state.getEventCount(); i++) {
+            int event = state.getEvent(i);
+            Player player = seats[Event.seat(event)];
+            Player target = Event.target(event) == Move.noTarget ? null : seats[Event.target(event)];
+            String card = Cards.name(Event.card(event));
+            switch (Event.type(event)) {
+                case Event.CARD_DRAWN:
+                    handsChanged |= 1 << Event.seat(event);
+                    player.sendMessage("You drew the " + card);
+                    break;
+                case Event.TURN_STARTED:
+                    turnStartedAt = System.nanoTime();
+                    startDeadline(turnMillis, Cards.NONE);
+                    publish("Round " + state.getRound() + ", turn " + Event.extra(event) + ": " + player.getName(),
+                            new TurnStarted(state.getRound(), Event.extra(event), player.getName()));
+                    player.sendMessage("It's your turn! Play a card by writing '/' and the name of the card.");
+                    break;
+                case Event.CARD_PLAYED:
+                    cardPlayer = player;
+                    handsChanged |= 1 << Event.seat(event);
+                    publishCardPlayed(player, target, Event.card(event));
+                    publish(null, new CardPlayed(player.getName(), Event.card(event), target == null ? null : target.getName(), Event.extra(event)));
+                    break;
+                case Event.NO_EFFECT:
+                    player.sendMessage("You had to choose yourself, so the card has no effect.");
+                    sendToAllClientsExceptSender(player.getName() + " played the " + card + ", but there was no target.", player.getClient());
+                    break;
+                case Event.PROTECTED:
+                    player.sendMessage("You are protected until your next turn.");
+                    break;
+                case Event.GUESSED_RIGHT:
+                    player.sendMessage("You guessed right! Sorry " + target.getName() + "!");
+                    sendToAllClientsExceptSender(player.getName() + " played the Guard targeting " + target.getName() + " and guessed right. Sorry " + target.getName() + "!", player.getClient());
+                    break;
+                case Event.GUESSED_WRONG:
+                    sendToAllClientsExceptSender(player.getName() + " played the Guard targeting " + target.getName() + " and guessed wrong. Lucky you, " + target.getName() + "!", player.getClient());
+                    player.sendMessage("That was wrong.");
+                    break;
+                case Event.CARD_SEEN:
+                    player.sendMessage(target.getName() + "'s card is: " + card);
+                    break;
+                case Event.BARON_TIE:
+                    sendToAllClients(player.getName() + " and " + target.getName() + " have cards of the same value. Nobody is out.");
+                    break;
+                case Event.PLAYER_OUT:
+                    handsChanged |= 1 << Event.seat(event);
+                    publishPlayerOut(player, target, card, Event.extra(event));
+                    break;
+                case Event.CARD_DISCARDED:
+                    handsChanged |= 1 << Event.seat(event);
+                    if (target != player) {
+                        player.sendMessage("You had to discard the " + card + ".");
+                    }
+                    break;
+                case Event.CARD_RECEIVED:
+                    handsChanged |= 1 << Event.seat(event);
+                    if (player == cardPlayer) {
+                        player.sendMessage("You got the " + card + " from " + target.getName());
+                    } else {
+                        player.sendMessage("You and " + target.getName() + " exchanged cards. You got the " + card + " from " + target.getName() + ".");
+                    }
+                    break;
+                case Event.ROUND_WON:
+                    Metrics.rounds.increment();
+                    sendToAllClients("End of round " + state.getRound() + ". " + player.getName() + " gets one point.");
+                    for (int seat = 0; seat < state.getPlayerCount(); seat++) {
+                        seats[seat].sendMessage("You have " + state.getPoints(seat) + " points.");
+                    }
+                    publishToSpectators(pointsText());
+                    break;
+                case Event.GAME_WON:
+                    Metrics.gamesFinished.increment();
+                    sendToAllClients("The game is over. The winner is: " + player.getName());
+                    break;
+                default:
+                    // the start of a round and the cards set aside need no message
+                    break;
+            }
+        }
+        publishHands(handsChanged);
+        if (state.getPhase() == GameState.TURN && Snapshots.isEnabled()) {
+            Snapshots.save(name, snapshot());
+        }
+    }
+
+    /**
+     * Sends one message to everyone in the room: the text to the clients of the line protocol, the typed message to the others.
+     *
+     * @param text    for the line protocol, or null if it is told differently there (e.g. the played cards)
+     * @param message for the structured protocols
+     */
+    private void publish(String text, Message message) {
+        Broadcast broadcast = new Broadcast(text, message);
+        try {
+            sendToAllClients(broadcast);
+        } finally {
+            broadcast.release();
+        }
+    }
+
+    /**
+     * Sends a message only to the spectators, e.g. what every player was told about himself/herself.
+     */
+    private void publishToSpectators(String text) {
+        if (spectators.getSpectatorCount() == 0) {
+            return;
+        }
+        Broadcast broadcast = new Broadcast(text);
+        try {
+            spectators.append(broadcast);
+        } finally {
+            broadcast.release();
+        }
+    }
+
+    /**
+     * Sends a HandUpdate to the clients of the structured protocols whose hand changed.
+     * The clients of the line protocol were told about every drawn or traded card already.
+     *
+     * @param seats one bit per seat
+     */
+    private void publishHands(int seats) {
+        for (int seat = 0; seat < state.getPlayerCount(); seat++) {
+            ClientHandler client = this.seats[seat].getClient();
+            if ((seats & 1 << seat) != 0 && client != null && client.getProtocol() != Protocol.LINE) {
+                client.sendStructured(handUpdate(seat));
+            }
+        }
+    }
+
+    private HandUpdate handUpdate(int seat) {
+        int count = 0;
+        byte[] cards = new byte[2];
+        for (int slot = 0; slot < 2; slot++) {
+            byte card = state.getHand(seat, slot);
+            if (card != Cards.NONE) {
+                cards[count++] = card;
+            }
+        }
+        return new HandUpdate(count == 2 ? cards : Arrays.copyOf(cards, count));
+    }
+
+    private void publishCardPlayed(Player player, Player target, int card) {
+        String message = null;
+        switch (card) {
+            case Cards.PRINCESS:
+                message = " played the Princess. Oops!";
+                break;
+            case Cards.COUNTESS:
+                message = " played the Countess. What could this mean?";
+                break;
+            case Cards.KING:
+                if (target != player) {
+                    message = " played the King and trades cards with " + target.getName() + ".";
+                }
+                break;
+            case Cards.PRINCE:
+                if (target != player) {
+                    message = " played the Prince targeting " + target.getName() + ". Say goodbye to your card.";
+                } else {
+                    player.sendMessage("You choose yourself, so you discard your card and draw a new one.");
+                    message = " played the Prince on his/her own card.";
+                }
+                break;
+            case Cards.HANDMAID:
+                message = " played the Handmaid. Keep your hands away!";
+                break;
+            case Cards.BARON:
+                if (target != player) {
+                    message = " played the Baron against " + target.getName() + ".";
+                }
+                break;
+            case Cards.PRIEST:
+                message = " played the Priest. Somebody's nosy.";
+                break;
+            default:
+                // the Guard is announced together with the guess
+                break;
+        }
+        if (message != null) {
+            sendToAllClientsExceptSender(player.getName() + message, player.getClient());
+        }
+    }
+
+    /**
+     * @param player who is out of the round
+     * @param by     the player who knocked him/her out
+     * @param card   the card the player had to show
+     * @param cause  the card that knocked the player out
+     */
+    private void publishPlayerOut(Player player, Player by, String card, int cause) {
+        switch (cause) {
+            case Cards.BARON:
+                player.sendMessage(by.getName() + " has the higher value card. You're out of the round :(");
+                break;
+            case Cards.GUARD:
+                player.sendMessage(by.getName() + " guessed your card. You're out of the round :(");
+                break;
+            case Cards.PRINCE:
+                player.sendMessage("You had to discard the Princess. You're out of the round :(");
+                break;
+            default:
+                player.sendMessage("You're out of the round :(");
+                break;
+        }
+        sendToAllClientsExceptSender(player.getName() + " is out of the round and shows the " + card + ".", player.getClient());
+    }
+
+    private void resetGame() {
+        cancelDeadline();
+        Journal.gameEnded(journalGame, state.getPhase() == GameState.GAME_OVER ? Journal.WON : Journal.STOPPED);
+        Snapshots.remove(name);
+        releaseSeats();
+        gameRunning = false;
+        for (int seat = 0; seat < maxClients; seat++) {
+            seats[seat] = null;
+        }
+    }
+}
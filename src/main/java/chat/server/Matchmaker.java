@@ -0,0 +1,372 @@
+package chat.server;
+
+import chat.client.ClientHandler;
+import chat.metrics.Metrics;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Finds tables for the players who typed /queue, so nobody has to gather a room in the chat.
+ * Any thread may queue a player, it only puts a Ticket on a lock-free queue. The tables are formed by the single
+ * "matchmaker" thread, which owns all waiting lists and so needs no locks:
+ * <ul>
+ *     <li>players wait by the size of table they asked for (2 to 4) and get a table as soon as enough of them wait</li>
+ *     <li>a table that lost a player before its game started gets the next player waiting for that size (backfill)</li>
+ *     <li>a player who waited longer than -Dloveletter.queueMaxWaitSeconds (default 30) also takes a smaller table</li>
+ * </ul>
+ * Every table is a GameRoom whose game starts as soon as it is full.
+ */
+public class Matchmaker {
+    public static final int minTableSize = 2;
+    private static final long maxWaitNanos = TimeUnit.SECONDS.toNanos(Long.getLong("loveletter.queueMaxWaitSeconds", 30));
+    // the matcher looks for expired waits at least this often
+    private static final long tickNanos = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private final Queue<Ticket> arrivals = new ConcurrentLinkedQueue<>();
+    private final Queue<GameRoom> openSeats = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean started = new AtomicBoolean();
+    private final AtomicInteger waiting = new AtomicInteger();
+    private final AtomicInteger nextTable = new AtomicInteger();
+    private volatile Thread thread;
+    private volatile boolean sleeping = false;
+
+    // only used by the matcher thread: the waiting tickets by the size they asked for, the oldest first
+    @SuppressWarnings("unchecked")
+    private final ArrayDeque<Ticket>[] waitingBySize = new ArrayDeque[GameRoom.maxClients + 1];
+    // tables with a free seat, waiting for backfill
+    private final List<GameRoom> tables = new ArrayList<>();
+
+    /**
+     * Held by a client instead of his/her ticket while the matcher seats him/her (see Ticket.claim()), until the room
+     * of the client is set: meanwhile the client can neither queue again nor enter another room.
+     */
+    public static final Ticket SEATING = new Ticket(null, 0);
+
+    /**
+     * A place in the queue. The client holds the ticket it is waiting with (see ClientHandler.getQueueTicket()):
+     * whoever takes it from there first, the matcher seating the player or the player leaving the queue, owns it.
+     * The matcher swaps it for SEATING, so the client is never without a ticket and without a room at the same time.
+     */
+    public static final class Ticket {
+        private final ClientHandler client;
+        private final int size;
+        private final long since = System.nanoTime();
+
+        // constructor
+        Ticket(ClientHandler client, int size) {
+            this.client = client;
+            this.size = size;
+        }
+
+        /**
+         * @return false if the player left the queue (or was seated) in the meantime
+         */
+        boolean isValid() {
+            return client.getQueueTicket().get() == this;
+        }
+
+        /**
+         * @return false if the player left the queue right before
+         */
+        boolean claim() {
+            return client.getQueueTicket().compareAndSet(this, SEATING);
+        }
+
+        /**
+         * Puts the claimed ticket back, the player waits on.
+         *
+         * @return false if the player left the server while he/she was being seated
+         */
+        boolean unclaim() {
+            return client.getQueueTicket().compareAndSet(SEATING, this);
+        }
+
+        /**
+         * The player was seated, his/her room is set.
+         */
+        void seated() {
+            client.getQueueTicket().compareAndSet(SEATING, null);
+        }
+
+        boolean isExpired(long now) {
+            return now - since > maxWaitNanos;
+        }
+    }
+
+    // constructor
+    public Matchmaker() {
+        for (int size = minTableSize; size <= GameRoom.maxClients; size++) {
+            waitingBySize[size] = new ArrayDeque<>();
+        }
+    }
+
+    /**
+     * Puts the player in the queue. Never waits, the table is found on the matcher thread.
+     *
+     * @param client who finished the handshake and is in the lobby
+     * @param size   of the table, 2 to 4
+     * @return false if the player is already in the queue
+     */
+    public boolean enqueue(ClientHandler client, int size) {
+        Ticket ticket = new Ticket(client, size);
+        if (!client.getQueueTicket().compareAndSet(null, ticket)) {
+            return false;
+        }
+        start();
+        waiting.incrementAndGet();
+        arrivals.add(ticket);
+        wakeUp();
+        return true;
+    }
+
+    /**
+     * Takes the player out of the queue; the ticket stays in the waiting lists until the matcher comes across it.
+     *
+     * @return false if the player was not in the queue (or is being seated right now)
+     */
+    public boolean cancel(ClientHandler client) {
+        Ticket ticket;
+        do {
+            ticket = client.getQueueTicket().get();
+            if (ticket == null || ticket == SEATING) {
+                return false;
+            }
+        } while (!client.getQueueTicket().compareAndSet(ticket, null));
+        waiting.decrementAndGet();
+        return true;
+    }
+
+    /**
+     * Takes a player who left the server out of the queue, also while he/she is being seated:
+     * a seat he/she gets anyway is given up again (see ClientHandler.seatAtTable()), he/she is never put back in the queue.
+     */
+    public void disconnected(ClientHandler client) {
+        if (!cancel(client)) {
+            client.getQueueTicket().compareAndSet(SEATING, null);
+        }
+    }
+
+    /**
+     * @return number of players in the queue
+     */
+    public int getWaiting() {
+        return this.waiting.get();
+    }
+
+    /**
+     * Called by a table when a player left before the game started, so the seat gets the next player in the queue.
+     */
+    void seatFreed(GameRoom table) {
+        start();
+        openSeats.add(table);
+        wakeUp();
+    }
+
+    private void start() {
+        if (started.compareAndSet(false, true)) {
+            Thread matcher = new Thread(this::run, "matchmaker");
+            matcher.setDaemon(true);
+            thread = matcher;
+            matcher.start();
+        }
+    }
+
+    private void wakeUp() {
+        Thread matcher = thread;
+        if (sleeping && matcher != null) {
+            LockSupport.unpark(matcher);
+        }
+    }
+
+    private void run() {
+        while (true) {
+            try {
+                boolean arrived = false;
+                Ticket ticket;
+                while ((ticket = arrivals.poll()) != null) {
+                    waitingBySize[ticket.size].add(ticket);
+                    arrived = true;
+                }
+                GameRoom table;
+                while ((table = openSeats.poll()) != null) {
+                    if (!tables.contains(table)) {
+                        tables.add(table);
+                    }
+                }
+                match(System.nanoTime());
+                if (!arrived) {
+                    sleeping = true;
+                    // checked again after the flag is set, so an arrival in between is not left waiting
+                    if (arrivals.isEmpty() && openSeats.isEmpty()) {
+                        LockSupport.parkNanos(this, tickNanos);
+                    }
+                    sleeping = false;
+                }
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Backfills the open tables, forms the full tables and then the smaller tables for the players who waited too long.
+     */
+    private void match(long now) {
+        Iterator<GameRoom> openTables = tables.iterator();
+        while (openTables.hasNext()) {
+            GameRoom table = openTables.next();
+            // one seat after the other, the table may wait for the rest
+            List<Ticket> players;
+            while (table.isOpenTable() && (players = collect(1, table.getTableSize(), null, now)) != null) {
+                seat(table, players, now);
+            }
+            if (!table.isOpenTable()) {
+                openTables.remove();
+            }
+        }
+
+        for (int size = GameRoom.maxClients; size >= minTableSize; size--) {
+            List<Ticket> players;
+            while ((players = collect(size, size, null, Long.MAX_VALUE)) != null) {
+                formTable(size, players, now);
+            }
+        }
+
+        // the oldest expired player takes the biggest table up to the size he/she asked for that can be formed right now
+        Ticket oldest;
+        while ((oldest = oldestExpired(now)) != null) {
+            List<Ticket> players = null;
+            for (int size = oldest.size; size >= minTableSize && players == null; size--) {
+                players = collect(size - 1, size, oldest, now);
+            }
+            if (players == null) {
+                // nobody else is waiting who would take a table with the oldest player: he/she goes on waiting
+                if (oldest.unclaim()) {
+                    waitingBySize[oldest.size].addFirst(oldest);
+                } else {
+                    waiting.decrementAndGet();
+                }
+                break;
+            }
+            players.add(0, oldest);
+            formTable(players.size(), players, now);
+        }
+    }
+
+    /**
+     * Finds players for a table: first the ones who asked for exactly this size, then the expired ones who asked for more.
+     * Tickets of players who left the queue are thrown away on the way. The players are claimed (see Ticket.claim()).
+     *
+     * @param count   number of players needed
+     * @param size    of the table
+     * @param except  a ticket not to take (the oldest player, who is already taken), or null
+     * @param now     System.nanoTime(), or Long.MAX_VALUE to take only the players who asked for the size
+     * @return the claimed tickets, or null if there are not enough players
+     */
+    private List<Ticket> collect(int count, int size, Ticket except, long now) {
+        List<Ticket> found = new ArrayList<>(count);
+        for (int asked = size; asked <= GameRoom.maxClients && found.size() < count; asked++) {
+            Iterator<Ticket> tickets = waitingBySize[asked].iterator();
+            while (tickets.hasNext() && found.size() < count) {
+                Ticket ticket = tickets.next();
+                if (!ticket.isValid()) {
+                    tickets.remove();
+                } else if (ticket != except && (asked == size || now != Long.MAX_VALUE && ticket.isExpired(now))) {
+                    found.add(ticket);
+                }
+            }
+        }
+        if (found.size() < count) {
+            return null;
+        }
+        // claimed only now, so nobody is taken out of the queue for a table that does not come about
+        List<Ticket> claimed = new ArrayList<>(count + 1);
+        for (Ticket ticket : found) {
+            waitingBySize[ticket.size].remove(ticket);
+            if (ticket.claim()) {
+                claimed.add(ticket);
+            }
+        }
+        if (claimed.size() < count) {
+            // somebody left the queue in between: the others go back to the front of the queue
+            for (int i = claimed.size() - 1; i >= 0; i--) {
+                Ticket ticket = claimed.get(i);
+                if (ticket.unclaim()) {
+                    waitingBySize[ticket.size].addFirst(ticket);
+                } else {
+                    waiting.decrementAndGet();
+                }
+            }
+            return collect(count, size, except, now);
+        }
+        return claimed;
+    }
+
+    private Ticket oldestExpired(long now) {
+        Ticket oldest = null;
+        for (int size = minTableSize; size <= GameRoom.maxClients; size++) {
+            Ticket ticket;
+            while ((ticket = waitingBySize[size].peekFirst()) != null && !ticket.isValid()) {
+                waitingBySize[size].pollFirst();
+            }
+            if (ticket != null && ticket.isExpired(now) && (oldest == null || ticket.since < oldest.since)) {
+                oldest = ticket;
+            }
+        }
+        if (oldest != null) {
+            waitingBySize[oldest.size].remove(oldest);
+            if (!oldest.claim()) {
+                return oldestExpired(now);
+            }
+        }
+        return oldest;
+    }
+
+    private void formTable(int size, List<Ticket> players, long now) {
+        GameRoom table;
+        do {
+            table = Server.createRoom("table" + Server.NODE + nextTable.incrementAndGet(), size);
+        } while (table == null);
+        seat(table, players, now);
+    }
+
+    /**
+     * Seats the players at the table and starts the game once the table is full.
+     *
+     * @return true if the table is full
+     */
+    private boolean seat(GameRoom table, List<Ticket> players, long now) {
+        for (Ticket ticket : players) {
+            waiting.decrementAndGet();
+            if (table.join(ticket.client)) {
+                Metrics.queueWaitMillis.record((now - ticket.since) / 1000000);
+                ticket.client.seatAtTable(table);
+                ticket.seated();
+            } else if (ticket.unclaim()) {
+                // the game of the table started in between: back to the front of the queue,
+                // unless the player left the queue (or the server) since the ticket was claimed
+                waiting.incrementAndGet();
+                waitingBySize[ticket.size].addFirst(ticket);
+            }
+        }
+        if (table.getClients().size() < table.getTableSize()) {
+            return false;
+        }
+        StringBuilder names = new StringBuilder();
+        for (ClientHandler client : table.getClients()) {
+            names.append(names.length() == 0 ? "" : ", ").append(client.getName());
+        }
+        table.sendToAllClients("Your table " + table.getName() + " is complete: " + names + ".");
+        table.startGame();
+        return true;
+    }
+}
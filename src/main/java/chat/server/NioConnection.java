@@ -0,0 +1,216 @@
+package chat.server;
+
+import chat.client.ClientHandler;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Non-blocking connection of one client, served by an EventLoop.
+ * Incoming bytes are split into lines (the same text protocol as the blocking mode),
+ * outgoing messages are queued and written whenever the socket can take them, so sendMessage() never waits for the client.
+ * With the slow consumer policy BLOCK neither: the senders here are the event loops, the room tasks and the timers,
+ * which serve many clients, so a full queue is handled like with DISCONNECT (see OutboundQueue).
+ */
+public class NioConnection implements Connection {
+    // longer lines are cut, so a client can't make the server buffer endless amounts of bytes
+    private static final int maxLineLength = 8 * 1024;
+    // number of queued messages written with one gathering write
+    private static final int maxGather = 64;
+    private final EventLoop eventLoop;
+    private final SocketChannel channel;
+    private SelectionKey key;
+    private ClientHandler client;
+    // the bytes of the line that is not complete yet
+    private byte[] line = new byte[64];
+    private int lineLength = 0;
+    private final OutboundQueue outbound = new OutboundQueue();
+    private final Frame[] frames = new Frame[maxGather];
+    private final ByteBuffer[] gather = new ByteBuffer[maxGather];
+    // bytes of the oldest queued frame that were already written
+    private int headWritten = 0;
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+    private volatile boolean closeRequested = false;
+    private volatile boolean closed = false;
+
+    // constructor
+    public NioConnection(EventLoop eventLoop, SocketChannel channel) {
+        this.eventLoop = eventLoop;
+        this.channel = channel;
+    }
+
+    /**
+     * Registers the channel with the selector of the event loop and greets the client.
+     *
+     * @param client that handles the lines of this connection
+     */
+    public void open(ClientHandler client) {
+        this.client = client;
+        eventLoop.execute(() -> {
+            try {
+                channel.configureBlocking(false);
+                key = channel.register(eventLoop.getSelector(), SelectionKey.OP_READ, this);
+                client.onConnect();
+            } catch (IOException e) {
+                closeNow();
+            }
+        });
+    }
+
+    /**
+     * Called by the event loop when the channel is readable: reads what is there and hands every complete line to the client.
+     */
+    void read() {
+        ByteBuffer buffer = eventLoop.getReadBuffer();
+        int read;
+        do {
+            buffer.clear();
+            try {
+                read = channel.read(buffer);
+            } catch (IOException e) {
+                read = -1;
+            }
+            if (read < 0) {
+                closeNow();
+                return;
+            }
+            buffer.flip();
+            while (buffer.hasRemaining() && !closed) {
+                byte b = buffer.get();
+                if (b == '\n') {
+                    deliverLine();
+                } else if (lineLength < maxLineLength) {
+                    if (lineLength == line.length) {
+                        line = Arrays.copyOf(line, Math.min(line.length * 2, maxLineLength));
+                    }
+                    line[lineLength++] = b;
+                }
+            }
+            // a full buffer means there might be more to read
+        } while (read == buffer.capacity() && !closed);
+    }
+
+    private void deliverLine() {
+        int length = lineLength;
+        // accept "\r\n" as well, like BufferedReader.readLine()
+        if (length > 0 && line[length - 1] == '\r') {
+            length--;
+        }
+        lineLength = 0;
+        try {
+            // the client reads the line right from the buffer, it is only overwritten by the next line
+            client.onLine(line, length);
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Queues the frame; the event loop writes it as soon as the socket can take it.
+     *
+     * @param frame to be sent
+     * @param chat  true for chat, which may be dropped if the client reads too slowly
+     */
+    @Override
+    public void send(Frame frame, boolean chat) {
+        if (closed || closeRequested) {
+            return;
+        }
+        // every thread that sends here serves other clients as well, none of them may wait for this one
+        int result = outbound.offer(frame, chat, false);
+        if (result == OutboundQueue.SLOW_CONSUMER) {
+            System.err.println("Disconnecting slow client " + client.getName() + " (" + outbound.getDepth() + " messages queued)");
+            closeRequested = true;
+            eventLoop.execute(this::closeNow);
+        } else if (result == OutboundQueue.ACCEPTED) {
+            scheduleFlush();
+        }
+    }
+
+    public OutboundQueue getOutbound() {
+        return this.outbound;
+    }
+
+    @Override
+    public void close() {
+        closeRequested = true;
+        scheduleFlush();
+    }
+
+    private void scheduleFlush() {
+        if (flushScheduled.compareAndSet(false, true)) {
+            eventLoop.execute(this::flush);
+        }
+    }
+
+    /**
+     * Writes as much of the queued messages as the socket takes without blocking.
+     * If the socket is full, the loop waits for OP_WRITE and continues here.
+     */
+    void flush() {
+        flushScheduled.set(false);
+        if (closed || key == null) {
+            return;
+        }
+        try {
+            while (true) {
+                int count = outbound.peek(frames);
+                if (count == 0) {
+                    break;
+                }
+                // the frames are shared with other connections, every connection writes through its own buffers
+                for (int i = 0; i < count; i++) {
+                    gather[i] = frames[i].buffer(i == 0 ? headWritten : 0);
+                }
+                channel.write(gather, 0, count);
+                boolean socketFull = false;
+                for (int i = 0; i < count; i++) {
+                    if (gather[i].hasRemaining()) {
+                        headWritten = gather[i].position();
+                        socketFull = true;
+                        break;
+                    }
+                    headWritten = 0;
+                    outbound.remove();
+                }
+                Arrays.fill(frames, 0, count, null);
+                Arrays.fill(gather, 0, count, null);
+                if (socketFull) {
+                    // wait until the client has read something
+                    key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                    return;
+                }
+            }
+            key.interestOps(SelectionKey.OP_READ);
+            if (closeRequested) {
+                closeNow();
+            }
+        } catch (IOException e) {
+            closeNow();
+        }
+    }
+
+    /**
+     * Closes the channel right away and tells the client. Only called on the event loop.
+     */
+    private void closeNow() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (key != null) {
+            key.cancel();
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        outbound.clear();
+        client.onDisconnect();
+    }
+}
@@ -0,0 +1,218 @@
+package chat.server;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The frames waiting to be written to one client. Any thread may add, only the transport of the connection takes.
+ * The queue holds a reference to every frame in it (see Frame) and releases it when the frame is removed.
+ * The queue is bounded: once a client reads slower than the server sends (a full TCP window),
+ * the slow consumer policy decides what happens, so one slow client can't hold up the game or eat the memory of the server.
+ * The settings are read from system properties, e.g. java -Dloveletter.slowConsumer=block -jar ...
+ */
+public class OutboundQueue {
+
+    public enum SlowConsumerPolicy {
+        DROP_CHAT,  // chat messages to a full queue are dropped, the client is disconnected if it stays full for too long
+        DISCONNECT, // the client is disconnected if its queue stays full for too long
+        BLOCK       // a sender that may wait (see offer()) waits until there is room again, the client is disconnected if that takes too long
+    }
+
+    // number of messages a queue holds before the policy applies
+    public static final int limit = Integer.getInteger("loveletter.outboundLimit", 1024);
+    // how long a queue may stay full before the client is disconnected
+    public static final long slowConsumerNanos = TimeUnit.SECONDS.toNanos(Long.getLong("loveletter.slowConsumerSeconds", 10));
+    public static final SlowConsumerPolicy policy =
+            SlowConsumerPolicy.valueOf(System.getProperty("loveletter.slowConsumer", "drop_chat").toUpperCase());
+    // no queue ever holds more than this, no matter the policy
+    private static final int hardLimit = limit * 4;
+
+    // results of offer()
+    public static final int ACCEPTED = 0;
+    public static final int DROPPED = 1;
+    public static final int SLOW_CONSUMER = 2;
+
+    // counters over all queues of the server
+    private static final LongAdder queuedMessages = new LongAdder();
+    private static final LongAdder acceptedMessages = new LongAdder();
+    private static final LongAdder droppedMessages = new LongAdder();
+    private static final LongAdder slowConsumers = new LongAdder();
+
+    private final Queue<Frame> messages = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger depth = new AtomicInteger();
+    private volatile int peakDepth;
+    // System.nanoTime() when the queue got full, 0 while it is not full
+    private volatile long fullSince;
+    // only used by the BLOCK policy
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notFull = lock.newCondition();
+    private final AtomicInteger waiting = new AtomicInteger();
+
+    /**
+     * Adds a message, unless the policy says otherwise.
+     *
+     * @param message  the encoded line, retained if it is added
+     * @param chat     true for chat messages, which may be dropped
+     * @param mayBlock false if the calling thread must not wait for this client (it empties the queue or serves other clients too)
+     * @return ACCEPTED, DROPPED or SLOW_CONSUMER (the message was not added and the transport should disconnect the client)
+     */
+    public int offer(Frame message, boolean chat, boolean mayBlock) {
+        int current = depth.get();
+        if (current >= limit) {
+            long now = System.nanoTime();
+            if (fullSince == 0) {
+                fullSince = now;
+            }
+            if (policy == SlowConsumerPolicy.BLOCK && mayBlock) {
+                if (!awaitNotFull()) {
+                    return slowConsumer();
+                }
+            } else if (current >= hardLimit || now - fullSince > slowConsumerNanos) {
+                return slowConsumer();
+            } else if (policy == SlowConsumerPolicy.DROP_CHAT && chat) {
+                droppedMessages.increment();
+                return DROPPED;
+            }
+        }
+        messages.add(message.retain());
+        current = depth.incrementAndGet();
+        queuedMessages.increment();
+        acceptedMessages.increment();
+        if (current > peakDepth) {
+            peakDepth = current;
+        }
+        return ACCEPTED;
+    }
+
+    private int slowConsumer() {
+        slowConsumers.increment();
+        return SLOW_CONSUMER;
+    }
+
+    /**
+     * Waits until the queue is below its limit.
+     *
+     * @return false if the client did not read anything for too long
+     */
+    private boolean awaitNotFull() {
+        long remaining = slowConsumerNanos;
+        // counted before the depth is checked, so remove() either sees the waiting sender or the sender sees the new depth
+        waiting.incrementAndGet();
+        lock.lock();
+        try {
+            while (depth.get() >= limit) {
+                if (remaining <= 0) {
+                    return false;
+                }
+                remaining = notFull.awaitNanos(remaining);
+            }
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            lock.unlock();
+            waiting.decrementAndGet();
+        }
+    }
+
+    /**
+     * @return the oldest message without removing it, or null
+     */
+    public Frame peek() {
+        return messages.peek();
+    }
+
+    /**
+     * Copies the oldest messages into the array for a gathering write, without removing them.
+     *
+     * @return number of messages copied
+     */
+    public int peek(Frame[] into) {
+        int count = 0;
+        for (Frame message : messages) {
+            into[count++] = message;
+            if (count == into.length) {
+                break;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Removes the oldest message once it is written completely and releases it.
+     */
+    public void remove() {
+        Frame message = messages.poll();
+        if (message == null) {
+            return;
+        }
+        message.release();
+        int current = depth.decrementAndGet();
+        queuedMessages.decrement();
+        if (current < limit) {
+            if (fullSince != 0) {
+                fullSince = 0;
+            }
+            if (waiting.get() > 0) {
+                lock.lock();
+                try {
+                    notFull.signalAll();
+                } finally {
+                    lock.unlock();
+                }
+            }
+        }
+    }
+
+    public boolean isEmpty() {
+        return messages.isEmpty();
+    }
+
+    /**
+     * Throws away everything, when the connection is closed.
+     */
+    public void clear() {
+        while (!messages.isEmpty()) {
+            remove();
+        }
+    }
+
+    public int getDepth() {
+        return this.depth.get();
+    }
+
+    public int getPeakDepth() {
+        return this.peakDepth;
+    }
+
+    /**
+     * @return messages waiting in all queues of the server
+     */
+    public static long getQueuedMessages() {
+        return queuedMessages.sum();
+    }
+
+    /**
+     * @return messages ever put into a queue, i.e. the messages sent by the server
+     */
+    public static long getAcceptedMessages() {
+        return acceptedMessages.sum();
+    }
+
+    public static long getDroppedMessages() {
+        return droppedMessages.sum();
+    }
+
+    /**
+     * @return number of clients disconnected because they read too slowly
+     */
+    public static long getSlowConsumers() {
+        return slowConsumers.sum();
+    }
+}
@@ -0,0 +1,206 @@
+package chat.server;
+
+import chat.client.ClientHandler;
+
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * All clients connected to the server, with their names and who is in the lobby.
+ * Every lookup is a hash lookup instead of a scan, and everything may be changed and read by many threads at once:
+ * iterating (e.g. for a broadcast) never throws a ConcurrentModificationException, it sees every client that was there
+ * when the iteration started and did not leave in between, clients that join meanwhile may or may not be seen.
+ * The seats of a game are kept by its GameRoom.
+ */
+public class PlayerRegistry {
+    private final Set<ClientHandler> clients = ConcurrentHashMap.newKeySet();
+    private final Map<String, ClientHandler> byName = new ConcurrentHashMap<>();
+    // clients that finished the handshake and are not seated in a room
+    private final Set<ClientHandler> lobby = ConcurrentHashMap.newKeySet();
+    // seats of games that were restored after a restart, by the session token of the player who sat there (see Snapshots),
+    // and the names of these players, which nobody else may take meanwhile
+    private final Map<String, ReservedSeat> reservedSeats = new ConcurrentHashMap<>();
+    private final Map<String, String> reservedNames = new ConcurrentHashMap<>();
+    // the session tokens of the clients that finished the handshake, and of the players whose seat is kept for them
+    // after they lost the connection (see ClientHandler.resumeLogic())
+    private final Map<String, ClientHandler> sessions = new ConcurrentHashMap<>();
+    private final SecureRandom random = new SecureRandom();
+
+    /**
+     * A seat of a restored game: the room and the name of the player.
+     */
+    public static final class ReservedSeat {
+        private final GameRoom room;
+        private final String name;
+
+        // constructor
+        private ReservedSeat(GameRoom room, String name) {
+            this.room = room;
+            this.name = name;
+        }
+
+        public GameRoom getRoom() {
+            return this.room;
+        }
+
+        public String getName() {
+            return this.name;
+        }
+    }
+
+    /**
+     * Adds a client as soon as it connects, before it has a name.
+     */
+    public void connect(ClientHandler client) {
+        clients.add(client);
+    }
+
+    /**
+     * Removes the client and frees its name.
+     */
+    public void disconnect(ClientHandler client) {
+        clients.remove(client);
+        lobby.remove(client);
+        if (client.getName() != null) {
+            byName.remove(client.getName(), client);
+        }
+    }
+
+    /**
+     * Reserves the name for the client. If two clients ask for the same name at the same time, only one gets it.
+     *
+     * @return false if the name is already taken
+     */
+    public boolean register(String name, ClientHandler client) {
+        return !reservedNames.containsKey(name) && byName.putIfAbsent(name, client) == null;
+    }
+
+    public boolean isTaken(String name) {
+        return byName.containsKey(name);
+    }
+
+    /**
+     * @return true if the name belongs to a seat of a restored game that is still waiting for its player
+     */
+    public boolean isReserved(String name) {
+        return reservedNames.containsKey(name);
+    }
+
+    /**
+     * @return the client with the name or null
+     */
+    public ClientHandler get(String name) {
+        return byName.get(name);
+    }
+
+    /**
+     * Keeps a seat of a restored game for the player with the name, until he/she comes back with the session token
+     * he/she had before the restart. The name alone is not enough: anybody can connect with any name.
+     */
+    public void reserveSeat(String name, String token, GameRoom room) {
+        reservedNames.put(name, token);
+        reservedSeats.put(token, new ReservedSeat(room, name));
+    }
+
+    /**
+     * Takes the seat reserved for the token, if there is one, and gives the name of its player to the client.
+     *
+     * @return the seat or null
+     */
+    public ReservedSeat claimSeat(String token, ClientHandler client) {
+        ReservedSeat seat = reservedSeats.remove(token);
+        if (seat != null) {
+            byName.put(seat.name, client);
+            reservedNames.remove(seat.name, token);
+        }
+        return seat;
+    }
+
+    /**
+     * Gives up the seat of the name, e.g. because its game is over, unless the seat is in another room by now.
+     */
+    public void releaseSeat(String name, GameRoom room) {
+        String token = reservedNames.get(name);
+        if (token == null) {
+            return;
+        }
+        ReservedSeat seat = reservedSeats.get(token);
+        if (seat != null && seat.room == room && reservedSeats.remove(token, seat)) {
+            reservedNames.remove(name, token);
+        }
+    }
+
+    /**
+     * Removes a client that lost the connection during a game, but keeps its name and its session:
+     * the player can still come back (see ClientHandler.resumeLogic()).
+     */
+    public void park(ClientHandler client) {
+        clients.remove(client);
+        lobby.remove(client);
+    }
+
+    /**
+     * Gives the name of a player who resumed his/her session to the new client.
+     */
+    public void takeOver(String name, ClientHandler client) {
+        clients.add(client);
+        byName.put(name, client);
+    }
+
+    /**
+     * Creates a session token for the client. It can't be guessed: 128 random bits.
+     *
+     * @return the token, e.g. "mBq3k1Xo5c6uR0AkJ2cKzw"
+     */
+    public String issueToken(ClientHandler client) {
+        byte[] bytes = new byte[16];
+        random.nextBytes(bytes);
+        String token = Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+        sessions.put(token, client);
+        return token;
+    }
+
+    /**
+     * @return the client of the session or null
+     */
+    public ClientHandler getSession(String token) {
+        return sessions.get(token);
+    }
+
+    /**
+     * Ends the session of the client. If the player resumes it and the seat expires at the same time,
+     * only one of them takes it.
+     *
+     * @return false if the token does not belong to the client (any more)
+     */
+    public boolean takeSession(String token, ClientHandler client) {
+        return token != null && sessions.remove(token, client);
+    }
+
+    public void enterLobby(ClientHandler client) {
+        lobby.add(client);
+    }
+
+    public void leaveLobby(ClientHandler client) {
+        lobby.remove(client);
+    }
+
+    /**
+     * @return all connected clients, also the ones without a name yet
+     */
+    public Collection<ClientHandler> getClients() {
+        return this.clients;
+    }
+
+    public Collection<ClientHandler> getLobby() {
+        return this.lobby;
+    }
+
+    public int size() {
+        return this.clients.size();
+    }
+}
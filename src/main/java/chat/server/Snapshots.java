@@ -0,0 +1,197 @@
+package chat.server;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Keeps the running games across a restart of the server.
+ * At the start of every turn a room encodes its game into a few bytes (see GameRoom.snapshot()) and leaves them here;
+ * the "snapshots" thread writes the latest snapshot of every room into one file every
+ * -Dloveletter.snapshotMillis (default 1000) milliseconds, so the game threads never touch the disk.
+ * The file is written next to the old one and then moved over it, so there is always one complete file,
+ * even if the server dies while it writes.
+ * When the server starts, every game in the file is restored and its seats are kept for the players,
+ * who get them back by resuming the session they had before the restart (see GameRoom.reclaimSeat()).
+ * <p>
+ * The file: magic, version and number of games (int each), then every game with its length (int) first.
+ */
+public final class Snapshots {
+    private static final int magic = 0x4C4C534E; // "LLSN"
+    private static final int version = 6;
+    private static final long intervalMillis = Long.getLong("loveletter.snapshotMillis", 1000);
+
+    // the latest snapshot of every running game, by the name of its room
+    private static final Map<String, byte[]> latest = new ConcurrentHashMap<>();
+    private static final AtomicBoolean changed = new AtomicBoolean();
+    private static Path file;
+    private static ScheduledExecutorService writer;
+
+    private Snapshots() {
+    }
+
+    /**
+     * Restores the games of the file and starts writing it.
+     *
+     * @param path of the snapshot file
+     */
+    public static synchronized void start(Path path) {
+        if (writer != null) {
+            return;
+        }
+        file = path;
+        long start = System.nanoTime();
+        int restored = restore();
+        if (restored > 0) {
+            System.out.println(String.format("Restored %d games in %d ms", restored, (System.nanoTime() - start) / 1000000));
+        }
+        writer = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "snapshots");
+            thread.setDaemon(true);
+            return thread;
+        });
+        writer.scheduleWithFixedDelay(Snapshots::write, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+        Runtime.getRuntime().addShutdownHook(new Thread(Snapshots::write, "snapshots-shutdown"));
+    }
+
+    public static boolean isEnabled() {
+        return writer != null;
+    }
+
+    /**
+     * @param room     name of the room
+     * @param snapshot of its game, replaces the one before
+     */
+    static void save(String room, byte[] snapshot) {
+        latest.put(room, snapshot);
+        changed.set(true);
+    }
+
+    /**
+     * Forgets the game of the room, because it is over.
+     */
+    static void remove(String room) {
+        if (latest.remove(room) != null) {
+            changed.set(true);
+        }
+    }
+
+    /**
+     * Writes all games into the file, if anything changed since the last time. Runs on the snapshots thread.
+     */
+    private static synchronized void write() {
+        if (!changed.getAndSet(false)) {
+            return;
+        }
+        try {
+            // the map may change meanwhile: what is missed now is written the next time
+            ByteBuffer buffer = encode(latest.values().toArray(new byte[0][]));
+            Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+            try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                channel.force(false);
+            }
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            changed.set(true);
+            System.err.println("The games could not be saved: " + e);
+        }
+    }
+
+    /**
+     * @param snapshots of the games
+     * @return the content of the file, ready to be written
+     */
+    static ByteBuffer encode(byte[][] snapshots) {
+        int length = 12;
+        for (byte[] snapshot : snapshots) {
+            length += 4 + snapshot.length;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        buffer.putInt(magic).putInt(version).putInt(snapshots.length);
+        for (byte[] snapshot : snapshots) {
+            buffer.putInt(snapshot.length).put(snapshot);
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * @param buffer the content of the file
+     * @return the snapshots of the games, without a game that was cut off at the end of the file,
+     * or null if the file is in an unknown format
+     */
+    static List<byte[]> decode(ByteBuffer buffer) {
+        if (buffer.remaining() < 12 || buffer.getInt() != magic || buffer.getInt() != version) {
+            return null;
+        }
+        int count = buffer.getInt();
+        List<byte[]> snapshots = new ArrayList<>();
+        for (int i = 0; i < count && buffer.remaining() >= 4; i++) {
+            int length = buffer.getInt();
+            if (length < 0 || length > buffer.remaining()) {
+                break;
+            }
+            byte[] snapshot = new byte[length];
+            buffer.get(snapshot);
+            snapshots.add(snapshot);
+        }
+        return snapshots;
+    }
+
+    /**
+     * Reads the file and puts every game in it back on the server.
+     *
+     * @return number of restored games
+     */
+    private static int restore() {
+        ByteBuffer buffer;
+        try {
+            buffer = ByteBuffer.wrap(Files.readAllBytes(file));
+        } catch (NoSuchFileException e) {
+            return 0;
+        } catch (IOException e) {
+            System.err.println("The saved games could not be read: " + e);
+            return 0;
+        }
+        List<byte[]> snapshots = decode(buffer);
+        if (snapshots == null) {
+            System.err.println("The saved games are in an unknown format: " + file);
+            return 0;
+        }
+        int restored = 0;
+        for (byte[] snapshot : snapshots) {
+            GameRoom room;
+            try {
+                room = GameRoom.restore(ByteBuffer.wrap(snapshot));
+            } catch (RuntimeException e) {
+                // a snapshot that does not fit this version of the game: the other games are still restored
+                System.err.println("A saved game could not be restored: " + e);
+                continue;
+            }
+            if (Server.rooms.putIfAbsent(room.getName(), room) == null) {
+                room.reserveSeats();
+                // written again, in case the server dies before the first turn of the game
+                latest.put(room.getName(), snapshot);
+                restored++;
+            }
+        }
+        return restored;
+    }
+}
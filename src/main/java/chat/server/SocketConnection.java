@@ -0,0 +1,153 @@
+package chat.server;
+
+import chat.client.ClientHandler;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Blocking transport: one thread per connection reads the lines of the client with a BufferedReader.
+ * This is the classic thread-per-connection mode (server blocking / server virtual), the default are the EventLoops.
+ * Messages are not written by the thread that sends them: they wait in the OutboundQueue of the connection
+ * and a writer task on the server's pool writes them, so a client with a full TCP window only blocks its own writer.
+ * Nothing on the read and write path blocks inside a synchronized block, so a virtual thread running this
+ * connection is never pinned to its carrier thread while it waits for the network.
+ */
+public class SocketConnection implements Connection, Runnable {
+    private final Socket socket;
+    private final OutputStream output;
+    private final BufferedReader input;
+    private final Executor writer;
+    private final OutboundQueue outbound = new OutboundQueue();
+    // true while a writer task is scheduled or running, there is never more than one per connection
+    private final AtomicBoolean writing = new AtomicBoolean();
+    private volatile boolean closeRequested = false;
+    // set by the reading thread once the socket is closed: the writer gives the queued frames back instead of writing them
+    private volatile boolean closed = false;
+    private ClientHandler client;
+    // the connection whose lines the current thread reads, null on all other threads (room tasks, timers, writers)
+    private static final ThreadLocal<SocketConnection> reading = new ThreadLocal<>();
+
+    // constructor
+    public SocketConnection(Socket socket, Executor writer) throws IOException {
+        this.socket = socket;
+        this.writer = writer;
+        // reads input from the client; in UTF-8 like the EventLoops, whatever the default charset of the host is
+        this.input = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+        // sends output to the client; the writer flushes after the last queued message
+        this.output = new BufferedOutputStream(socket.getOutputStream());
+    }
+
+    public void setClient(ClientHandler client) {
+        this.client = client;
+    }
+
+    public OutboundQueue getOutbound() {
+        return this.outbound;
+    }
+
+    @Override
+    public void run() {
+        reading.set(this);
+        try {
+            client.onConnect();
+            String line;
+            while ((line = input.readLine()) != null) {
+                client.onLine(line);
+            }
+        } catch (IOException e) {
+            // the socket was closed, either by the client or by close()
+        } finally {
+            closeSocket();
+            closed = true;
+            // the writer is the only one who takes frames out of the queue, also to throw them away
+            scheduleWrite();
+            client.onDisconnect();
+            reading.remove();
+        }
+    }
+
+    /**
+     * Queues the frame for the writer. If the client is gone, the reading thread notices and closes the connection.
+     *
+     * @param frame to be sent
+     * @param chat  true for chat, which may be dropped if the client reads too slowly
+     */
+    @Override
+    public void send(Frame frame, boolean chat) {
+        if (closeRequested || closed) {
+            return;
+        }
+        // only the reading thread of a client may wait for a full queue (policy BLOCK), it holds up nobody but that client;
+        // a room task or a timer serves many clients and must never wait for one of them
+        int result = outbound.offer(frame, chat, reading.get() != null);
+        if (result == OutboundQueue.SLOW_CONSUMER) {
+            System.err.println("Disconnecting slow client " + client.getName() + " (" + outbound.getDepth() + " messages queued)");
+            closeRequested = true;
+            // the reading thread fails on the closed socket and cleans up
+            closeSocket();
+        } else if (result == OutboundQueue.ACCEPTED) {
+            scheduleWrite();
+        }
+    }
+
+    private void scheduleWrite() {
+        if (writing.compareAndSet(false, true)) {
+            writer.execute(this::write);
+        }
+    }
+
+    /**
+     * Writes all queued messages, then closes the socket if close() was called.
+     * Once the socket is closed, the queued messages are released instead (see OutboundQueue.clear()).
+     */
+    private void write() {
+        try {
+            while (true) {
+                if (closed) {
+                    outbound.clear();
+                } else {
+                    Frame message;
+                    while ((message = outbound.peek()) != null) {
+                        output.write(message.array(), 0, message.length());
+                        outbound.remove();
+                    }
+                    output.flush();
+                }
+                writing.set(false);
+                // a message could have been queued after the last peek, but before the flag was reset
+                if (outbound.isEmpty() || !writing.compareAndSet(false, true)) {
+                    break;
+                }
+            }
+            if (closeRequested && outbound.isEmpty()) {
+                closeSocket();
+            }
+        } catch (IOException e) {
+            // the socket is closed, the reading thread cleans up; cleared before the flag is reset, so no other writer runs meanwhile
+            outbound.clear();
+            writing.set(false);
+        }
+    }
+
+    @Override
+    public void close() {
+        closeRequested = true;
+        scheduleWrite();
+    }
+
+    private void closeSocket() {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
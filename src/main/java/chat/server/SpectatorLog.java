@@ -0,0 +1,214 @@
+package chat.server;
+
+import chat.client.ClientHandler;
+import chat.protocol.Protocol;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * What the spectators of one room see: the public messages of the room (everything that is broadcast, but no chat
+ * and nothing that is only told to one player), encoded once and kept in a ring of the last messages.
+ * The room only appends a message to the ring, which costs the same for no spectator or for thousands.
+ * Every spectator has a cursor in the ring; the "spectators" threads move the cursors forward and put the frames
+ * into the queues of the spectators, so a spectator is fed at his/her own pace and never slows down the game.
+ * A spectator who falls behind by more than the ring (-Dloveletter.spectatorLog, default 1024 messages) skips
+ * to the oldest message still in it.
+ * <p>
+ * The frames of the ring are never given back to the pool (see Frame): a spectator thread may still read one
+ * after it was overwritten, so the garbage collector takes them once every queue is done with them.
+ */
+public class SpectatorLog {
+    private static final int capacity = Integer.highestOneBit(Math.max(16, Integer.getInteger("loveletter.spectatorLog", 1024)));
+    private static final int protocolCount = Protocol.values().length;
+    private static final ExecutorService pool = Executors.newFixedThreadPool(
+            Math.max(1, Runtime.getRuntime().availableProcessors() / 2), new ThreadFactory() {
+                private final AtomicInteger count = new AtomicInteger();
+
+                @Override
+                public Thread newThread(Runnable task) {
+                    Thread thread = new Thread(task, "spectators-" + count.getAndIncrement());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+    // over all rooms, for the metrics
+    private static final AtomicInteger totalSpectators = new AtomicInteger();
+
+    private final AtomicReferenceArray<Entry> ring = new AtomicReferenceArray<>(capacity);
+    private final int mask = capacity - 1;
+    // number of messages appended so far; the next message gets this sequence number
+    private volatile long published;
+    // the protocols of the spectators, one bit per Protocol.ordinal(): only these are encoded
+    private volatile int protocols;
+    // appends come from the room's queue and from the threads of joining and leaving players
+    private final ReentrantLock lock = new ReentrantLock();
+    private final List<Spectator> spectators = new CopyOnWriteArrayList<>();
+    private final AtomicBoolean fanOutScheduled = new AtomicBoolean();
+
+    /**
+     * One message of the ring, with its frame for every protocol a spectator had when it was appended.
+     */
+    private static final class Entry {
+        private final long sequence;
+        private final Frame[] frames;
+
+        // constructor
+        private Entry(long sequence, Frame[] frames) {
+            this.sequence = sequence;
+            this.frames = frames;
+        }
+    }
+
+    /**
+     * A client who watches the room, and how far he/she got in the ring. The cursor is only moved by fanOut().
+     */
+    private static final class Spectator {
+        private final ClientHandler client;
+        private long cursor;
+
+        // constructor
+        private Spectator(ClientHandler client, long cursor) {
+            this.client = client;
+            this.cursor = cursor;
+        }
+    }
+
+    /**
+     * Appends a message for the spectators. Only the protocols some spectator speaks are encoded, the broadcast
+     * shares the frames with the players, who got the same message.
+     *
+     * @param broadcast the message, still owned (and released) by the caller
+     */
+    public void append(Broadcast broadcast) {
+        if (spectators.isEmpty()) {
+            return;
+        }
+        Frame[] frames = new Frame[protocolCount];
+        int wanted = protocols;
+        for (Protocol protocol : Protocol.values()) {
+            if ((wanted & 1 << protocol.ordinal()) != 0) {
+                Frame frame = broadcast.frame(protocol);
+                // the ring's reference, never released (see above)
+                frames[protocol.ordinal()] = frame == null ? null : frame.retain();
+            }
+        }
+        lock.lock();
+        try {
+            long sequence = published;
+            ring.set((int) (sequence & mask), new Entry(sequence, frames));
+            published = sequence + 1;
+        } finally {
+            lock.unlock();
+        }
+        scheduleFanOut();
+    }
+
+    /**
+     * Starts to feed the client with the messages appended from now on.
+     * Called on the room's queue, so the client gets exactly the messages after what he/she was told about the game.
+     */
+    void watch(ClientHandler client) {
+        protocols |= 1 << client.getProtocol().ordinal();
+        spectators.add(new Spectator(client, published));
+        totalSpectators.incrementAndGet();
+    }
+
+    /**
+     * Called under the lock of the room, like unwatchAll().
+     *
+     * @return false if the client was not watching
+     */
+    boolean unwatch(ClientHandler client) {
+        for (Spectator spectator : spectators) {
+            if (spectator.client == client) {
+                spectators.remove(spectator);
+                totalSpectators.decrementAndGet();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Stops all spectators at once, when the room is closed.
+     *
+     * @return the clients that were watching
+     */
+    List<ClientHandler> unwatchAll() {
+        List<ClientHandler> clients = new ArrayList<>(spectators.size());
+        for (Spectator spectator : spectators) {
+            clients.add(spectator.client);
+        }
+        spectators.clear();
+        totalSpectators.addAndGet(-clients.size());
+        return clients;
+    }
+
+    public int getSpectatorCount() {
+        return this.spectators.size();
+    }
+
+    /**
+     * @return number of clients watching a room, over all rooms
+     */
+    public static int getTotalSpectators() {
+        return totalSpectators.get();
+    }
+
+    private void scheduleFanOut() {
+        if (fanOutScheduled.compareAndSet(false, true)) {
+            pool.execute(this::fanOut);
+        }
+    }
+
+    /**
+     * Moves every spectator up to the newest message, on a spectator thread. Runs for one room at a time.
+     */
+    private void fanOut() {
+        long end = published;
+        try {
+            for (Spectator spectator : spectators) {
+                catchUp(spectator, end);
+            }
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+        }
+        fanOutScheduled.set(false);
+        // a message could have been appended after the last catchUp(), but before the flag was reset
+        if (published != end) {
+            scheduleFanOut();
+        }
+    }
+
+    private void catchUp(Spectator spectator, long end) {
+        // older messages may be overwritten already
+        long oldest = end - capacity + 1;
+        if (spectator.cursor < oldest) {
+            spectator.client.sendMessage("You missed " + (oldest - spectator.cursor) + " messages of the game.");
+            spectator.cursor = oldest;
+        }
+        int protocol = spectator.client.getProtocol().ordinal();
+        while (spectator.cursor < end) {
+            Entry entry = ring.get((int) (spectator.cursor & mask));
+            if (entry == null || entry.sequence != spectator.cursor) {
+                // overwritten while we got here, the next pass starts at the oldest message
+                return;
+            }
+            Frame frame = entry.frames[protocol];
+            if (frame != null) {
+                // like chat: a spectator who reads too slowly loses messages instead of holding up the others
+                spectator.client.send(frame, true);
+            }
+            spectator.cursor++;
+        }
+    }
+}
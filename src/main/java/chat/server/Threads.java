@@ -0,0 +1,28 @@
+package chat.server;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Helper for the virtual-thread mode of the server (server virtual).
+ * The project is compiled for Java 8, so the virtual threads of Java 21+ are looked up at runtime.
+ */
+public class Threads {
+
+    /**
+     * @return an executor that starts a new virtual thread for every task,
+     * or null if this JVM has no virtual threads
+     */
+    public static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            return (ExecutorService) java.util.concurrent.Executors.class
+                    .getMethod("newVirtualThreadPerTaskExecutor")
+                    .invoke(null);
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            return null;
+        } catch (InvocationTargetException e) {
+            // Java 19 and 20 only have virtual threads as a preview feature
+            return null;
+        }
+    }
+}
@@ -0,0 +1,255 @@
+package chat.server;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The deadlines of all rooms (see GameRoom) on one hashed timer wheel: a ring of buckets, one per tick, that the
+ * "timer" thread walks through once per tick, running the timeouts of the bucket that are due. A timeout further away than
+ * one turn of the wheel waits for the number of turns it still has to go. Scheduling and cancelling take the same time
+ * whether 10 or 100000 timeouts are pending, and a tick only looks at one bucket.
+ * <p>
+ * Any thread may schedule or cancel; it only puts the timeout on a lock-free queue. The buckets are owned by the timer
+ * thread alone, which takes the queued timeouts in at every tick, so the wheel needs no locks. A timeout is only as exact
+ * as the tick (-Dloveletter.timerTickMillis, default 100), which is plenty for deadlines of seconds.
+ * The tasks run on the timer thread and must be short: the rooms only put a task on their own queue.
+ * While no timeout is pending the timer thread does not tick at all, it waits for the next schedule(),
+ * so an idle server does not wake up.
+ */
+public class TimerWheel {
+    private static final int PENDING = 0;
+    private static final int CANCELLED = 1;
+    private static final int EXPIRED = 2;
+
+    private final long tickNanos;
+    private final Bucket[] buckets;
+    private final int mask;
+    private final Queue<Timeout> scheduled = new ConcurrentLinkedQueue<>();
+    private final Queue<Timeout> cancelled = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pending = new AtomicInteger();
+    private final AtomicBoolean started = new AtomicBoolean();
+    private final long startTime = System.nanoTime();
+    private volatile Thread thread;
+    // true while the timer thread waits for a timeout, schedule() wakes it up then
+    private volatile boolean idle = false;
+    // only used by the timer thread: the number of the next tick
+    private long tick;
+
+    /**
+     * A task waiting for its deadline. Cancelling it is safe from any thread and at any time.
+     */
+    public static final class Timeout {
+        private final TimerWheel wheel;
+        private final Runnable task;
+        private final long deadline;
+        private final AtomicInteger state = new AtomicInteger(PENDING);
+        // only used by the timer thread
+        private long rounds;
+        private Bucket bucket;
+        private Timeout previous;
+        private Timeout next;
+
+        // constructor
+        private Timeout(TimerWheel wheel, Runnable task, long deadline) {
+            this.wheel = wheel;
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        /**
+         * @return false if the task already ran (or is running right now) or was cancelled before
+         */
+        public boolean cancel() {
+            if (!state.compareAndSet(PENDING, CANCELLED)) {
+                return false;
+            }
+            wheel.pending.decrementAndGet();
+            // taken out of its bucket by the timer thread
+            wheel.cancelled.add(this);
+            return true;
+        }
+    }
+
+    /**
+     * A doubly linked list of timeouts, so a cancelled one is taken out without searching for it.
+     */
+    private static final class Bucket {
+        private Timeout head;
+        private Timeout tail;
+
+        void add(Timeout timeout) {
+            timeout.bucket = this;
+            if (tail == null) {
+                head = timeout;
+            } else {
+                tail.next = timeout;
+                timeout.previous = tail;
+            }
+            tail = timeout;
+        }
+
+        void remove(Timeout timeout) {
+            if (timeout.previous == null) {
+                head = timeout.next;
+            } else {
+                timeout.previous.next = timeout.next;
+            }
+            if (timeout.next == null) {
+                tail = timeout.previous;
+            } else {
+                timeout.next.previous = timeout.previous;
+            }
+            timeout.previous = null;
+            timeout.next = null;
+            timeout.bucket = null;
+        }
+    }
+
+    /**
+     * @param tickMillis length of one tick
+     * @param size       number of buckets, a power of two; one turn of the wheel is size ticks
+     */
+    public TimerWheel(long tickMillis, int size) {
+        if (Integer.bitCount(size) != 1) {
+            throw new IllegalArgumentException("The number of buckets must be a power of two: " + size);
+        }
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, tickMillis));
+        this.buckets = new Bucket[size];
+        for (int i = 0; i < size; i++) {
+            buckets[i] = new Bucket();
+        }
+        this.mask = size - 1;
+    }
+
+    /**
+     * Runs the task on the timer thread once the delay is over, unless it is cancelled before.
+     *
+     * @param task  to run, short
+     * @param delay after which the task runs
+     * @param unit  of the delay
+     * @return the timeout, to cancel it
+     */
+    public Timeout schedule(Runnable task, long delay, TimeUnit unit) {
+        start();
+        Timeout timeout = new Timeout(this, task, System.nanoTime() - startTime + unit.toNanos(delay));
+        pending.incrementAndGet();
+        scheduled.add(timeout);
+        // the timer thread sets idle before it looks at pending the last time, so one of the two sees the other
+        if (idle) {
+            LockSupport.unpark(thread);
+        }
+        return timeout;
+    }
+
+    /**
+     * @return number of timeouts that wait for their deadline
+     */
+    public int getPending() {
+        return this.pending.get();
+    }
+
+    /**
+     * @return true while the timer thread waits for a timeout instead of ticking
+     */
+    boolean isIdle() {
+        return this.idle;
+    }
+
+    private void start() {
+        if (started.compareAndSet(false, true)) {
+            Thread timer = new Thread(this::run, "timer");
+            timer.setDaemon(true);
+            thread = timer;
+            timer.start();
+        }
+    }
+
+    private void run() {
+        while (true) {
+            long next = (tick + 1) * tickNanos;
+            long sleep;
+            while ((sleep = next - (System.nanoTime() - startTime)) > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(sleep);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+            try {
+                takeCancelled();
+                takeScheduled();
+                expire(buckets[(int) (tick & mask)]);
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+            tick++;
+            if (pending.get() == 0) {
+                waitForTimeout();
+            }
+        }
+    }
+
+    /**
+     * Parks the timer thread until a timeout is scheduled. The buckets only hold cancelled timeouts by now
+     * (taken out with the next takeCancelled()), so the ticks in between are skipped instead of walked through.
+     */
+    private void waitForTimeout() {
+        idle = true;
+        while (pending.get() == 0) {
+            LockSupport.park(this);
+            if (Thread.currentThread().isInterrupted()) {
+                // the next sleep ends the thread
+                break;
+            }
+        }
+        idle = false;
+        tick = Math.max(tick, (System.nanoTime() - startTime) / tickNanos);
+    }
+
+    private void takeCancelled() {
+        Timeout timeout;
+        while ((timeout = cancelled.poll()) != null) {
+            if (timeout.bucket != null) {
+                timeout.bucket.remove(timeout);
+            }
+        }
+    }
+
+    private void takeScheduled() {
+        Timeout timeout;
+        while ((timeout = scheduled.poll()) != null) {
+            if (timeout.state.get() != PENDING) {
+                continue;
+            }
+            // a deadline in the past is run at this tick
+            long due = Math.max(timeout.deadline / tickNanos, tick);
+            timeout.rounds = (due - tick) / buckets.length;
+            buckets[(int) (due & mask)].add(timeout);
+        }
+    }
+
+    private void expire(Bucket bucket) {
+        Timeout timeout = bucket.head;
+        while (timeout != null) {
+            Timeout next = timeout.next;
+            if (timeout.rounds > 0) {
+                timeout.rounds--;
+            } else {
+                bucket.remove(timeout);
+                if (timeout.state.compareAndSet(PENDING, EXPIRED)) {
+                    pending.decrementAndGet();
+                    try {
+                        timeout.task.run();
+                    } catch (RuntimeException e) {
+                        e.printStackTrace();
+                    }
+                }
+            }
+            timeout = next;
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package game.bot;
+
+import game.engine.GameState;
+
+import java.util.Random;
+
+/**
+ * A policy that plays Love Letter without a human: it picks one of the legal moves of the active seat.
+ * A fair bot only looks at its own hand and the cards on the table, not at the hands of the others or the deck.
+ * Bots keep their buffers between calls, so every thread needs its own bots.
+ */
+public interface Bot {
+
+    /**
+     * @param state  of the game, the bot plays the active seat
+     * @param moves  the legal moves (see Engine.legalMoves)
+     * @param count  number of legal moves
+     * @param random to decide between equally good moves
+     * @return one of the moves
+     */
+    int chooseMove(GameState state, int[] moves, int count, Random random);
+}
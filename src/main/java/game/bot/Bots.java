@@ -0,0 +1,30 @@
+package game.bot;
+
+/**
+ * Creates bots by the name of their policy, e.g. for the command line.
+ */
+public final class Bots {
+    public static final String[] policies = {"random", "greedy", "mcts"};
+
+    private Bots() {
+    }
+
+    /**
+     * @param policy name of the policy (see policies)
+     * @return a new bot
+     * @throws IllegalArgumentException if there is no policy with that name
+     */
+    public static Bot create(String policy) {
+        switch (policy.toLowerCase()) {
+            case "random":
+                return new RandomBot();
+            case "greedy":
+                return new GreedyBot();
+            case "mcts":
+                return new MctsBot(Integer.getInteger("loveletter.mctsThreads", 1),
+                        Long.getLong("loveletter.mctsMillis", 50), Integer.getInteger("loveletter.mctsPlayouts", 10000));
+            default:
+                throw new IllegalArgumentException("Unknown bot policy: " + policy + ". Use one of " + String.join(", ", policies));
+        }
+    }
+}
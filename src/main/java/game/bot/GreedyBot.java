@@ -0,0 +1,66 @@
+package game.bot;
+
+import game.engine.Cards;
+import game.engine.GameState;
+import game.engine.Move;
+import game.engine.Odds;
+
+import java.util.Random;
+
+/**
+ * Plays like a careful beginner: keeps the higher card (it wins the round when the deck runs out),
+ * never plays the Princess, only uses the Baron with a strong card and guesses the card that is most likely left
+ * with the Guard (or the card it has seen in the hand of the target). Targets are chosen at random.
+ */
+public class GreedyBot implements Bot {
+
+    @Override
+    public int chooseMove(GameState state, int[] moves, int count, Random random) {
+        int best = moves[0];
+        int bestScore = Integer.MIN_VALUE;
+        for (int i = 0; i < count; i++) {
+            int move = moves[i];
+            // a little noise, so equal moves are chosen at random
+            int score = score(state, move) * 16 + random.nextInt(16);
+            if (score > bestScore) {
+                bestScore = score;
+                best = move;
+            }
+        }
+        return best;
+    }
+
+    private int score(GameState state, int move) {
+        int card = Move.card(move);
+        int seat = state.getActiveSeat();
+        int kept = state.getHand(seat, 0) == card ? state.getHand(seat, 1) : state.getHand(seat, 0);
+        // keeping the higher card is the default
+        int score = -Cards.value(card) * 2;
+        switch (card) {
+            case Cards.PRINCESS:
+                return -1000;
+            case Cards.GUARD:
+                if (Move.target(move) != seat && Move.guess(move) != Odds.mostLikelyGuess(state, seat, Move.target(move))) {
+                    return -1000;
+                }
+                break;
+            case Cards.BARON:
+                // the Baron is only worth it with a high card in hand
+                score += kept >= Cards.PRINCE ? 10 : -10;
+                break;
+            case Cards.HANDMAID:
+                score += 2;
+                break;
+            case Cards.PRINCE:
+            case Cards.KING:
+                // never give away or throw away the own card by choosing yourself
+                if (Move.target(move) == seat) {
+                    score -= 20;
+                }
+                break;
+            default:
+                break;
+        }
+        return score;
+    }
+}
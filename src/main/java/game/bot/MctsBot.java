@@ -0,0 +1,213 @@
+package game.bot;
+
+import game.engine.Engine;
+import game.engine.GameState;
+
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Searches for the best move with information set Monte Carlo tree search (ISMCTS) within a budget of time and playouts.
+ * Every playout deals the cards the bot can't see anew (see Engine.redeal()), goes down the tree of the moves
+ * by UCB1 as long as it knows the moves, adds the first new one and plays the rest of the round with random moves.
+ * Moves are counted as available only in the worlds where they are legal, so the moves of the others
+ * (whose cards differ from world to world) are compared fairly. The bot scores the rounds, not the game:
+ * whoever wins the round gets 1 for all his/her moves of the playout.
+ * <p>
+ * The tree is a TranspositionTable keyed by Zobrist hashes of what the bot knows (see Zobrist), shared by all threads of
+ * the search (tree parallelism) and kept from move to move. Every thread has its own state and buffers,
+ * so a playout allocates nothing.
+ */
+public class MctsBot implements Bot {
+    // the weight of exploring in UCB1
+    private static final float exploration = 0.7f;
+    // deepest path through the tree; the rest of the playout is random anyway
+    private static final int maxDepth = 32;
+    private static final int tableCapacity = 1 << 18;
+    // threads of all searches, beside the thread that asks for the move
+    private static ExecutorService pool;
+
+    private final int threads;
+    private final long budgetNanos;
+    private final int maxPlayouts;
+    private final TranspositionTable table = new TranspositionTable(tableCapacity);
+    private final Searcher[] searchers;
+    private final Future<?>[] running;
+    private long playouts;
+
+    /**
+     * @param threads     number of threads searching at the same time
+     * @param budgetMillis time for one move
+     * @param maxPlayouts playouts for one move at most, 0 for as many as the time allows
+     */
+    public MctsBot(int threads, long budgetMillis, int maxPlayouts) {
+        this.threads = Math.max(1, threads);
+        this.budgetNanos = budgetMillis * 1000000;
+        this.maxPlayouts = maxPlayouts > 0 ? maxPlayouts : Integer.MAX_VALUE;
+        this.searchers = new Searcher[this.threads];
+        for (int i = 0; i < this.threads; i++) {
+            searchers[i] = new Searcher();
+        }
+        this.running = new Future<?>[this.threads];
+    }
+
+    private static synchronized ExecutorService pool() {
+        if (pool == null) {
+            AtomicInteger number = new AtomicInteger();
+            pool = Executors.newCachedThreadPool(task -> {
+                Thread thread = new Thread(task, "mcts-" + number.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return pool;
+    }
+
+    /**
+     * @return number of playouts of all moves so far
+     */
+    public long getPlayouts() {
+        return this.playouts;
+    }
+
+    @Override
+    public int chooseMove(GameState state, int[] moves, int count, Random random) {
+        if (count == 1) {
+            return moves[0];
+        }
+        if (table.isCrowded()) {
+            table.clear();
+        }
+        long deadline = System.nanoTime() + budgetNanos;
+        AtomicInteger remaining = new AtomicInteger(maxPlayouts);
+        for (int i = 1; i < threads; i++) {
+            Searcher searcher = searchers[i];
+            running[i] = pool().submit(() -> searcher.search(state, deadline, remaining));
+        }
+        searchers[0].search(state, deadline, remaining);
+        for (int i = 1; i < threads; i++) {
+            try {
+                running[i].get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("The search failed", e.getCause());
+            }
+            running[i] = null;
+        }
+        for (Searcher searcher : searchers) {
+            playouts += searcher.playouts;
+            searcher.playouts = 0;
+        }
+
+        // the move that was tried most often is the one the search trusts most
+        long node = Zobrist.hash(state, state.getActiveSeat());
+        int best = moves[0];
+        int bestVisits = -1;
+        for (int i = 0; i < count; i++) {
+            int slot = table.find(Zobrist.edge(node, moves[i]));
+            int visits = slot < 0 ? 0 : table.visits[slot];
+            if (visits > bestVisits) {
+                bestVisits = visits;
+                best = moves[i];
+            }
+        }
+        return best;
+    }
+
+    /**
+     * One thread of the search with its own state and buffers.
+     */
+    private final class Searcher {
+        private final GameState world = new GameState();
+        private final int[] moves = new int[64];
+        private final int[] path = new int[maxDepth];
+        private final int[] movers = new int[maxDepth];
+        private long playouts;
+
+        void search(GameState root, long deadline, AtomicInteger remaining) {
+            Random random = ThreadLocalRandom.current();
+            int viewer = root.getActiveSeat();
+            // the clock is read every few playouts only
+            while (remaining.getAndAdd(-8) > 0 && System.nanoTime() < deadline) {
+                for (int i = 0; i < 8; i++) {
+                    playout(root, viewer, random);
+                }
+            }
+        }
+
+        private void playout(GameState root, int viewer, Random random) {
+            world.copyFrom(root);
+            Engine.redeal(world, viewer, random);
+            int depth = 0;
+            boolean inTree = true;
+            while (world.getPhase() == GameState.TURN) {
+                int count = Engine.legalMoves(world, moves);
+                int move;
+                if (inTree && depth < maxDepth) {
+                    int slot = select(count, viewer, random);
+                    move = moves[count];
+                    if (slot < 0 || table.visits[slot] == 0) {
+                        // a new move: the rest is played at random
+                        inTree = false;
+                    }
+                    if (slot >= 0) {
+                        // counted right away, so the other threads see a visit and try other moves (virtual loss)
+                        table.visits[slot]++;
+                        path[depth] = slot;
+                        movers[depth++] = world.getActiveSeat();
+                    }
+                } else {
+                    move = moves[random.nextInt(count)];
+                }
+                Engine.apply(world, move);
+            }
+            // the winner of the round starts the next one
+            int winner = world.getActiveSeat();
+            for (int i = 0; i < depth; i++) {
+                if (movers[i] == winner) {
+                    table.wins[path[i]] += 1;
+                }
+            }
+            playouts++;
+        }
+
+        /**
+         * Chooses a move by UCB1 with the availability of the moves instead of the visits of the parent.
+         * The chosen move is written behind the legal moves, at moves[count].
+         *
+         * @return the entry of the chosen move or -1 if the table is full
+         */
+        private int select(int count, int viewer, Random random) {
+            long node = Zobrist.hash(world, viewer);
+            int bestSlot = -1;
+            int bestMove = moves[random.nextInt(count)];
+            float bestScore = -1;
+            // start at a random move, so untried moves are tried in random order
+            int offset = random.nextInt(count);
+            for (int i = 0; i < count; i++) {
+                int move = moves[(i + offset) % count];
+                int slot = table.slot(Zobrist.edge(node, move));
+                if (slot < 0) {
+                    continue;
+                }
+                int available = ++table.available[slot];
+                int visits = table.visits[slot];
+                float score = visits == 0 ? Float.MAX_VALUE
+                        : table.wins[slot] / visits + exploration * (float) Math.sqrt(Math.log(available) / visits);
+                if (score > bestScore) {
+                    bestScore = score;
+                    bestSlot = slot;
+                    bestMove = move;
+                }
+            }
+            moves[count] = bestMove;
+            return bestSlot;
+        }
+    }
+}
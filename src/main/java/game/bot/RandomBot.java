@@ -0,0 +1,16 @@
+package game.bot;
+
+import game.engine.GameState;
+
+import java.util.Random;
+
+/**
+ * Plays any legal move, the baseline every other bot should beat.
+ */
+public class RandomBot implements Bot {
+
+    @Override
+    public int chooseMove(GameState state, int[] moves, int count, Random random) {
+        return moves[random.nextInt(count)];
+    }
+}
@@ -0,0 +1,110 @@
+package game.bot;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The statistics of the search (see MctsBot), one entry per move in an information set (see Zobrist.edge()),
+ * in flat arrays with open addressing, so the search allocates nothing while it runs.
+ * All threads of a search share one table (tree parallelism): a new entry is claimed with a compare-and-set of its key,
+ * the counters are updated without any lock. Two threads may lose one update of a counter now and then;
+ * for statistics over thousands of playouts that does not matter, waiting for a lock would.
+ */
+final class TranspositionTable {
+    // how far to look for a key before the table counts as full
+    private static final int maxProbes = 32;
+
+    private final int mask;
+    private final AtomicLongArray keys;
+    // playouts that chose the move
+    final int[] visits;
+    // playouts in which the move was legal (it is not in every world the search deals)
+    final int[] available;
+    // rounds won by the seat that made the move
+    final float[] wins;
+    private final AtomicInteger used = new AtomicInteger();
+
+    /**
+     * @param capacity number of entries, a power of two
+     */
+    TranspositionTable(int capacity) {
+        if (Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("The capacity must be a power of two: " + capacity);
+        }
+        this.mask = capacity - 1;
+        this.keys = new AtomicLongArray(capacity);
+        this.visits = new int[capacity];
+        this.available = new int[capacity];
+        this.wins = new float[capacity];
+    }
+
+    /**
+     * @param key of the move, see Zobrist.edge()
+     * @return the entry of the key, a new one if the key is not in the table yet, or -1 if the table is too full
+     */
+    int slot(long key) {
+        if (key == 0) {
+            key = 1; // 0 marks a free entry
+        }
+        int index = (int) key & mask;
+        for (int probe = 0; probe < maxProbes; probe++) {
+            long current = keys.get(index);
+            if (current == key) {
+                return index;
+            }
+            if (current == 0) {
+                if (keys.compareAndSet(index, 0, key)) {
+                    used.incrementAndGet();
+                    return index;
+                }
+                if (keys.get(index) == key) {
+                    return index;
+                }
+            }
+            index = (index + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * @return the entry of the key, or -1 if the key is not in the table
+     */
+    int find(long key) {
+        if (key == 0) {
+            key = 1;
+        }
+        int index = (int) key & mask;
+        for (int probe = 0; probe < maxProbes; probe++) {
+            long current = keys.get(index);
+            if (current == key) {
+                return index;
+            }
+            if (current == 0) {
+                return -1;
+            }
+            index = (index + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * @return true if more than half of the entries are used, so new keys would have to look far for a free entry
+     */
+    boolean isCrowded() {
+        return used.get() > (mask + 1) / 2;
+    }
+
+    /**
+     * Forgets everything; only while no search runs.
+     */
+    void clear() {
+        for (int i = 0; i <= mask; i++) {
+            keys.set(i, 0);
+        }
+        Arrays.fill(visits, 0);
+        Arrays.fill(available, 0);
+        Arrays.fill(wins, 0);
+        used.set(0);
+    }
+}
@@ -0,0 +1,94 @@
+package game.bot;
+
+import game.engine.Cards;
+import game.engine.GameState;
+
+import java.util.SplittableRandom;
+
+/**
+ * Zobrist keys of what one seat knows about a round: its own hand, the cards on the table, the hands of the others it has
+ * seen, who is still in the round, who is protected, whose turn it is and how many cards are left. Two states that only differ in cards the seat can't see
+ * get the same key, so the search (see MctsBot) shares its statistics between all the worlds the seat can't tell apart,
+ * and between different orders of moves that lead to the same situation.
+ */
+final class Zobrist {
+    private static final long[][] hand = new long[Cards.PRINCESS + 1][2];
+    private static final long[][] faceUp = new long[Cards.PRINCESS + 1][Cards.deckSize + 1];
+    private static final long[] inRound = new long[1 << GameState.maxPlayers];
+    private static final long[] protectedSeats = new long[1 << GameState.maxPlayers];
+    private static final long[] active = new long[GameState.maxPlayers];
+    private static final long[] viewer = new long[GameState.maxPlayers];
+    private static final long[] players = new long[GameState.maxPlayers + 1];
+    private static final long[] deckSize = new long[Cards.deckSize + 1];
+    private static final long[][] known = new long[GameState.maxPlayers][Cards.PRINCESS + 1];
+
+    static {
+        // a fixed seed, so the keys are the same in every run
+        SplittableRandom random = new SplittableRandom(0x4C6F76654C657474L);
+        fill(random, hand);
+        fill(random, faceUp);
+        fill(random, inRound);
+        fill(random, protectedSeats);
+        fill(random, active);
+        fill(random, viewer);
+        fill(random, players);
+        fill(random, deckSize);
+        fill(random, known);
+    }
+
+    private Zobrist() {
+    }
+
+    private static void fill(SplittableRandom random, long[][] keys) {
+        for (long[] row : keys) {
+            fill(random, row);
+        }
+    }
+
+    private static void fill(SplittableRandom random, long[] keys) {
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = random.nextLong();
+        }
+    }
+
+    /**
+     * @param seat whose knowledge is hashed
+     * @return the key of the information set of the seat
+     */
+    static long hash(GameState state, int seat) {
+        long key = viewer[seat] ^ players[state.getPlayerCount()] ^ active[state.getActiveSeat()] ^ deckSize[state.getDeckSize()];
+        int first = state.getHand(seat, 0);
+        int second = state.getHand(seat, 1);
+        // the hand is a set: the same card twice gets two different keys, two different cards are the same in any slot
+        key ^= hand[first][0] ^ hand[second][first == second ? 1 : 0];
+        for (int card = Cards.GUARD; card <= Cards.PRINCESS; card++) {
+            key ^= faceUp[card][state.getFaceUpCount(card)];
+        }
+        int inRoundMask = 0;
+        int protectedMask = 0;
+        for (int other = 0; other < state.getPlayerCount(); other++) {
+            if (state.isInRound(other)) {
+                inRoundMask |= 1 << other;
+            }
+            if (state.isProtected(other)) {
+                protectedMask |= 1 << other;
+            }
+            int card = state.getKnownCard(seat, other);
+            if (card != Cards.NONE && other != seat && state.isInRound(other)) {
+                key ^= known[other][card];
+            }
+        }
+        return key ^ inRound[inRoundMask] ^ protectedSeats[protectedMask];
+    }
+
+    /**
+     * @return the key of a move in the information set with the key node
+     */
+    static long edge(long node, int move) {
+        // the finalizer of MurmurHash3, so neighbouring moves end up far apart in the table
+        long key = node ^ move * 0x9E3779B97F4A7C15L;
+        key = (key ^ key >>> 33) * 0xFF51AFD7ED558CCDL;
+        key = (key ^ key >>> 33) * 0xC4CEB9FE1A85EC53L;
+        return key ^ key >>> 33;
+    }
+}
@@ -0,0 +1,67 @@
+package game.engine;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The eight cards of Love Letter as ids. The id of a card is also its value.
+ * Hands, deck and table only hold these ids, so no card is ever allocated; the names are only needed for the text protocol.
+ */
+public final class Cards {
+    public static final byte NONE = 0;
+    public static final byte GUARD = 1;
+    public static final byte PRIEST = 2;
+    public static final byte BARON = 3;
+    public static final byte HANDMAID = 4;
+    public static final byte PRINCE = 5;
+    public static final byte KING = 6;
+    public static final byte COUNTESS = 7;
+    public static final byte PRINCESS = 8;
+
+    public static final int deckSize = 16;
+    // how many copies of every card are in the deck, by id
+    private static final int[] counts = {0, 5, 2, 2, 2, 2, 1, 1, 1};
+    private static final String[] names = {"", "Guard", "Priest", "Baron", "Handmaid", "Prince", "King", "Countess", "Princess"};
+    // the ids by name, for the commands of the players
+    private static final Map<String, Byte> ids;
+
+    static {
+        Map<String, Byte> map = new HashMap<>();
+        for (byte card = GUARD; card <= PRINCESS; card++) {
+            map.put(names[card], card);
+        }
+        ids = Collections.unmodifiableMap(map);
+    }
+
+    private Cards() {
+    }
+
+    public static String name(int card) {
+        return names[card];
+    }
+
+    public static int value(int card) {
+        return card;
+    }
+
+    public static int count(int card) {
+        return counts[card];
+    }
+
+    /**
+     * @param name of the card, e.g. "Guard"
+     * @return id of the card or NONE if there is no card with that name
+     */
+    public static byte byName(String name) {
+        Byte card = ids.get(name);
+        return card == null ? NONE : card;
+    }
+
+    /**
+     * @return true for the cards that need a target player (Guard, Priest, Baron, Prince, King)
+     */
+    public static boolean needsTarget(int card) {
+        return card == GUARD || card == PRIEST || card == BARON || card == PRINCE || card == KING;
+    }
+}
@@ -0,0 +1,545 @@
+package game.engine;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * The rules of Love Letter, without players, rooms or sockets.
+ * Every method works on a GameState and writes what happened as events into the state (see Event),
+ * the server turns these into messages and a bot or a simulation can just ignore them.
+ * Nothing in here allocates, so millions of games can be played without garbage.
+ */
+public final class Engine {
+    // reasons why a move is not allowed, returned by check() and apply()
+    public static final int NOT_YOUR_TURN = -1;
+    public static final int NOT_IN_HAND = -2;
+    public static final int MUST_PLAY_COUNTESS = -3;
+    public static final int INVALID_TARGET = -4;
+    public static final int TARGET_PROTECTED = -5;
+    public static final int TARGET_SELF = -6;
+    public static final int INVALID_GUESS = -7;
+    // the step of SplitMix64, see shuffle()
+    private static final long goldenGamma = 0x9E3779B97F4A7C15L;
+
+    private Engine() {
+    }
+
+    /**
+     * Sets up a new game. The first round is started with startRound().
+     *
+     * @param state       to reset
+     * @param playerCount 2 to 4
+     * @param firstSeat   seat that starts the first round
+     * @param seed        of the game: the same seed deals the same decks in every round
+     */
+    public static void newGame(GameState state, int playerCount, int firstSeat, long seed) {
+        if (playerCount < 2 || playerCount > GameState.maxPlayers) {
+            throw new IllegalArgumentException("Love Letter is played by 2 to 4 players, not " + playerCount);
+        }
+        state.playerCount = playerCount;
+        state.seed = seed;
+        switch (playerCount) {
+            case 2:
+                state.winningPoints = 5;
+                break;
+            case 3:
+                state.winningPoints = 4;
+                break;
+            default:
+                state.winningPoints = 3;
+                break;
+        }
+        for (int seat = 0; seat < GameState.maxPlayers; seat++) {
+            state.points[seat] = 0;
+        }
+        state.round = 0;
+        state.activeSeat = firstSeat;
+        state.inRound = 0;
+        state.protectedSeats = 0;
+        state.phase = GameState.ROUND_OVER;
+        state.eventCount = 0;
+    }
+
+    /**
+     * Shuffles and deals a new round and starts the turn of the active seat (the winner of the last round).
+     * With two players three cards are put aside face up. One card is always put aside face down.
+     *
+     * The deck is shuffled with the seed of the round (see roundSeed()), so the round can be dealt again from the seed alone.
+     *
+     * @param state of the game, the last round must be over
+     * @return number of events
+     */
+    public static int startRound(GameState state) {
+        if (state.phase != GameState.ROUND_OVER) {
+            throw new IllegalStateException("The round is not over yet");
+        }
+        state.eventCount = 0;
+        state.round++;
+        state.turn = 1;
+        state.playedCount = 0;
+        for (int card = Cards.GUARD; card <= Cards.PRINCESS; card++) {
+            state.faceUpCounts[card] = 0;
+        }
+        Arrays.fill(state.knownCards, Cards.NONE);
+        state.protectedSeats = 0;
+        state.inRound = (1 << state.playerCount) - 1;
+
+        byte[] deck = state.deck;
+        int size = 0;
+        for (byte card = Cards.GUARD; card <= Cards.PRINCESS; card++) {
+            for (int i = 0; i < Cards.count(card); i++) {
+                deck[size++] = card;
+            }
+        }
+        shuffle(deck, size, roundSeed(state.seed, state.round));
+        state.deckTop = 0;
+        emit(state, Event.ROUND_STARTED, state.activeSeat, Move.noTarget, Cards.NONE, state.round);
+
+        if (state.playerCount == 2) {
+            for (int i = 0; i < 3; i++) {
+                byte card = deck[state.deckTop++];
+                putFaceUp(state, card);
+                emit(state, Event.CARD_SET_ASIDE, state.activeSeat, Move.noTarget, card, 0);
+            }
+        }
+        state.reserveCard = deck[state.deckTop++];
+
+        for (int seat = 0; seat < state.playerCount; seat++) {
+            state.hands[seat * 2] = Cards.NONE;
+            state.hands[seat * 2 + 1] = Cards.NONE;
+            draw(state, seat);
+        }
+        state.phase = GameState.TURN;
+        startTurn(state);
+        return state.eventCount;
+    }
+
+    /**
+     * @param gameSeed seed of the game, see GameState.getSeed()
+     * @param round    number, from 1
+     * @return the seed the deck of the round is shuffled with
+     */
+    public static long roundSeed(long gameSeed, int round) {
+        return mix(gameSeed + round * goldenGamma);
+    }
+
+    /**
+     * Shuffles the first size cards (Fisher-Yates) with the numbers of a SplitMix64 generator started at the seed,
+     * the generator of SplittableRandom. It lives in a local variable, so rooms share no random generator
+     * and shuffling allocates nothing.
+     */
+    static void shuffle(byte[] cards, int size, long seed) {
+        long next = seed;
+        for (int i = size - 1; i > 0; i--) {
+            next += goldenGamma;
+            // the upper 31 bits scaled to 0..i
+            int j = (int) (((mix(next) >>> 33) * (i + 1)) >>> 31);
+            byte swap = cards[i];
+            cards[i] = cards[j];
+            cards[j] = swap;
+        }
+    }
+
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * Deals the cards the viewer can't see anew: the deck, the card put aside face down and the hands of the other seats
+     * change places at random, everything the viewer knows (own hand, cards on the table, hands it has seen) stays. A search can then play on
+     * a world that is possible from the viewer's point of view, instead of cheating with the real hands (see game.bot.MctsBot).
+     *
+     * @param state  to change, in the middle of a round
+     * @param viewer seat whose knowledge is kept
+     * @param random to shuffle with
+     */
+    public static void redeal(GameState state, int viewer, Random random) {
+        // the slots of the hidden cards: 0-15 in the deck, 16-23 in the hands, 24 the reserve card
+        int[] slots = state.hiddenSlots;
+        byte[] cards = state.hiddenCards;
+        int count = 0;
+        for (int i = state.deckTop; i < Cards.deckSize; i++) {
+            slots[count] = i;
+            cards[count++] = state.deck[i];
+        }
+        for (int seat = 0; seat < state.playerCount; seat++) {
+            if (seat != viewer && state.getKnownCard(viewer, seat) == Cards.NONE) {
+                for (int slot = seat * 2; slot < seat * 2 + 2; slot++) {
+                    if (state.hands[slot] != Cards.NONE) {
+                        slots[count] = Cards.deckSize + slot;
+                        cards[count++] = state.hands[slot];
+                    }
+                }
+                // what the others knew about this hand does not hold in the new world
+                for (int other = 0; other < state.playerCount; other++) {
+                    state.knownCards[other * GameState.maxPlayers + seat] = Cards.NONE;
+                }
+            }
+        }
+        if (state.reserveCard != Cards.NONE) {
+            slots[count] = Cards.deckSize + GameState.maxPlayers * 2;
+            cards[count++] = state.reserveCard;
+        }
+        for (int i = count - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            byte swap = cards[i];
+            cards[i] = cards[j];
+            cards[j] = swap;
+        }
+        for (int i = 0; i < count; i++) {
+            int slot = slots[i];
+            if (slot < Cards.deckSize) {
+                state.deck[slot] = cards[i];
+            } else if (slot < Cards.deckSize + GameState.maxPlayers * 2) {
+                state.hands[slot - Cards.deckSize] = cards[i];
+            } else {
+                state.reserveCard = cards[i];
+            }
+        }
+    }
+
+    /**
+     * Checks if the active seat may make the move right now.
+     *
+     * @return 0 if the move is allowed, otherwise one of the reasons above
+     */
+    public static int check(GameState state, int move) {
+        if (state.phase != GameState.TURN) {
+            return NOT_YOUR_TURN;
+        }
+        int seat = state.activeSeat;
+        int card = Move.card(move);
+        if (card == Cards.NONE || !state.hasCard(seat, card)) {
+            return NOT_IN_HAND;
+        }
+        if (card != Cards.COUNTESS && mustPlayCountess(state, seat)) {
+            return MUST_PLAY_COUNTESS;
+        }
+        if (!Cards.needsTarget(card)) {
+            return 0;
+        }
+        int result = checkTarget(state, seat, Move.target(move), card);
+        if (result != 0) {
+            return result;
+        }
+        if (card == Cards.GUARD && Move.target(move) != seat) {
+            int guess = Move.guess(move);
+            if (guess <= Cards.GUARD || guess > Cards.PRINCESS) {
+                return INVALID_GUESS;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * A target must still be in the round and not protected by the Handmaid.
+     * Only the Prince may always target its own player, the other cards only if every other player is protected.
+     *
+     * @return 0 if seat may play the card on target, otherwise one of the reasons above
+     */
+    public static int checkTarget(GameState state, int seat, int target, int card) {
+        if (target >= state.playerCount || !state.isInRound(target)) {
+            return INVALID_TARGET;
+        }
+        if (target == seat) {
+            return card == Cards.PRINCE || !hasOtherTarget(state, seat) ? 0 : TARGET_SELF;
+        }
+        return state.isProtected(target) ? TARGET_PROTECTED : 0;
+    }
+
+    /**
+     * @return true if there is another player in the round that is not protected
+     */
+    public static boolean hasOtherTarget(GameState state, int seat) {
+        return (state.inRound & ~state.protectedSeats & ~(1 << seat)) != 0;
+    }
+
+    /**
+     * @return true if the seat holds the Countess together with the King or the Prince
+     */
+    public static boolean mustPlayCountess(GameState state, int seat) {
+        return state.hasCard(seat, Cards.COUNTESS) && (state.hasCard(seat, Cards.KING) || state.hasCard(seat, Cards.PRINCE));
+    }
+
+    /**
+     * Writes every move the active seat may make into moves.
+     *
+     * @param moves array with room for at least 64 moves
+     * @return number of moves
+     */
+    public static int legalMoves(GameState state, int[] moves) {
+        int count = 0;
+        int seat = state.activeSeat;
+        for (int slot = 0; slot < 2; slot++) {
+            int card = state.hands[seat * 2 + slot];
+            // the same card twice in hand are the same moves
+            if (card == Cards.NONE || slot == 1 && card == state.hands[seat * 2]) {
+                continue;
+            }
+            if (!Cards.needsTarget(card)) {
+                if (check(state, Move.of(card)) == 0) {
+                    moves[count++] = Move.of(card);
+                }
+                continue;
+            }
+            for (int target = 0; target < state.playerCount; target++) {
+                if (card == Cards.GUARD && target != seat) {
+                    for (int guess = Cards.PRIEST; guess <= Cards.PRINCESS; guess++) {
+                        int move = Move.of(card, target, guess);
+                        if (check(state, move) == 0) {
+                            moves[count++] = move;
+                        }
+                    }
+                } else if (check(state, Move.of(card, target)) == 0) {
+                    moves[count++] = Move.of(card, target);
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Plays a card of the active seat, resolves its effect and moves the game on:
+     * either to the turn of the next seat or, if the deck is empty or only one seat is left, to the end of the round.
+     *
+     * @param state of the game
+     * @param move  see Move
+     * @return number of events, or one of the reasons above if the move is not allowed (nothing changed then)
+     */
+    public static int apply(GameState state, int move) {
+        int result = check(state, move);
+        if (result != 0) {
+            return result;
+        }
+        state.eventCount = 0;
+        int seat = state.activeSeat;
+        byte card = (byte) Move.card(move);
+        int target = Cards.needsTarget(card) ? Move.target(move) : Move.noTarget;
+        int guess = card == Cards.GUARD ? Move.guess(move) : Cards.NONE;
+
+        removeFromHand(state, seat, card);
+        putFaceUp(state, card);
+        forgetPlayedCard(state, seat, card);
+        emit(state, Event.CARD_PLAYED, seat, target, card, guess);
+
+        switch (card) {
+            case Cards.GUARD:
+                if (target == seat) {
+                    emit(state, Event.NO_EFFECT, seat, target, card, 0);
+                } else if (state.hands[target * 2] == guess) {
+                    emit(state, Event.GUESSED_RIGHT, seat, target, guess, 0);
+                    knockOut(state, target, seat, card);
+                } else {
+                    emit(state, Event.GUESSED_WRONG, seat, target, guess, 0);
+                }
+                break;
+            case Cards.PRIEST:
+                learn(state, seat, target, state.hands[target * 2]);
+                emit(state, Event.CARD_SEEN, seat, target, state.hands[target * 2], 0);
+                break;
+            case Cards.BARON:
+                if (target == seat) {
+                    emit(state, Event.NO_EFFECT, seat, target, card, 0);
+                    break;
+                }
+                byte own = state.hands[seat * 2];
+                byte other = state.hands[target * 2];
+                if (own < other) {
+                    knockOut(state, seat, target, card);
+                } else if (own > other) {
+                    knockOut(state, target, seat, card);
+                } else {
+                    // both have seen the same card as their own
+                    learn(state, seat, target, other);
+                    learn(state, target, seat, own);
+                    emit(state, Event.BARON_TIE, seat, target, Cards.NONE, 0);
+                }
+                break;
+            case Cards.HANDMAID:
+                state.protectedSeats |= 1 << seat;
+                emit(state, Event.PROTECTED, seat, Move.noTarget, card, 0);
+                break;
+            case Cards.PRINCE:
+                byte discarded = state.hands[target * 2];
+                state.hands[target * 2] = Cards.NONE;
+                putFaceUp(state, discarded);
+                forgetHand(state, target);
+                emit(state, Event.CARD_DISCARDED, target, seat, discarded, 0);
+                if (discarded == Cards.PRINCESS) {
+                    knockOut(state, target, seat, card);
+                } else {
+                    draw(state, target);
+                }
+                break;
+            case Cards.KING:
+                if (target == seat) {
+                    emit(state, Event.NO_EFFECT, seat, target, card, 0);
+                    break;
+                }
+                byte mine = state.hands[seat * 2];
+                state.hands[seat * 2] = state.hands[target * 2];
+                state.hands[target * 2] = mine;
+                tradeKnowledge(state, seat, target);
+                emit(state, Event.CARD_RECEIVED, seat, target, state.hands[seat * 2], 0);
+                emit(state, Event.CARD_RECEIVED, target, seat, mine, 0);
+                break;
+            case Cards.PRINCESS:
+                knockOut(state, seat, seat, card);
+                break;
+            default:
+                // the Countess does nothing
+                break;
+        }
+
+        state.turn++;
+        if (state.deckTop == Cards.deckSize || Integer.bitCount(state.inRound) <= 1) {
+            endRound(state);
+        } else {
+            int next = seat;
+            do {
+                next = (next + 1) % state.playerCount;
+            } while (!state.isInRound(next));
+            state.activeSeat = next;
+            startTurn(state);
+        }
+        return state.eventCount;
+    }
+
+    /**
+     * The protection of the Handmaid ends when the seat's next turn starts, then it draws its second card.
+     */
+    private static void startTurn(GameState state) {
+        int seat = state.activeSeat;
+        state.protectedSeats &= ~(1 << seat);
+        emit(state, Event.TURN_STARTED, seat, Move.noTarget, Cards.NONE, state.turn);
+        draw(state, seat);
+    }
+
+    /**
+     * Draws the top card of the deck into the free slot of the seat, or the reserve card if the deck is empty.
+     */
+    private static void draw(GameState state, int seat) {
+        byte card;
+        if (state.deckTop < Cards.deckSize) {
+            card = state.deck[state.deckTop++];
+        } else {
+            card = state.reserveCard;
+            state.reserveCard = Cards.NONE;
+        }
+        int slot = state.hands[seat * 2] == Cards.NONE ? seat * 2 : seat * 2 + 1;
+        state.hands[slot] = card;
+        emit(state, Event.CARD_DRAWN, seat, Move.noTarget, card, 0);
+    }
+
+    /**
+     * Removes one copy of the card from the hand, the other card moves to slot 0.
+     */
+    private static void removeFromHand(GameState state, int seat, byte card) {
+        if (state.hands[seat * 2] == card) {
+            state.hands[seat * 2] = state.hands[seat * 2 + 1];
+        }
+        state.hands[seat * 2 + 1] = Cards.NONE;
+    }
+
+    /**
+     * Takes the seat out of the round. The card in its hand is shown and goes to the played cards.
+     */
+    private static void knockOut(GameState state, int seat, int by, byte cause) {
+        byte card = state.hands[seat * 2];
+        state.hands[seat * 2] = Cards.NONE;
+        state.hands[seat * 2 + 1] = Cards.NONE;
+        if (card != Cards.NONE) {
+            putFaceUp(state, card);
+        }
+        state.inRound &= ~(1 << seat);
+        state.protectedSeats &= ~(1 << seat);
+        forgetHand(state, seat);
+        emit(state, Event.PLAYER_OUT, seat, by, card, cause);
+    }
+
+    /**
+     * The seat with the highest card wins the round (the first one in seat order on a tie) and starts the next round.
+     * The game is over once a seat has the points needed to win.
+     */
+    private static void endRound(GameState state) {
+        int winner = -1;
+        for (int seat = 0; seat < state.playerCount; seat++) {
+            if (state.isInRound(seat) && (winner < 0 || state.hands[seat * 2] > state.hands[winner * 2])) {
+                winner = seat;
+            }
+        }
+        state.points[winner]++;
+        state.activeSeat = winner;
+        emit(state, Event.ROUND_WON, winner, Move.noTarget, state.hands[winner * 2], state.points[winner]);
+        if (state.points[winner] >= state.winningPoints) {
+            state.phase = GameState.GAME_OVER;
+            emit(state, Event.GAME_WON, winner, Move.noTarget, Cards.NONE, state.points[winner]);
+        } else {
+            state.phase = GameState.ROUND_OVER;
+        }
+    }
+
+    /**
+     * Puts a card face up on the table. Only the copies of every card are counted: the odds (see Odds) and the /allCards
+     * command need no more, the order of the cards is in the events.
+     */
+    private static void putFaceUp(GameState state, byte card) {
+        state.playedCount++;
+        state.faceUpCounts[card]++;
+    }
+
+    /**
+     * The viewer has seen the card in the hand of the holder (Priest, Baron tie).
+     */
+    private static void learn(GameState state, int viewer, int holder, byte card) {
+        // a Priest on the own seat teaches nothing
+        if (viewer != holder) {
+            state.knownCards[viewer * GameState.maxPlayers + holder] = card;
+        }
+    }
+
+    /**
+     * Nobody knows the hand of the seat any more, it was discarded or is empty.
+     */
+    private static void forgetHand(GameState state, int seat) {
+        for (int viewer = 0; viewer < state.playerCount; viewer++) {
+            state.knownCards[viewer * GameState.maxPlayers + seat] = Cards.NONE;
+        }
+    }
+
+    /**
+     * The seat played a card: if it is the card the others knew, they can't tell if the seat played the known card
+     * or the one it has just drawn. Any other card was the drawn one, the known card is still in the hand.
+     */
+    private static void forgetPlayedCard(GameState state, int seat, byte card) {
+        for (int viewer = 0; viewer < state.playerCount; viewer++) {
+            if (state.knownCards[viewer * GameState.maxPlayers + seat] == card) {
+                state.knownCards[viewer * GameState.maxPlayers + seat] = Cards.NONE;
+            }
+        }
+    }
+
+    /**
+     * The King traded the hands of seat and target: whatever was known about one hand is now known about the other,
+     * and both know the card they gave away.
+     */
+    private static void tradeKnowledge(GameState state, int seat, int target) {
+        byte[] known = state.knownCards;
+        for (int viewer = 0; viewer < state.playerCount; viewer++) {
+            int row = viewer * GameState.maxPlayers;
+            byte swap = known[row + seat];
+            known[row + seat] = known[row + target];
+            known[row + target] = swap;
+        }
+        known[seat * GameState.maxPlayers + seat] = Cards.NONE;
+        known[target * GameState.maxPlayers + target] = Cards.NONE;
+        learn(state, seat, target, state.hands[target * 2]);
+        learn(state, target, seat, state.hands[seat * 2]);
+    }
+
+    private static void emit(GameState state, int type, int seat, int target, int card, int extra) {
+        state.events[state.eventCount++] = Event.of(type, seat, target, card, extra);
+    }
+}
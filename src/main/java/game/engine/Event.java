@@ -0,0 +1,67 @@
+package game.engine;
+
+/**
+ * Everything that happens in a game is reported as an event packed into one int:
+ * bits 0-7 the type, bits 8-11 the seat, bits 12-15 a second seat, bits 16-23 a card, bits 24-31 an extra value.
+ * Events marked private must only be shown to the seat they belong to.
+ */
+public final class Event {
+    // a new round was dealt; extra = number of the round
+    public static final int ROUND_STARTED = 1;
+    // a card was put aside face up at the start of a two-player round
+    public static final int CARD_SET_ASIDE = 2;
+    // private: seat drew card
+    public static final int CARD_DRAWN = 3;
+    // it's the turn of seat; extra = number of the turn in the round
+    public static final int TURN_STARTED = 4;
+    // seat played card on target (noTarget for cards without a target); extra = guessed card
+    public static final int CARD_PLAYED = 5;
+    // the card of seat had no effect, because seat had to choose itself
+    public static final int NO_EFFECT = 6;
+    // seat is protected by the Handmaid until its next turn
+    public static final int PROTECTED = 7;
+    // seat guessed card of target right / wrong
+    public static final int GUESSED_RIGHT = 8;
+    public static final int GUESSED_WRONG = 9;
+    // private: seat saw card of target (Priest)
+    public static final int CARD_SEEN = 10;
+    // seat and target have cards of the same value (Baron)
+    public static final int BARON_TIE = 11;
+    // seat is out of the round and showed card; target = the seat that knocked it out; extra = the card that did it
+    public static final int PLAYER_OUT = 12;
+    // seat discarded card because of the Prince
+    public static final int CARD_DISCARDED = 13;
+    // private: seat got card from target (King)
+    public static final int CARD_RECEIVED = 14;
+    // seat won the round with card; extra = points of seat now
+    public static final int ROUND_WON = 15;
+    // seat won the game
+    public static final int GAME_WON = 16;
+
+    private Event() {
+    }
+
+    public static int of(int type, int seat, int target, int card, int extra) {
+        return type | seat << 8 | target << 12 | card << 16 | extra << 24;
+    }
+
+    public static int type(int event) {
+        return event & 0xFF;
+    }
+
+    public static int seat(int event) {
+        return (event >> 8) & 0xF;
+    }
+
+    public static int target(int event) {
+        return (event >> 12) & 0xF;
+    }
+
+    public static int card(int event) {
+        return (event >> 16) & 0xFF;
+    }
+
+    public static int extra(int event) {
+        return (event >>> 24) & 0xFF;
+    }
+}
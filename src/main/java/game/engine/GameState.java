@@ -0,0 +1,229 @@
+package game.engine;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The complete state of one game of Love Letter in a few primitive arrays.
+ * Cards are byte ids (see Cards), every seat has a hand of two slots, the deck is an array with a cursor
+ * and the seats in the round and the protected seats are bit masks. Nothing here knows about players, rooms or sockets:
+ * the state is only changed by the Engine, the server reads it to build its messages.
+ * A state is reused for every round and game, so playing allocates nothing.
+ */
+public class GameState {
+    public static final int maxPlayers = 4;
+    // bytes written by writeTo()
+    public static final int snapshotLength = 18 + Cards.deckSize + Cards.PRINCESS + maxPlayers * 3 + maxPlayers * maxPlayers;
+    // phases of the game
+    public static final int NOT_STARTED = 0;
+    public static final int TURN = 1;
+    public static final int ROUND_OVER = 2;
+    public static final int GAME_OVER = 3;
+
+    int playerCount;
+    int winningPoints;
+    // every deck of the game follows from this seed (see Engine.roundSeed()), so any round can be dealt again
+    long seed;
+    int phase = NOT_STARTED;
+    int round;
+    int turn;
+    int activeSeat;
+    // the cards are drawn from deck[deckTop] upwards, the deck is empty when deckTop reaches deckSize
+    final byte[] deck = new byte[Cards.deckSize];
+    int deckTop = Cards.deckSize;
+    // the card that is put aside face down at the start of every round, drawn by the Prince when the deck is empty
+    byte reserveCard;
+    // slot 0 is the card a seat keeps, slot 1 the card it has drawn this turn
+    final byte[] hands = new byte[maxPlayers * 2];
+    int inRound;
+    int protectedSeats;
+    final int[] points = new int[maxPlayers];
+    // the cards face up on the table (played, discarded, shown by knocked out players and set aside with two players):
+    // how many copies of every card, by id, and how many cards in all
+    final int[] faceUpCounts = new int[Cards.PRINCESS + 1];
+    int playedCount;
+    // the card a seat knows another seat holds, from the Priest, a tie of the Baron or the King, by viewer * maxPlayers + holder;
+    // Cards.NONE if it does not know it (any more)
+    final byte[] knownCards = new byte[maxPlayers * maxPlayers];
+    // buffers of Engine.redeal(), so it allocates nothing
+    final int[] hiddenSlots = new int[Cards.deckSize + maxPlayers * 2 + 1];
+    final byte[] hiddenCards = new byte[Cards.deckSize + maxPlayers * 2 + 1];
+    // the events of the last call to the Engine
+    final int[] events = new int[64];
+    int eventCount;
+
+    public int getPlayerCount() {
+        return this.playerCount;
+    }
+
+    public int getWinningPoints() {
+        return this.winningPoints;
+    }
+
+    /**
+     * @return the seed the game was started with, see Engine.newGame()
+     */
+    public long getSeed() {
+        return this.seed;
+    }
+
+    public int getPhase() {
+        return this.phase;
+    }
+
+    public int getRound() {
+        return this.round;
+    }
+
+    public int getTurn() {
+        return this.turn;
+    }
+
+    public int getActiveSeat() {
+        return this.activeSeat;
+    }
+
+    /**
+     * @return number of cards left in the deck (without the reserve card)
+     */
+    public int getDeckSize() {
+        return Cards.deckSize - this.deckTop;
+    }
+
+    /**
+     * @param index 0 to Cards.deckSize - 1
+     * @return card at the index of the deck as it was shuffled for the round (cards already drawn included)
+     */
+    public byte getDeckCard(int index) {
+        return this.deck[index];
+    }
+
+    /**
+     * @param seat of the player
+     * @param slot 0 or 1
+     * @return card in the slot or Cards.NONE
+     */
+    public byte getHand(int seat, int slot) {
+        return this.hands[seat * 2 + slot];
+    }
+
+    public boolean hasCard(int seat, int card) {
+        return this.hands[seat * 2] == card || this.hands[seat * 2 + 1] == card;
+    }
+
+    public boolean isInRound(int seat) {
+        return (this.inRound & 1 << seat) != 0;
+    }
+
+    public boolean isProtected(int seat) {
+        return (this.protectedSeats & 1 << seat) != 0;
+    }
+
+    public int getPoints(int seat) {
+        return this.points[seat];
+    }
+
+    public int getPlayedCount() {
+        return this.playedCount;
+    }
+
+    /**
+     * @param card id
+     * @return how many copies of the card are face up on the table this round
+     */
+    public int getFaceUpCount(int card) {
+        return this.faceUpCounts[card];
+    }
+
+    /**
+     * @param viewer seat that may know the card
+     * @param holder seat whose hand is known
+     * @return the card the viewer knows the holder has in hand, or Cards.NONE
+     */
+    public byte getKnownCard(int viewer, int holder) {
+        return this.knownCards[viewer * maxPlayers + holder];
+    }
+
+    public int getEventCount() {
+        return this.eventCount;
+    }
+
+    public int getEvent(int index) {
+        return this.events[index];
+    }
+
+    /**
+     * Writes the state between two engine calls (without its events) as snapshotLength bytes, see readFrom().
+     *
+     * @param buffer with room for snapshotLength bytes
+     */
+    public void writeTo(ByteBuffer buffer) {
+        buffer.put((byte) playerCount).put((byte) winningPoints).put((byte) phase).put((byte) round)
+                .put((byte) turn).put((byte) activeSeat).put(deck).put((byte) deckTop).put(reserveCard)
+                .put(hands).put((byte) inRound).put((byte) protectedSeats);
+        for (int seat = 0; seat < maxPlayers; seat++) {
+            buffer.put((byte) points[seat]);
+        }
+        for (int card = Cards.GUARD; card <= Cards.PRINCESS; card++) {
+            buffer.put((byte) faceUpCounts[card]);
+        }
+        buffer.putLong(seed);
+        buffer.put(knownCards);
+    }
+
+    /**
+     * Makes this state the one that was written by writeTo(), e.g. to go on with a game after the server was restarted.
+     *
+     * @param buffer positioned at the first byte of the state
+     */
+    public void readFrom(ByteBuffer buffer) {
+        playerCount = buffer.get();
+        winningPoints = buffer.get();
+        phase = buffer.get();
+        round = buffer.get() & 0xFF;
+        turn = buffer.get() & 0xFF;
+        activeSeat = buffer.get();
+        buffer.get(deck);
+        deckTop = buffer.get();
+        reserveCard = buffer.get();
+        buffer.get(hands);
+        inRound = buffer.get();
+        protectedSeats = buffer.get();
+        for (int seat = 0; seat < maxPlayers; seat++) {
+            points[seat] = buffer.get();
+        }
+        playedCount = 0;
+        for (int card = Cards.GUARD; card <= Cards.PRINCESS; card++) {
+            faceUpCounts[card] = buffer.get();
+            playedCount += faceUpCounts[card];
+        }
+        seed = buffer.getLong();
+        buffer.get(knownCards);
+        eventCount = 0;
+    }
+
+    /**
+     * Makes this state an exact copy of another one, e.g. to try out moves without touching the real game.
+     *
+     * @param other state to copy
+     */
+    public void copyFrom(GameState other) {
+        this.playerCount = other.playerCount;
+        this.winningPoints = other.winningPoints;
+        this.seed = other.seed;
+        this.phase = other.phase;
+        this.round = other.round;
+        this.turn = other.turn;
+        this.activeSeat = other.activeSeat;
+        System.arraycopy(other.deck, 0, this.deck, 0, Cards.deckSize);
+        this.deckTop = other.deckTop;
+        this.reserveCard = other.reserveCard;
+        System.arraycopy(other.hands, 0, this.hands, 0, this.hands.length);
+        this.inRound = other.inRound;
+        this.protectedSeats = other.protectedSeats;
+        System.arraycopy(other.points, 0, this.points, 0, maxPlayers);
+        this.playedCount = other.playedCount;
+        System.arraycopy(other.faceUpCounts, 0, this.faceUpCounts, 0, this.faceUpCounts.length);
+        System.arraycopy(other.knownCards, 0, this.knownCards, 0, this.knownCards.length);
+        this.eventCount = 0;
+    }
+}
@@ -0,0 +1,39 @@
+package game.engine;
+
+/**
+ * A move packed into one int, so playing a card allocates nothing:
+ * bits 0-3 the played card, bits 4-7 the target seat, bits 8-11 the card guessed with the Guard.
+ */
+public final class Move {
+    public static final int noTarget = 15;
+
+    private Move() {
+    }
+
+    /**
+     * A card without a target (Handmaid, Countess, Princess).
+     */
+    public static int of(int card) {
+        return of(card, noTarget, Cards.NONE);
+    }
+
+    public static int of(int card, int target) {
+        return of(card, target, Cards.NONE);
+    }
+
+    public static int of(int card, int target, int guess) {
+        return card | target << 4 | guess << 8;
+    }
+
+    public static int card(int move) {
+        return move & 0xF;
+    }
+
+    public static int target(int move) {
+        return (move >> 4) & 0xF;
+    }
+
+    public static int guess(int move) {
+        return (move >> 8) & 0xF;
+    }
+}
@@ -0,0 +1,106 @@
+package game.engine;
+
+/**
+ * Card counting from the point of view of one seat: what can the seat know about the cards of the others?
+ * It knows its own hand, every card that is face up on the table (see GameState.getFaceUpCount()) and the hands it has
+ * seen with the Priest, a tie of the Baron or the King (see GameState.getKnownCard());
+ * every other card, in the deck, put aside face down or in the hand of another player, is equally likely any of the cards
+ * it has not seen yet. The Engine counts all of this while it plays, so every answer takes (almost) constant time.
+ * Used by the /odds command and by the bots (see game.bot.GreedyBot).
+ */
+public final class Odds {
+
+    private Odds() {
+    }
+
+    /**
+     * @param viewer seat whose point of view is taken
+     * @param card   id
+     * @return how many copies of the card the viewer has not seen this round
+     */
+    public static int unseen(GameState state, int viewer, int card) {
+        int count = Cards.count(card) - state.faceUpCounts[card];
+        if (state.hands[viewer * 2] == card) {
+            count--;
+        }
+        if (state.hands[viewer * 2 + 1] == card) {
+            count--;
+        }
+        for (int holder = 0; holder < state.playerCount; holder++) {
+            if (holder != viewer && state.isInRound(holder) && state.getKnownCard(viewer, holder) == card) {
+                count--;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @param viewer seat whose point of view is taken
+     * @return number of cards the viewer can't see: the deck, the card put aside face down and the hands of the others
+     * it has not seen
+     */
+    public static int unknownCards(GameState state, int viewer) {
+        int count = Cards.deckSize - state.playedCount;
+        if (state.hands[viewer * 2] != Cards.NONE) {
+            count--;
+        }
+        if (state.hands[viewer * 2 + 1] != Cards.NONE) {
+            count--;
+        }
+        for (int holder = 0; holder < state.playerCount; holder++) {
+            if (holder != viewer && state.isInRound(holder) && state.getKnownCard(viewer, holder) != Cards.NONE) {
+                count--;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @param viewer seat whose point of view is taken
+     * @param holder seat whose hand is guessed
+     * @param card   id
+     * @return probability from 0 to 1 that the holder has the card in hand, as far as the viewer can tell
+     */
+    public static double probability(GameState state, int viewer, int holder, int card) {
+        if (holder == viewer) {
+            return state.hasCard(viewer, card) ? 1 : 0;
+        }
+        if (!state.isInRound(holder)) {
+            return 0;
+        }
+        int known = state.getKnownCard(viewer, holder);
+        if (known != Cards.NONE) {
+            return known == card ? 1 : 0;
+        }
+        int unknown = unknownCards(state, viewer);
+        return unknown == 0 ? 0 : (double) unseen(state, viewer, card) / unknown;
+    }
+
+    /**
+     * @param viewer seat whose point of view is taken
+     * @return the best guess for the Guard: the card other than the Guard with the most unseen copies, the higher one on a tie
+     */
+    public static int mostLikelyGuess(GameState state, int viewer) {
+        int best = Cards.PRIEST;
+        int bestUnseen = unseen(state, viewer, best);
+        for (int card = Cards.BARON; card <= Cards.PRINCESS; card++) {
+            int count = unseen(state, viewer, card);
+            if (count >= bestUnseen) {
+                best = card;
+                bestUnseen = count;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * @param viewer seat whose point of view is taken
+     * @param holder seat whose hand is guessed
+     * @return the best guess for the Guard against the holder: the card the viewer knows he/she has, if it is no Guard,
+     * otherwise the most likely card (see above)
+     */
+    public static int mostLikelyGuess(GameState state, int viewer, int holder) {
+        int known = state.getKnownCard(viewer, holder);
+        return known > Cards.GUARD ? known : mostLikelyGuess(state, viewer);
+    }
+}
@@ -0,0 +1,75 @@
+package game.sim;
+
+import game.engine.Cards;
+
+import java.io.PrintStream;
+
+/**
+ * The numbers collected by the Simulator. Every worker fills its own stats, they are merged at the end.
+ */
+public class SimulationStats {
+    private final String[] policies;
+    long games;
+    long rounds;
+    long turns;
+    // wins by the position of the policy on the command line
+    final long[] wins;
+    // how often every card was played, by id
+    final long[] cardsPlayed = new long[Cards.PRINCESS + 1];
+    // how many rounds ended after a number of turns (a round has 16 turns at most)
+    final long[] roundLengths = new long[Cards.deckSize + 1];
+
+    public SimulationStats(String[] policies) {
+        this.policies = policies;
+        this.wins = new long[policies.length];
+    }
+
+    public long getGames() {
+        return this.games;
+    }
+
+    /**
+     * Adds the numbers of another worker to these.
+     *
+     * @param other stats to add
+     * @return this
+     */
+    public SimulationStats merge(SimulationStats other) {
+        games += other.games;
+        rounds += other.rounds;
+        turns += other.turns;
+        for (int i = 0; i < wins.length; i++) {
+            wins[i] += other.wins[i];
+        }
+        for (int i = 0; i < cardsPlayed.length; i++) {
+            cardsPlayed[i] += other.cardsPlayed[i];
+        }
+        for (int i = 0; i < roundLengths.length; i++) {
+            roundLengths[i] += other.roundLengths[i];
+        }
+        return this;
+    }
+
+    public void print(PrintStream out) {
+        out.println("games: " + games + ", rounds: " + rounds + " (" + format((double) rounds / games) + " per game)"
+                + ", turns: " + turns + " (" + format((double) turns / rounds) + " per round)");
+        out.println("win rates:");
+        for (int i = 0; i < policies.length; i++) {
+            out.println("  player " + (i + 1) + " (" + policies[i] + "): " + format(100.0 * wins[i] / games) + "%");
+        }
+        out.println("cards played:");
+        for (int card = Cards.GUARD; card <= Cards.PRINCESS; card++) {
+            out.println("  " + Cards.name(card) + ": " + format(100.0 * cardsPlayed[card] / turns) + "% of the turns");
+        }
+        out.println("turns per round:");
+        for (int length = 1; length < roundLengths.length; length++) {
+            if (roundLengths[length] > 0) {
+                out.println("  " + length + ": " + format(100.0 * roundLengths[length] / rounds) + "%");
+            }
+        }
+    }
+
+    private static String format(double number) {
+        return String.format("%.2f", number);
+    }
+}
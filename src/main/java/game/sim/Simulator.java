@@ -0,0 +1,112 @@
+package game.sim;
+
+import game.bot.Bot;
+import game.bot.Bots;
+import game.engine.Engine;
+import game.engine.GameState;
+import game.engine.Move;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Plays complete games between bots on the game engine, without sockets and without messages.
+ * The games are split into batches that run on all cores of the fork/join pool; every batch has its own
+ * state, bots and stats, so the workers share nothing until the stats are merged.
+ * The seats are rotated from game to game, so no policy has the advantage of always sitting first.
+ * Every game gets its own seed from the seed of the simulation and its number, so the same seed plays the same games
+ * however they are split between the cores (as long as the bots don't search against the clock, like MctsBot).
+ */
+public class Simulator {
+    // games played by one task without splitting it further
+    private static final long batchSize = 10000;
+    private final String[] policies;
+    private final long seed;
+
+    /**
+     * @param policies one bot policy per player (2 to 4), see Bots
+     * @param seed     of the simulation
+     */
+    public Simulator(String[] policies, long seed) {
+        if (policies.length < 2 || policies.length > GameState.maxPlayers) {
+            throw new IllegalArgumentException("A game needs 2 to 4 players");
+        }
+        for (String policy : policies) {
+            // fail before any thread starts
+            Bots.create(policy);
+        }
+        this.policies = policies;
+        this.seed = seed;
+    }
+
+    /**
+     * @param games number of games to play
+     * @return the stats of all games
+     */
+    public SimulationStats run(long games) {
+        return ForkJoinPool.commonPool().invoke(new Batch(0, games));
+    }
+
+    private class Batch extends RecursiveTask<SimulationStats> {
+        private final long from;
+        private final long to;
+
+        Batch(long from, long to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected SimulationStats compute() {
+            if (to - from <= batchSize) {
+                return playGames(from, to);
+            }
+            long middle = (from + to) >>> 1;
+            Batch left = new Batch(from, middle);
+            left.fork();
+            SimulationStats right = new Batch(middle, to).compute();
+            return right.merge(left.join());
+        }
+    }
+
+    /**
+     * Plays the games with the numbers from (inclusive) to (exclusive).
+     */
+    SimulationStats playGames(long from, long to) {
+        int players = policies.length;
+        Bot[] bots = new Bot[players];
+        for (int i = 0; i < players; i++) {
+            bots[i] = Bots.create(policies[i]);
+        }
+        SimulationStats stats = new SimulationStats(policies);
+        GameState state = new GameState();
+        int[] moves = new int[64];
+        // one generator per batch, so the workers don't share one
+        Random random = new Random();
+
+        for (long game = from; game < to; game++) {
+            // seat s is played by the policy at position (s + rotation) % players
+            int rotation = (int) (game % players);
+            random.setSeed(seed + game);
+            Engine.newGame(state, players, 0, random.nextLong());
+            while (state.getPhase() != GameState.GAME_OVER) {
+                Engine.startRound(state);
+                stats.rounds++;
+                while (state.getPhase() == GameState.TURN) {
+                    int count = Engine.legalMoves(state, moves);
+                    Bot bot = bots[(state.getActiveSeat() + rotation) % players];
+                    int move = bot.chooseMove(state, moves, count, random);
+                    Engine.apply(state, move);
+                    stats.turns++;
+                    stats.cardsPlayed[Move.card(move)]++;
+                }
+                stats.roundLengths[state.getTurn() - 1]++;
+            }
+            // the winner of the last round is the active seat
+            stats.wins[(state.getActiveSeat() + rotation) % players]++;
+            stats.games++;
+        }
+        return stats;
+    }
+}
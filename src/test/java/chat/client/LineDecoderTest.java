@@ -0,0 +1,164 @@
+package chat.client;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+/**
+ * Checks LineDecoder and the command table of Command against the string checks the ClientHandler made before:
+ * "bye" leaves, a '/' with the exact name of a command (the case matters) is the command, a room command may have
+ * an argument after a space, any other "/word text" whispers to the player "word".
+ */
+class LineDecoderTest {
+
+    /**
+     * The same classification with Strings, like the ClientHandler did it line by line.
+     */
+    private static int expected(String line) {
+        if (line.isEmpty()) {
+            return LineDecoder.EMPTY;
+        }
+        if (!line.startsWith("/")) {
+            return line.equals("bye") ? LineDecoder.BYE : LineDecoder.CHAT;
+        }
+        int space = line.indexOf(' ');
+        String word = line.substring(1, space < 0 ? line.length() : space);
+        Command command = null;
+        for (Command candidate : Command.values()) {
+            if (candidate.getName().equals(word)) {
+                command = candidate;
+            }
+        }
+        if (space < 0) {
+            return command == null ? LineDecoder.UNKNOWN : LineDecoder.COMMAND;
+        }
+        if (command != null && command.getGroup() == Command.Group.ROOM) {
+            return LineDecoder.COMMAND;
+        }
+        return word.isEmpty() ? LineDecoder.UNKNOWN : LineDecoder.WHISPER;
+    }
+
+    private static int decode(String line) {
+        byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+        return LineDecoder.decode(bytes, bytes.length);
+    }
+
+    private static void assertDecodedLikeStrings(String line) {
+        assertEquals(expected(line), LineDecoder.kind(decode(line)), line);
+    }
+
+    @Test
+    void everyCommandIsFound() {
+        for (Command command : Command.values()) {
+            String line = "/" + command.getName();
+            int decoded = decode(line);
+            assertEquals(LineDecoder.COMMAND, LineDecoder.kind(decoded), line);
+            assertSame(command, LineDecoder.command(decoded), line);
+            assertEquals(line.length(), LineDecoder.end(decoded), line);
+        }
+    }
+
+    @Test
+    void roomCommandsTakeAnArgument() {
+        for (Command command : Command.values()) {
+            String line = "/" + command.getName() + " myRoom";
+            int decoded = decode(line);
+            assertDecodedLikeStrings(line);
+            if (command.getGroup() == Command.Group.ROOM) {
+                assertSame(command, LineDecoder.command(decoded), line);
+                assertEquals(command.getName().length() + 1, LineDecoder.end(decoded), line);
+            } else {
+                // "/hand text" whispers to a player called "hand"
+                assertNull(LineDecoder.command(decoded), line);
+            }
+        }
+    }
+
+    @Test
+    void caseMatters() {
+        for (Command command : Command.values()) {
+            String name = command.getName();
+            assertDecodedLikeStrings("/" + name.toUpperCase());
+            assertDecodedLikeStrings("/" + name.toLowerCase());
+            assertDecodedLikeStrings("/" + Character.toUpperCase(name.charAt(0)) + name.substring(1));
+        }
+        assertEquals(LineDecoder.UNKNOWN, LineDecoder.kind(decode("/HELP")));
+        assertEquals(LineDecoder.UNKNOWN, LineDecoder.kind(decode("/endgame")));
+        assertEquals(LineDecoder.UNKNOWN, LineDecoder.kind(decode("/guard")));
+    }
+
+    @Test
+    void prefixesAreNotCommands() {
+        for (Command command : Command.values()) {
+            String name = command.getName();
+            assertDecodedLikeStrings("/" + name.substring(0, name.length() - 1));
+            assertDecodedLikeStrings("/" + name + "x");
+            assertDecodedLikeStrings("/" + name + "queue");
+            assertDecodedLikeStrings("/x" + name);
+        }
+        assertEquals(LineDecoder.UNKNOWN, LineDecoder.kind(decode("/leavequeue")));
+        assertSame(Command.UNQUEUE, LineDecoder.command(decode("/unqueue")));
+        assertSame(Command.QUEUE, LineDecoder.command(decode("/queue 3")));
+    }
+
+    @Test
+    void whispers() {
+        int decoded = decode("/Anna hello there");
+        assertEquals(LineDecoder.WHISPER, LineDecoder.kind(decoded));
+        assertNull(LineDecoder.command(decoded));
+        assertEquals(5, LineDecoder.end(decoded));
+        assertEquals(LineDecoder.WHISPER, LineDecoder.kind(decode("/Anna ")));
+        assertEquals(LineDecoder.WHISPER, LineDecoder.kind(decode("/Anna Maria hi")));
+        assertEquals(LineDecoder.WHISPER, LineDecoder.kind(decode("/Jürgen hallo")));
+        // without a text it is a command nobody knows
+        assertEquals(LineDecoder.UNKNOWN, LineDecoder.kind(decode("/Anna")));
+        assertEquals(LineDecoder.UNKNOWN, LineDecoder.kind(decode("/ hello")));
+        assertEquals(LineDecoder.UNKNOWN, LineDecoder.kind(decode("/")));
+    }
+
+    @Test
+    void byeChatAndEmpty() {
+        assertEquals(LineDecoder.EMPTY, LineDecoder.kind(decode("")));
+        assertEquals(LineDecoder.BYE, LineDecoder.kind(decode("bye")));
+        for (String line : new String[]{"Bye", "bye ", " bye", "byebye", "by", "/bye", "hello", " /help", "héllo"}) {
+            assertDecodedLikeStrings(line);
+        }
+    }
+
+    @Test
+    void lookupInTheMiddleOfALine() {
+        byte[] line = "xx/showHand yy".getBytes(StandardCharsets.US_ASCII);
+        assertSame(Command.SHOW_HAND, Command.lookup(line, 3, 11));
+        assertNull(Command.lookup(line, 3, 10));
+        assertNull(Command.lookup(line, 2, 11));
+    }
+
+    /**
+     * Words that are no command must never be found, whatever bucket of the table they hash to.
+     */
+    @Test
+    void noFalseHits() {
+        Map<String, Command> byName = new HashMap<>();
+        for (Command command : Command.values()) {
+            byName.put(command.getName(), command);
+        }
+        SplittableRandom random = new SplittableRandom(42);
+        String letters = "abcdefghijklmnopqrstuvwxyzACEGHKPS";
+        for (int i = 0; i < 200000; i++) {
+            StringBuilder word = new StringBuilder();
+            int length = 1 + random.nextInt(9);
+            for (int j = 0; j < length; j++) {
+                word.append(letters.charAt(random.nextInt(letters.length())));
+            }
+            byte[] bytes = word.toString().getBytes(StandardCharsets.US_ASCII);
+            assertSame(byName.get(word.toString()), Command.lookup(bytes, 0, bytes.length), word.toString());
+        }
+    }
+}
@@ -0,0 +1,200 @@
+package chat.journal;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Writes records with the JournalWriter and reads them back with the JournalReader, also across segments
+ * and with the last record damaged the ways a crash leaves it: only partly on the disk, or without its length.
+ */
+class JournalTest {
+    @TempDir
+    Path directory;
+
+    /**
+     * A record of the type EVENTS, the data is the number of the record and then as many bytes.
+     */
+    private static byte[] record(int number) {
+        ByteBuffer body = ByteBuffer.allocate(Journal.headerLength + 4 + number % 50);
+        body.put(Journal.EVENTS).putLong(1000 + number % 7).putLong(1600000000000L + number).putInt(number);
+        while (body.hasRemaining()) {
+            body.put((byte) number);
+        }
+        return body.array();
+    }
+
+    private void write(int count, long segmentSize) throws IOException {
+        JournalWriter writer = new JournalWriter(directory, segmentSize);
+        writer.start();
+        for (int i = 0; i < count; i++) {
+            writer.append(record(i));
+        }
+        writer.stop();
+        assertEquals(0, writer.getDropped());
+    }
+
+    /**
+     * @return the number of every record that was read, checked against what was written
+     */
+    private List<Integer> read(JournalReader reader) throws IOException {
+        List<Integer> numbers = new ArrayList<>();
+        while (reader.next()) {
+            ByteBuffer data = reader.getData();
+            int number = data.getInt();
+            assertEquals(Journal.EVENTS, reader.getType());
+            assertEquals(1000 + number % 7, reader.getGame());
+            assertEquals(1600000000000L + number, reader.getTime());
+            assertEquals(number % 50, data.remaining());
+            while (data.hasRemaining()) {
+                assertEquals((byte) number, data.get());
+            }
+            numbers.add(number);
+        }
+        return numbers;
+    }
+
+    private List<Path> segments() throws IOException {
+        List<Path> segments = new ArrayList<>();
+        try (DirectoryStream<Path> paths = Files.newDirectoryStream(directory, "journal-*.seg")) {
+            paths.forEach(segments::add);
+        }
+        segments.sort(null);
+        return segments;
+    }
+
+    /**
+     * @return the position of the last record of the segment
+     */
+    private static int lastRecord(Path segment) throws IOException {
+        ByteBuffer bytes = ByteBuffer.wrap(Files.readAllBytes(segment));
+        int last = -1;
+        while (bytes.remaining() >= 8) {
+            int length = bytes.getInt(bytes.position());
+            if (length == 0) {
+                break;
+            }
+            last = bytes.position();
+            bytes.position(last + 8 + length);
+        }
+        return last;
+    }
+
+    private static void overwrite(Path segment, long position, byte[] bytes) throws IOException {
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(bytes), position);
+        }
+    }
+
+    @Test
+    void recordsComeBackInOrder() throws IOException {
+        write(1000, 1 << 20);
+        JournalReader reader = new JournalReader(directory);
+        List<Integer> numbers = read(reader);
+        assertEquals(1000, numbers.size());
+        for (int i = 0; i < numbers.size(); i++) {
+            assertEquals(i, (int) numbers.get(i));
+        }
+        assertEquals(0, reader.getCorrupted());
+        assertEquals(1, segments().size());
+    }
+
+    @Test
+    void recordsGoOnInTheNextSegment() throws IOException {
+        // about 40 records fit in a segment
+        write(1000, 2048);
+        assertTrue(segments().size() > 20, segments().size() + " segments");
+        JournalReader reader = new JournalReader(directory);
+        List<Integer> numbers = read(reader);
+        assertEquals(1000, numbers.size());
+        for (int i = 0; i < numbers.size(); i++) {
+            assertEquals(i, (int) numbers.get(i));
+        }
+        assertEquals(0, reader.getCorrupted());
+    }
+
+    @Test
+    void aRestartStartsANewSegment() throws IOException {
+        write(10, 1 << 16);
+        write(10, 1 << 16);
+        assertEquals(2, segments().size());
+        List<Integer> numbers = read(new JournalReader(directory));
+        assertEquals(20, numbers.size());
+        assertEquals(9, (int) numbers.get(9));
+        assertEquals(0, (int) numbers.get(10));
+    }
+
+    /**
+     * The server died while the last record was on its way to the disk: its bytes are only partly there.
+     */
+    @Test
+    void tornLastRecordIsSkipped() throws IOException {
+        write(100, 1 << 16);
+        Path segment = segments().get(0);
+        int last = lastRecord(segment);
+        overwrite(segment, last + 8 + 3, new byte[]{0, 0, 0, 0, 0});
+        JournalReader reader = new JournalReader(directory);
+        assertEquals(99, read(reader).size());
+        assertEquals(1, reader.getCorrupted());
+    }
+
+    /**
+     * The length is written last: a record without it was never there, the segment ends before it.
+     */
+    @Test
+    void recordWithoutItsLengthEndsTheSegment() throws IOException {
+        write(100, 1 << 16);
+        Path segment = segments().get(0);
+        overwrite(segment, lastRecord(segment), new byte[4]);
+        JournalReader reader = new JournalReader(directory);
+        assertEquals(99, read(reader).size());
+        assertEquals(0, reader.getCorrupted());
+    }
+
+    /**
+     * The file ends in the middle of the last record: the length points behind its end.
+     */
+    @Test
+    void truncatedSegment() throws IOException {
+        write(100, 1 << 16);
+        Path segment = segments().get(0);
+        int last = lastRecord(segment);
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            channel.truncate(last + 8 + 5);
+        }
+        JournalReader reader = new JournalReader(directory);
+        assertEquals(99, read(reader).size());
+        assertEquals(1, reader.getCorrupted());
+        assertFalse(reader.next());
+    }
+
+    /**
+     * A damaged segment only loses its own tail: the next segment is read as usual.
+     */
+    @Test
+    void damageStaysInItsSegment() throws IOException {
+        write(1000, 2048);
+        List<Path> segments = segments();
+        Path first = segments.get(0);
+        int last = lastRecord(first);
+        overwrite(first, last + 8 + Journal.headerLength, new byte[]{1, 2, 3, 4});
+        JournalReader reader = new JournalReader(directory);
+        List<Integer> numbers = read(reader);
+        assertEquals(999, numbers.size());
+        assertEquals(1, reader.getCorrupted());
+        assertEquals(999, (int) numbers.get(numbers.size() - 1));
+    }
+}
@@ -0,0 +1,134 @@
+package chat.protocol;
+
+import chat.server.Frame;
+import game.engine.Cards;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Encodes every type of message in JSON and in the binary encoding and decodes it again.
+ */
+class MessageCodecTest {
+    private static final Protocol[] structured = {Protocol.JSON, Protocol.BINARY};
+
+    /**
+     * Encodes the message into a frame, checks the length in front and decodes the rest.
+     */
+    private static Message roundTrip(Message message, Protocol protocol) throws IOException {
+        Frame frame = MessageCodec.encode(message, protocol);
+        try {
+            byte[] bytes = Arrays.copyOf(frame.array(), frame.length());
+            int length = (bytes[0] & 0xFF) << 24 | (bytes[1] & 0xFF) << 16 | (bytes[2] & 0xFF) << 8 | bytes[3] & 0xFF;
+            assertEquals(bytes.length - 4, length, protocol + " frame length");
+            return MessageCodec.decode(Arrays.copyOfRange(bytes, 4, bytes.length), protocol);
+        } finally {
+            frame.release();
+        }
+    }
+
+    @Test
+    void text() throws IOException {
+        for (Protocol protocol : structured) {
+            for (String text : new String[]{"Welcome Anna!", "", "Grüße aus Wien 💌", "\"quoted\" \\ and\nnewline"}) {
+                Text decoded = assertInstanceOf(Text.class, roundTrip(new Text(text), protocol));
+                assertEquals(text, decoded.getText(), protocol.name());
+            }
+        }
+    }
+
+    @Test
+    void chatMessage() throws IOException {
+        for (Protocol protocol : structured) {
+            ChatMessage decoded = assertInstanceOf(ChatMessage.class, roundTrip(new ChatMessage("Anna", "hello Jürgen", false), protocol));
+            assertEquals("Anna", decoded.getSender());
+            assertEquals("hello Jürgen", decoded.getText());
+            assertFalse(decoded.isWhisper());
+
+            decoded = assertInstanceOf(ChatMessage.class, roundTrip(new ChatMessage("Ben", "psst", true), protocol));
+            assertEquals("Ben", decoded.getSender());
+            assertEquals("psst", decoded.getText());
+            assertTrue(decoded.isWhisper());
+        }
+    }
+
+    @Test
+    void turnStarted() throws IOException {
+        for (Protocol protocol : structured) {
+            TurnStarted decoded = assertInstanceOf(TurnStarted.class, roundTrip(new TurnStarted(3, 17, "Carl"), protocol));
+            assertEquals(3, decoded.getRound());
+            assertEquals(17, decoded.getTurn());
+            assertEquals("Carl", decoded.getPlayer());
+        }
+    }
+
+    @Test
+    void cardPlayed() throws IOException {
+        for (Protocol protocol : structured) {
+            CardPlayed guard = assertInstanceOf(CardPlayed.class, roundTrip(new CardPlayed("Anna", Cards.GUARD, "Ben", Cards.PRIEST), protocol));
+            assertEquals("Anna", guard.getPlayer());
+            assertEquals(Cards.GUARD, guard.getCard());
+            assertEquals("Ben", guard.getTarget());
+            assertEquals(Cards.PRIEST, guard.getGuess());
+
+            // a card without a target and without a guess
+            CardPlayed handmaid = assertInstanceOf(CardPlayed.class, roundTrip(new CardPlayed("Ben", Cards.HANDMAID, null, Cards.NONE), protocol));
+            assertEquals("Ben", handmaid.getPlayer());
+            assertEquals(Cards.HANDMAID, handmaid.getCard());
+            assertNull(handmaid.getTarget());
+            assertEquals(Cards.NONE, handmaid.getGuess());
+        }
+    }
+
+    @Test
+    void handUpdate() throws IOException {
+        for (Protocol protocol : structured) {
+            for (byte[] cards : new byte[][]{{Cards.PRINCESS}, {Cards.COUNTESS, Cards.KING}, {Cards.GUARD, Cards.GUARD}}) {
+                HandUpdate decoded = assertInstanceOf(HandUpdate.class, roundTrip(new HandUpdate(cards), protocol));
+                assertEquals(cards.length, decoded.getCardCount(), protocol.name());
+                for (int i = 0; i < cards.length; i++) {
+                    assertEquals(cards[i], decoded.getCard(i), protocol.name());
+                }
+            }
+        }
+    }
+
+    /**
+     * Several frames in one stream, the way a client reads them from one packet.
+     */
+    @Test
+    void readFramesFromAStream() throws IOException {
+        Message[] messages = {new Text("Game started."), new TurnStarted(1, 1, "Anna"), new HandUpdate(new byte[]{Cards.BARON})};
+        for (Protocol protocol : structured) {
+            ByteArrayOutputStream stream = new ByteArrayOutputStream();
+            for (Message message : messages) {
+                Frame frame = MessageCodec.encode(message, protocol);
+                stream.write(frame.array(), 0, frame.length());
+                frame.release();
+            }
+            DataInputStream input = new DataInputStream(new ByteArrayInputStream(stream.toByteArray()));
+            assertEquals("Game started.", assertInstanceOf(Text.class, MessageCodec.read(input, protocol)).getText());
+            assertEquals("Anna", assertInstanceOf(TurnStarted.class, MessageCodec.read(input, protocol)).getPlayer());
+            assertEquals(Cards.BARON, assertInstanceOf(HandUpdate.class, MessageCodec.read(input, protocol)).getCard(0));
+            assertEquals(-1, input.read());
+        }
+    }
+
+    @Test
+    void brokenFrames() {
+        assertThrows(IOException.class, () -> MessageCodec.decode(new byte[]{99}, Protocol.BINARY));
+        DataInputStream tooLong = new DataInputStream(new ByteArrayInputStream(new byte[]{0x7F, 0, 0, 0}));
+        assertThrows(IOException.class, () -> MessageCodec.read(tooLong, Protocol.JSON));
+    }
+}
@@ -0,0 +1,138 @@
+package chat.server;
+
+import game.engine.Engine;
+import game.engine.GameState;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * The snapshot file (see Snapshots) and the snapshot of one game (see GameRoom.snapshot()) are read back
+ * as they were written, and a file that was cut off gives back the games that are complete.
+ */
+class SnapshotsTest {
+
+    private static byte[][] games() {
+        Random random = new Random(5);
+        byte[][] games = new byte[4][];
+        for (int i = 0; i < games.length; i++) {
+            games[i] = new byte[10 + random.nextInt(200)];
+            random.nextBytes(games[i]);
+        }
+        return games;
+    }
+
+    private static byte[] toArray(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.duplicate().get(bytes);
+        return bytes;
+    }
+
+    @Test
+    void fileRoundTrip() {
+        byte[][] games = games();
+        List<byte[]> decoded = Snapshots.decode(Snapshots.encode(games));
+        assertNotNull(decoded);
+        assertEquals(games.length, decoded.size());
+        for (int i = 0; i < games.length; i++) {
+            assertArrayEquals(games[i], decoded.get(i));
+        }
+        assertEquals(0, Snapshots.decode(Snapshots.encode(new byte[0][])).size());
+    }
+
+    /**
+     * Cut off after every byte: the games that are complete come back, the one that was cut off does not.
+     */
+    @Test
+    void truncatedFile() {
+        byte[][] games = games();
+        byte[] file = toArray(Snapshots.encode(games));
+        int[] ends = new int[games.length];
+        int end = 12;
+        for (int i = 0; i < games.length; i++) {
+            end += 4 + games[i].length;
+            ends[i] = end;
+        }
+        for (int length = 0; length < file.length; length++) {
+            List<byte[]> decoded = Snapshots.decode(ByteBuffer.wrap(file, 0, length));
+            if (length < 12) {
+                assertNull(decoded, "no header");
+                continue;
+            }
+            int complete = 0;
+            while (complete < games.length && ends[complete] <= length) {
+                complete++;
+            }
+            assertNotNull(decoded);
+            assertEquals(complete, decoded.size(), "cut after " + length + " bytes");
+            for (int i = 0; i < complete; i++) {
+                assertArrayEquals(games[i], decoded.get(i));
+            }
+        }
+    }
+
+    @Test
+    void unknownFormat() {
+        byte[] file = toArray(Snapshots.encode(games()));
+        byte[] otherVersion = file.clone();
+        otherVersion[7]++;
+        assertNull(Snapshots.decode(ByteBuffer.wrap(otherVersion)));
+        byte[] otherMagic = file.clone();
+        otherMagic[0]++;
+        assertNull(Snapshots.decode(ByteBuffer.wrap(otherMagic)));
+    }
+
+    /**
+     * A snapshot as GameRoom.snapshot() writes it, for a game in the middle of a round.
+     */
+    private static byte[] game(String room, int tableSize, String[] names, String[] tokens) {
+        GameState state = new GameState();
+        Engine.newGame(state, names.length, 0, 99);
+        Engine.startRound(state);
+        int[] moves = new int[64];
+        Random random = new Random(1);
+        for (int turn = 0; turn < 3 && state.getPhase() == GameState.TURN; turn++) {
+            Engine.apply(state, moves[random.nextInt(Engine.legalMoves(state, moves))]);
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(1000);
+        byte[] name = room.getBytes(StandardCharsets.UTF_8);
+        buffer.putShort((short) name.length).put(name).putLong(12345).put((byte) tableSize).put((byte) names.length);
+        for (int seat = 0; seat < names.length; seat++) {
+            byte[] player = names[seat].getBytes(StandardCharsets.UTF_8);
+            byte[] token = tokens[seat].getBytes(StandardCharsets.US_ASCII);
+            buffer.put((byte) player.length).put(player).put((byte) token.length).put(token).putLong(seat * 7L);
+        }
+        state.writeTo(buffer);
+        return Arrays.copyOf(buffer.array(), buffer.position());
+    }
+
+    @Test
+    void gameRoundTrip() {
+        byte[] snapshot = game("table3", 3, new String[]{"Anna", "Jürgen", "Carl"}, new String[]{"tokenA", "", "tokenC"});
+        GameRoom room = GameRoom.restore(ByteBuffer.wrap(snapshot));
+        assertEquals("table3", room.getName());
+        assertEquals(3, room.getTableSize());
+        assertArrayEquals(snapshot, room.snapshot());
+
+        snapshot = game("anna's room", 0, new String[]{"Anna", "Ben"}, new String[]{"t1", "t2"});
+        room = GameRoom.restore(ByteBuffer.wrap(snapshot));
+        assertEquals(0, room.getTableSize());
+        assertArrayEquals(snapshot, room.snapshot());
+    }
+
+    @Test
+    void truncatedGameIsRefused() {
+        byte[] snapshot = game("table3", 3, new String[]{"Anna", "Ben", "Carl"}, new String[]{"a", "b", "c"});
+        assertThrows(RuntimeException.class, () -> GameRoom.restore(ByteBuffer.wrap(snapshot, 0, snapshot.length - 9)));
+    }
+}
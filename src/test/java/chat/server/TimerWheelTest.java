@@ -0,0 +1,145 @@
+package chat.server;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Schedules and cancels timeouts on small wheels with short ticks, so deadlines of many turns of the wheel are quick to test.
+ * The upper bounds are loose: the build machine may be busy.
+ */
+class TimerWheelTest {
+
+    /**
+     * Waits until no timeout is pending any more.
+     */
+    private static void awaitIdle(TimerWheel wheel) throws InterruptedException {
+        long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(20);
+        while ((wheel.getPending() > 0 || !wheel.isIdle()) && System.nanoTime() < end) {
+            Thread.sleep(5);
+        }
+        assertEquals(0, wheel.getPending());
+        assertTrue(wheel.isIdle(), "the timer thread waits for the next timeout");
+    }
+
+    @Test
+    void runsAfterTheDelay() throws InterruptedException {
+        TimerWheel wheel = new TimerWheel(2, 16);
+        CountDownLatch ran = new CountDownLatch(1);
+        AtomicLong ranAt = new AtomicLong();
+        long start = System.nanoTime();
+        wheel.schedule(() -> {
+            ranAt.set(System.nanoTime());
+            ran.countDown();
+        }, 30, TimeUnit.MILLISECONDS);
+        assertEquals(1, wheel.getPending());
+        assertTrue(ran.await(5, TimeUnit.SECONDS));
+        assertTrue(ranAt.get() - start >= TimeUnit.MILLISECONDS.toNanos(30), "not before the deadline");
+        awaitIdle(wheel);
+    }
+
+    @Test
+    void cancelledTimeoutsNeverRun() throws InterruptedException {
+        TimerWheel wheel = new TimerWheel(1, 8);
+        CountDownLatch ran = new CountDownLatch(1);
+        TimerWheel.Timeout cancelled = wheel.schedule(ran::countDown, 20, TimeUnit.MILLISECONDS);
+        assertTrue(cancelled.cancel());
+        assertFalse(cancelled.cancel(), "only once");
+        assertEquals(0, wheel.getPending());
+        assertFalse(ran.await(100, TimeUnit.MILLISECONDS));
+
+        CountDownLatch done = new CountDownLatch(1);
+        TimerWheel.Timeout expired = wheel.schedule(done::countDown, 1, TimeUnit.MILLISECONDS);
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertFalse(expired.cancel(), "too late once the task ran");
+    }
+
+    @Test
+    void manyTimeoutsHalfCancelled() throws InterruptedException {
+        TimerWheel wheel = new TimerWheel(1, 64);
+        int count = 100000;
+        AtomicIntegerArray runs = new AtomicIntegerArray(count);
+        TimerWheel.Timeout[] timeouts = new TimerWheel.Timeout[count];
+        for (int i = 0; i < count; i++) {
+            int index = i;
+            // spread over several turns of the wheel
+            timeouts[i] = wheel.schedule(() -> runs.incrementAndGet(index), i % 300, TimeUnit.MILLISECONDS);
+        }
+        for (int i = 0; i < count; i += 2) {
+            // some of them may have run already
+            timeouts[i].cancel();
+        }
+        awaitIdle(wheel);
+        int ran = 0;
+        for (int i = 0; i < count; i++) {
+            assertTrue(runs.get(i) <= 1, "at most once");
+            if (i % 2 == 1) {
+                assertEquals(1, runs.get(i), "every timeout that was not cancelled runs");
+            }
+            ran += runs.get(i);
+        }
+        assertTrue(ran >= count / 2);
+        // nothing runs late
+        Thread.sleep(50);
+        int again = 0;
+        for (int i = 0; i < count; i++) {
+            again += runs.get(i);
+        }
+        assertEquals(ran, again);
+    }
+
+    @Test
+    void deadlinesOfSeveralTurnsOfTheWheel() throws InterruptedException {
+        // one turn of the wheel is 4 ticks of 5 ms, the deadlines are 2 to 10 turns away
+        TimerWheel wheel = new TimerWheel(5, 4);
+        long[] delays = {40, 100, 130, 200};
+        CountDownLatch ran = new CountDownLatch(delays.length);
+        AtomicLong tooEarly = new AtomicLong();
+        long start = System.nanoTime();
+        for (long delay : delays) {
+            wheel.schedule(() -> {
+                if (System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(delay)) {
+                    tooEarly.incrementAndGet();
+                }
+                ran.countDown();
+            }, delay, TimeUnit.MILLISECONDS);
+        }
+        assertTrue(ran.await(10, TimeUnit.SECONDS));
+        assertEquals(0, tooEarly.get());
+        awaitIdle(wheel);
+    }
+
+    @Test
+    void parksWhileIdleAndWakesUpForTheNextTimeout() throws InterruptedException {
+        TimerWheel wheel = new TimerWheel(1, 16);
+        CountDownLatch first = new CountDownLatch(1);
+        wheel.schedule(first::countDown, 1, TimeUnit.MILLISECONDS);
+        assertTrue(first.await(5, TimeUnit.SECONDS));
+        awaitIdle(wheel);
+        // idle for many ticks: the wheel does not turn meanwhile
+        Thread.sleep(100);
+        assertTrue(wheel.isIdle());
+
+        CountDownLatch second = new CountDownLatch(1);
+        long start = System.nanoTime();
+        wheel.schedule(second::countDown, 20, TimeUnit.MILLISECONDS);
+        assertTrue(second.await(5, TimeUnit.SECONDS));
+        long took = System.nanoTime() - start;
+        // the skipped ticks are not counted against the new deadline
+        assertTrue(took >= TimeUnit.MILLISECONDS.toNanos(20), "not before the deadline");
+        awaitIdle(wheel);
+    }
+
+    @Test
+    void sizeMustBeAPowerOfTwo() {
+        assertThrows(IllegalArgumentException.class, () -> new TimerWheel(10, 100));
+    }
+}
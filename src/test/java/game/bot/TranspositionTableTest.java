@@ -0,0 +1,113 @@
+package game.bot;
+
+import game.engine.Engine;
+import game.engine.GameState;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks the table of the search (entries are found again and keep their counters) and the Zobrist keys
+ * (the same information set always gets the same key, whatever the cards the seat can't see).
+ */
+class TranspositionTableTest {
+
+    @Test
+    void findsAndUpdatesEntries() {
+        TranspositionTable table = new TranspositionTable(1 << 10);
+        int[] slots = new int[300];
+        for (int i = 0; i < slots.length; i++) {
+            slots[i] = table.slot(Zobrist.edge(i, 17));
+            assertTrue(slots[i] >= 0);
+            table.visits[slots[i]] += i + 1;
+            table.available[slots[i]] += 2 * i + 1;
+            table.wins[slots[i]] += 0.5f * i;
+        }
+        for (int i = 0; i < slots.length; i++) {
+            long key = Zobrist.edge(i, 17);
+            assertEquals(slots[i], table.find(key));
+            assertEquals(slots[i], table.slot(key), "a key gets no second entry");
+            assertEquals(i + 1, table.visits[slots[i]]);
+            assertEquals(2 * i + 1, table.available[slots[i]]);
+            assertEquals(0.5f * i, table.wins[slots[i]]);
+        }
+        assertEquals(-1, table.find(Zobrist.edge(1000, 17)));
+        // 300 of 1024 entries are used
+        assertFalse(table.isCrowded());
+    }
+
+    @Test
+    void keyZeroIsAKeyLikeAnyOther() {
+        TranspositionTable table = new TranspositionTable(16);
+        int slot = table.slot(0);
+        table.visits[slot] = 5;
+        assertEquals(slot, table.find(0));
+        assertEquals(5, table.visits[table.find(0)]);
+    }
+
+    @Test
+    void clearForgetsEverything() {
+        TranspositionTable table = new TranspositionTable(64);
+        for (int i = 0; i < 40; i++) {
+            table.visits[table.slot(Zobrist.edge(i, 1))]++;
+        }
+        assertTrue(table.isCrowded());
+        table.clear();
+        assertFalse(table.isCrowded());
+        for (int i = 0; i < 40; i++) {
+            assertEquals(-1, table.find(Zobrist.edge(i, 1)));
+        }
+        assertEquals(0, table.visits[table.slot(Zobrist.edge(3, 1))]);
+    }
+
+    @Test
+    void capacityMustBeAPowerOfTwo() {
+        assertThrows(IllegalArgumentException.class, () -> new TranspositionTable(1000));
+    }
+
+    @Test
+    void sameInformationSetSameKey() {
+        Random random = new Random(7);
+        for (int game = 0; game < 200; game++) {
+            GameState state = new GameState();
+            Engine.newGame(state, 2 + game % 3, 0, random.nextLong());
+            Engine.startRound(state);
+            int viewer = state.getActiveSeat();
+            long key = Zobrist.hash(state, viewer);
+            assertEquals(key, Zobrist.hash(state, viewer), "the key depends on the state only");
+
+            // the deck and the hands of the others dealt anew: the viewer can't tell the difference
+            GameState other = new GameState();
+            other.copyFrom(state);
+            Engine.redeal(other, viewer, random);
+            assertEquals(key, Zobrist.hash(other, viewer));
+
+            // another seat knows another hand
+            int next = (viewer + 1) % state.getPlayerCount();
+            assertNotEquals(key, Zobrist.hash(state, next));
+        }
+    }
+
+    @Test
+    void differentHandDifferentKey() {
+        GameState state = new GameState();
+        Engine.newGame(state, 2, 0, 42);
+        Engine.startRound(state);
+        long key = Zobrist.hash(state, 0);
+        int[] moves = new int[64];
+        int count = Engine.legalMoves(state, moves);
+        // the same position, one card played: the hand and the table differ
+        GameState played = new GameState();
+        played.copyFrom(state);
+        Engine.apply(played, moves[0]);
+        assertNotEquals(key, Zobrist.hash(played, 0));
+        assertTrue(count > 0);
+        assertNotEquals(Zobrist.edge(key, moves[0]), Zobrist.edge(key, moves[0] + 1));
+    }
+}
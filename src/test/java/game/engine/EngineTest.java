@@ -0,0 +1,283 @@
+package game.engine;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Plays single cards on hands that are set up by hand and checks the effect of every card, the Countess,
+ * the end of a round and that a state written by writeTo() goes on the same way after readFrom().
+ */
+class EngineTest {
+
+    /**
+     * A round that was just dealt, with known hands: seat 0 is at turn with the first two cards,
+     * every other seat holds one of the following cards. The deck holds only Guards, the card put aside is the Priest.
+     */
+    private static GameState table(int... cards) {
+        GameState state = new GameState();
+        Engine.newGame(state, cards.length - 1, 0, 1);
+        Engine.startRound(state);
+        state.hands[0] = (byte) cards[0];
+        state.hands[1] = (byte) cards[1];
+        for (int seat = 1; seat < cards.length - 1; seat++) {
+            state.hands[seat * 2] = (byte) cards[seat + 1];
+            state.hands[seat * 2 + 1] = Cards.NONE;
+        }
+        Arrays.fill(state.deck, Cards.GUARD);
+        state.deckTop = Cards.deckSize - 5;
+        state.reserveCard = Cards.PRIEST;
+        return state;
+    }
+
+    private static boolean hasEvent(GameState state, int type, int seat, int card) {
+        for (int i = 0; i < state.getEventCount(); i++) {
+            int event = state.getEvent(i);
+            if (Event.type(event) == type && Event.seat(event) == seat && Event.card(event) == card) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void play(GameState state, int move) {
+        assertTrue(Engine.apply(state, move) > 0, "the move is allowed");
+    }
+
+    @Test
+    void guardGuessedRight() {
+        GameState state = table(Cards.GUARD, Cards.KING, Cards.PRIEST, Cards.BARON);
+        play(state, Move.of(Cards.GUARD, 1, Cards.PRIEST));
+        assertFalse(state.isInRound(1));
+        assertTrue(hasEvent(state, Event.GUESSED_RIGHT, 0, Cards.PRIEST));
+        assertTrue(hasEvent(state, Event.PLAYER_OUT, 1, Cards.PRIEST));
+        assertEquals(1, state.getFaceUpCount(Cards.PRIEST));
+        assertEquals(2, state.getActiveSeat(), "the seat that is out is skipped");
+    }
+
+    @Test
+    void guardGuessedWrong() {
+        GameState state = table(Cards.GUARD, Cards.KING, Cards.PRIEST, Cards.BARON);
+        play(state, Move.of(Cards.GUARD, 1, Cards.BARON));
+        assertTrue(state.isInRound(1));
+        assertTrue(hasEvent(state, Event.GUESSED_WRONG, 0, Cards.BARON));
+        assertEquals(Engine.INVALID_GUESS, Engine.check(table(Cards.GUARD, Cards.KING, Cards.PRIEST), Move.of(Cards.GUARD, 1, Cards.GUARD)));
+    }
+
+    @Test
+    void priestShowsTheCard() {
+        GameState state = table(Cards.PRIEST, Cards.GUARD, Cards.HANDMAID, Cards.BARON);
+        play(state, Move.of(Cards.PRIEST, 2));
+        assertTrue(hasEvent(state, Event.CARD_SEEN, 0, Cards.BARON));
+        assertEquals(Cards.BARON, state.getKnownCard(0, 2));
+        assertEquals(Cards.NONE, state.getKnownCard(1, 2));
+        assertEquals(1.0, Odds.probability(state, 0, 2, Cards.BARON));
+        assertEquals(0.0, Odds.probability(state, 0, 2, Cards.PRINCESS));
+    }
+
+    @Test
+    void baronKnocksOutTheLowerCard() {
+        GameState state = table(Cards.BARON, Cards.KING, Cards.PRIEST);
+        play(state, Move.of(Cards.BARON, 1));
+        assertFalse(state.isInRound(1));
+        assertTrue(state.isInRound(0));
+        assertTrue(hasEvent(state, Event.PLAYER_OUT, 1, Cards.PRIEST));
+
+        state = table(Cards.BARON, Cards.GUARD, Cards.PRINCESS);
+        play(state, Move.of(Cards.BARON, 1));
+        assertFalse(state.isInRound(0));
+        assertTrue(state.isInRound(1));
+    }
+
+    @Test
+    void baronTie() {
+        GameState state = table(Cards.BARON, Cards.PRINCE, Cards.PRINCE, Cards.GUARD);
+        play(state, Move.of(Cards.BARON, 1));
+        assertTrue(state.isInRound(0));
+        assertTrue(state.isInRound(1));
+        assertTrue(hasEvent(state, Event.BARON_TIE, 0, Cards.NONE));
+        // both have seen the card of the other
+        assertEquals(Cards.PRINCE, state.getKnownCard(0, 1));
+        assertEquals(Cards.PRINCE, state.getKnownCard(1, 0));
+    }
+
+    @Test
+    void handmaidProtectsUntilTheNextTurn() {
+        GameState state = table(Cards.HANDMAID, Cards.GUARD, Cards.GUARD);
+        play(state, Move.of(Cards.HANDMAID));
+        assertTrue(state.isProtected(0));
+        assertEquals(1, state.getActiveSeat());
+        assertEquals(Engine.TARGET_PROTECTED, Engine.check(state, Move.of(Cards.GUARD, 0, Cards.PRIEST)));
+        // with nobody else to choose, the Guard may be played on the own seat without effect
+        play(state, Move.of(Cards.GUARD, 1));
+        assertTrue(hasEvent(state, Event.NO_EFFECT, 1, Cards.GUARD));
+        assertFalse(state.isProtected(0), "the protection ends when the turn of the seat starts");
+    }
+
+    @Test
+    void princeDiscardsAndDraws() {
+        GameState state = table(Cards.PRINCE, Cards.GUARD, Cards.KING, Cards.BARON);
+        play(state, Move.of(Cards.PRINCE, 1));
+        assertTrue(hasEvent(state, Event.CARD_DISCARDED, 1, Cards.KING));
+        assertEquals(Cards.GUARD, state.getHand(1, 0));
+        assertEquals(1, state.getFaceUpCount(Cards.KING));
+
+        state = table(Cards.PRINCE, Cards.GUARD, Cards.PRINCESS, Cards.BARON);
+        play(state, Move.of(Cards.PRINCE, 1));
+        assertFalse(state.isInRound(1), "whoever discards the Princess is out");
+
+        // with an empty deck the Prince draws the card that was put aside
+        state = table(Cards.PRINCE, Cards.GUARD, Cards.KING, Cards.BARON);
+        state.deckTop = Cards.deckSize;
+        assertEquals(0, state.getDeckSize());
+        play(state, Move.of(Cards.PRINCE, 1));
+        assertTrue(hasEvent(state, Event.CARD_DRAWN, 1, Cards.PRIEST));
+    }
+
+    @Test
+    void kingTradesHands() {
+        GameState state = table(Cards.KING, Cards.PRIEST, Cards.PRINCESS, Cards.GUARD);
+        play(state, Move.of(Cards.KING, 1));
+        assertEquals(Cards.PRINCESS, state.getHand(0, 0));
+        assertEquals(Cards.PRIEST, state.getHand(1, 0));
+        assertTrue(hasEvent(state, Event.CARD_RECEIVED, 0, Cards.PRINCESS));
+        assertTrue(hasEvent(state, Event.CARD_RECEIVED, 1, Cards.PRIEST));
+        assertEquals(Cards.PRIEST, state.getKnownCard(0, 1));
+        assertEquals(Cards.PRINCESS, state.getKnownCard(1, 0));
+    }
+
+    @Test
+    void countessMustBePlayedWithKingOrPrince() {
+        assertEquals(Engine.MUST_PLAY_COUNTESS, Engine.check(table(Cards.COUNTESS, Cards.KING, Cards.GUARD), Move.of(Cards.KING, 1)));
+        assertEquals(Engine.MUST_PLAY_COUNTESS, Engine.check(table(Cards.PRINCE, Cards.COUNTESS, Cards.GUARD), Move.of(Cards.PRINCE, 1)));
+        assertEquals(0, Engine.check(table(Cards.COUNTESS, Cards.KING, Cards.GUARD), Move.of(Cards.COUNTESS)));
+        // with any other card the Countess may be kept
+        assertEquals(0, Engine.check(table(Cards.COUNTESS, Cards.BARON, Cards.GUARD), Move.of(Cards.BARON, 1)));
+
+        int[] moves = new int[64];
+        GameState state = table(Cards.KING, Cards.COUNTESS, Cards.GUARD);
+        assertEquals(1, Engine.legalMoves(state, moves));
+        assertEquals(Move.of(Cards.COUNTESS), moves[0]);
+    }
+
+    @Test
+    void princessKnocksOutWhoPlaysIt() {
+        GameState state = table(Cards.PRINCESS, Cards.GUARD, Cards.PRIEST, Cards.BARON);
+        play(state, Move.of(Cards.PRINCESS));
+        assertFalse(state.isInRound(0));
+        assertTrue(hasEvent(state, Event.PLAYER_OUT, 0, Cards.GUARD));
+    }
+
+    @Test
+    void lastSeatInTheRoundWins() {
+        GameState state = table(Cards.GUARD, Cards.KING, Cards.PRIEST);
+        play(state, Move.of(Cards.GUARD, 1, Cards.PRIEST));
+        assertEquals(GameState.ROUND_OVER, state.getPhase());
+        assertEquals(1, state.getPoints(0));
+        assertTrue(hasEvent(state, Event.ROUND_WON, 0, Cards.KING));
+    }
+
+    @Test
+    void highestCardWinsWhenTheDeckIsEmpty() {
+        GameState state = table(Cards.HANDMAID, Cards.GUARD, Cards.BARON, Cards.KING, Cards.PRIEST);
+        state.deckTop = Cards.deckSize;
+        play(state, Move.of(Cards.HANDMAID));
+        assertEquals(GameState.ROUND_OVER, state.getPhase());
+        assertEquals(1, state.getPoints(2));
+        assertEquals(2, state.getActiveSeat(), "the winner starts the next round");
+    }
+
+    @Test
+    void tieGoesToTheFirstSeat() {
+        GameState state = table(Cards.HANDMAID, Cards.GUARD, Cards.PRINCE, Cards.PRINCE);
+        state.deckTop = Cards.deckSize;
+        play(state, Move.of(Cards.HANDMAID));
+        assertEquals(1, state.getPoints(1));
+        assertEquals(0, state.getPoints(2));
+    }
+
+    @Test
+    void gameIsWonWithEnoughPoints() {
+        GameState state = table(Cards.GUARD, Cards.KING, Cards.PRIEST);
+        state.points[0] = state.getWinningPoints() - 1;
+        play(state, Move.of(Cards.GUARD, 1, Cards.PRIEST));
+        assertEquals(GameState.GAME_OVER, state.getPhase());
+        assertTrue(hasEvent(state, Event.GAME_WON, 0, Cards.NONE));
+    }
+
+    /**
+     * A state in the middle of a game is written and read back: both go on with the same moves to the same end.
+     */
+    @Test
+    void snapshotRoundTrip() {
+        Random random = new Random(3);
+        int[] moves = new int[64];
+        for (int game = 0; game < 100; game++) {
+            GameState state = new GameState();
+            Engine.newGame(state, 2 + game % 3, game % 2, random.nextLong());
+            Engine.startRound(state);
+            for (int turn = 0, turns = random.nextInt(12); turn < turns && state.getPhase() == GameState.TURN; turn++) {
+                int count = Engine.legalMoves(state, moves);
+                Engine.apply(state, moves[random.nextInt(count)]);
+            }
+            if (state.getPhase() == GameState.ROUND_OVER) {
+                Engine.startRound(state);
+            }
+
+            ByteBuffer buffer = ByteBuffer.allocate(GameState.snapshotLength);
+            state.writeTo(buffer);
+            assertEquals(GameState.snapshotLength, buffer.position());
+            buffer.flip();
+            GameState restored = new GameState();
+            restored.readFrom(buffer);
+            assertEquals(0, buffer.remaining());
+
+            while (state.getPhase() != GameState.GAME_OVER) {
+                assertSameState(state, restored);
+                if (state.getPhase() == GameState.ROUND_OVER) {
+                    Engine.startRound(state);
+                    Engine.startRound(restored);
+                    continue;
+                }
+                int count = Engine.legalMoves(state, moves);
+                int move = moves[random.nextInt(count)];
+                assertEquals(Engine.apply(state, move), Engine.apply(restored, move));
+                for (int i = 0; i < state.getEventCount(); i++) {
+                    assertEquals(state.getEvent(i), restored.getEvent(i));
+                }
+            }
+            assertSameState(state, restored);
+        }
+    }
+
+    private static void assertSameState(GameState expected, GameState actual) {
+        assertEquals(expected.getPlayerCount(), actual.getPlayerCount());
+        assertEquals(expected.getWinningPoints(), actual.getWinningPoints());
+        assertEquals(expected.getSeed(), actual.getSeed());
+        assertEquals(expected.getPhase(), actual.getPhase());
+        assertEquals(expected.getRound(), actual.getRound());
+        assertEquals(expected.getTurn(), actual.getTurn());
+        assertEquals(expected.getActiveSeat(), actual.getActiveSeat());
+        assertEquals(expected.getDeckSize(), actual.getDeckSize());
+        assertEquals(expected.getPlayedCount(), actual.getPlayedCount());
+        for (int seat = 0; seat < GameState.maxPlayers; seat++) {
+            assertEquals(expected.getHand(seat, 0), actual.getHand(seat, 0));
+            assertEquals(expected.getHand(seat, 1), actual.getHand(seat, 1));
+            assertEquals(expected.isInRound(seat), actual.isInRound(seat));
+            assertEquals(expected.isProtected(seat), actual.isProtected(seat));
+            assertEquals(expected.getPoints(seat), actual.getPoints(seat));
+            for (int holder = 0; holder < GameState.maxPlayers; holder++) {
+                assertEquals(expected.getKnownCard(seat, holder), actual.getKnownCard(seat, holder));
+            }
+        }
+        for (int card = Cards.GUARD; card <= Cards.PRINCESS; card++) {
+            assertEquals(expected.getFaceUpCount(card), actual.getFaceUpCount(card));
+        }
+    }
+}